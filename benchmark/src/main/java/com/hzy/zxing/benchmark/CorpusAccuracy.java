@@ -0,0 +1,118 @@
+package com.hzy.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.hzy.zxing.decoding.ImageDecoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Replays a corpus through {@link ImageDecoder}, each frame cropped to its framing
+ * rectangle like the camera does, and reports per profile how many codes were read, how
+ * many were read wrong, codes found in frames without one, and the decode time.
+ * <p>
+ * Options, as --name value: corpus (default corpus.qrcf), verbose (true lists every frame
+ * that was not read right).
+ */
+public final class CorpusAccuracy {
+
+    public static void main(String[] args) throws IOException {
+        String corpus = "corpus.qrcf";
+        boolean verbose = false;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("--corpus".equals(args[i])) {
+                corpus = args[i + 1];
+            } else if ("--verbose".equals(args[i])) {
+                verbose = Boolean.parseBoolean(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE));
+        ImageDecoder decoder = new ImageDecoder(hints);
+
+        Map<String, Tally> tallies = new LinkedHashMap<String, Tally>();
+        Tally total = new Tally();
+        FrameCorpus.Reader reader = FrameCorpus.open(new File(corpus));
+        try {
+            CorpusFrame frame;
+            while ((frame = reader.next()) != null) {
+                Tally tally = tallies.get(frame.getProfile());
+                if (tally == null) {
+                    tally = new Tally();
+                    tallies.put(frame.getProfile(), tally);
+                }
+                long start = System.nanoTime();
+                Result result;
+                try {
+                    result = decoder.decode(frame.getCrop());
+                } catch (NotFoundException nfe) {
+                    result = null;
+                }
+                long nanos = System.nanoTime() - start;
+                String outcome = tally.add(frame, result, nanos);
+                total.add(frame, result, nanos);
+                if (verbose && outcome != null) {
+                    System.out.println(outcome + " " + frame);
+                }
+            }
+            System.out.println("corpus seed " + reader.getSeed() + ", sha256 " + reader.getDigest());
+        } finally {
+            reader.close();
+        }
+        System.out.println(String.format("%-12s %6s %6s %6s %6s %8s %8s", "profile", "frames", "read", "wrong", "false", "read%", "ms"));
+        for (Map.Entry<String, Tally> entry : tallies.entrySet()) {
+            entry.getValue().print(entry.getKey());
+        }
+        total.print("all");
+    }
+
+    private static final class Tally {
+
+        int frames;
+        int codes;
+        int read;
+        int wrong;
+        int falsePositives;
+        long nanos;
+
+        /**
+         * @return What went wrong, or null.
+         */
+        String add(CorpusFrame frame, Result result, long decodeNanos) {
+            frames++;
+            nanos += decodeNanos;
+            if (!frame.hasCode()) {
+                if (result != null) {
+                    falsePositives++;
+                    return "FALSE";
+                }
+                return null;
+            }
+            codes++;
+            if (result == null) {
+                return "MISSED";
+            }
+            if (!frame.getText().equals(result.getText())) {
+                wrong++;
+                return "WRONG";
+            }
+            read++;
+            return null;
+        }
+
+        void print(String name) {
+            System.out.println(String.format("%-12s %6d %6d %6d %6d %7.1f%% %8.2f", name, frames, read, wrong, falsePositives,
+                    codes == 0 ? 0.0 : read * 100.0 / codes, frames == 0 ? 0.0 : nanos / 1e6 / frames));
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.hzy.zxing.benchmark;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.util.Arrays;
+
+/**
+ * One synthetic preview frame and its ground truth. The frame is landscape, as the camera
+ * delivers it, and only its Y plane is kept: the chroma of a grey scene is neutral.
+ * <p>
+ * The crop is the framing rectangle of a portrait scan on a screen with the preview's
+ * aspect ratio, in the coordinates of the landscape frame, like
+ * CameraManager.getFramingRectInNativePreview().
+ */
+public final class CorpusFrame {
+
+    final int index;
+    final String profile;
+    final int width;
+    final int height;
+    final int cropLeft;
+    final int cropTop;
+    final int cropWidth;
+    final int cropHeight;
+    /**
+     * The payload, null for a frame without a code.
+     */
+    final String text;
+    final int version;
+    final ErrorCorrectionLevel ecLevel;
+    /**
+     * Corners of the symbol without its quiet zone, x and y of top left, top right, bottom
+     * right and bottom left as the code is read.
+     */
+    final float[] corners;
+    final Distortion distortion;
+    final byte[] luminance;
+
+    CorpusFrame(int index, String profile, int width, int height, String text, int version,
+                ErrorCorrectionLevel ecLevel, float[] corners, Distortion distortion, byte[] luminance) {
+        this.index = index;
+        this.profile = profile;
+        this.width = width;
+        this.height = height;
+        this.text = text;
+        this.version = version;
+        this.ecLevel = ecLevel;
+        this.corners = corners;
+        this.distortion = distortion;
+        this.luminance = luminance;
+        // portrait framing rect: 0.6 of the screen width wide, 0.9 of that high
+        cropWidth = height * 54 / 100;
+        cropHeight = height * 60 / 100;
+        cropLeft = (width - cropWidth) / 2;
+        cropTop = (height - cropHeight) / 2;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return The name of the profile the distortion was drawn from, e.g. "blur".
+     */
+    public String getProfile() {
+        return profile;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public boolean hasCode() {
+        return text != null;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public ErrorCorrectionLevel getErrorCorrectionLevel() {
+        return ecLevel;
+    }
+
+    public float[] getCorners() {
+        return corners == null ? null : corners.clone();
+    }
+
+    public Distortion getDistortion() {
+        return distortion;
+    }
+
+    /**
+     * @return The Y plane, width * height bytes; not a copy.
+     */
+    public byte[] getLuminance() {
+        return luminance;
+    }
+
+    /**
+     * @return The frame as the camera delivers it, with neutral chroma.
+     */
+    public byte[] toNv21() {
+        byte[] data = Arrays.copyOf(luminance, width * height * 3 / 2);
+        Arrays.fill(data, width * height, data.length, (byte) 128);
+        return data;
+    }
+
+    /**
+     * @return The framing rectangle of the frame, wrapped, not copied.
+     */
+    public LuminanceSource getCrop() {
+        return new PlanarYUVLuminanceSource(luminance, width, height, cropLeft, cropTop, cropWidth, cropHeight, false);
+    }
+
+    public int getCropLeft() {
+        return cropLeft;
+    }
+
+    public int getCropTop() {
+        return cropTop;
+    }
+
+    public int getCropWidth() {
+        return cropWidth;
+    }
+
+    public int getCropHeight() {
+        return cropHeight;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append('#').append(index).append(' ').append(profile).append(' ').append(width).append('x').append(height);
+        if (text != null) {
+            builder.append(" v").append(version).append('-').append(ecLevel);
+        }
+        builder.append(' ').append(distortion);
+        return builder.toString();
+    }
+
+}
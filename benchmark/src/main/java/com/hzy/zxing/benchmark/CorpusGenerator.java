@@ -0,0 +1,273 @@
+package com.hzy.zxing.benchmark;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.decoder.Mode;
+import com.google.zxing.qrcode.decoder.Version;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates a corpus of synthetic preview frames with QR Codes for benchmarks and accuracy
+ * checks. Frame i depends only on the seed, the options and i, so the same command writes
+ * the same corpus, with the same digest, on any machine.
+ * <p>
+ * Frames take turns over the profiles, and over the resolutions after each round of
+ * profiles. A profile sets which distortion is strong; its strength, the payload, version
+ * and error correction level, the pose and the light are drawn for each frame:
+ * <ul>
+ * <li>clean: straight on, sharp and well lit.</li>
+ * <li>perspective: tilted by 15 to 45 degrees.</li>
+ * <li>rotation: turned by any angle.</li>
+ * <li>blur: out of focus by a sixth to half a module.</li>
+ * <li>noise: strong sensor noise.</li>
+ * <li>glare: a specular highlight on the symbol.</li>
+ * <li>lowlight: a tenth to a quarter of the light, brought up by the gain and noisy.</li>
+ * <li>inverted: light modules on a dark label.</li>
+ * <li>mixed: some of everything.</li>
+ * <li>empty: a desk without a code.</li>
+ * </ul>
+ * Options, as --name value: out (default corpus.qrcf), seed (1), frames (240), resolutions
+ * (640x480,1280x720,1920x1080), versions (1-10), profiles (all of the above).
+ */
+public final class CorpusGenerator {
+
+    static final String[] PROFILES = {
+            "clean", "perspective", "rotation", "blur", "noise", "glare", "lowlight", "inverted", "mixed", "empty"
+    };
+    private static final ErrorCorrectionLevel[] EC_LEVELS = {
+            ErrorCorrectionLevel.L, ErrorCorrectionLevel.M, ErrorCorrectionLevel.Q, ErrorCorrectionLevel.H
+    };
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789-._~/";
+
+    private final long seed;
+    private final String[] profiles;
+    private final int[][] resolutions;
+    private final int minVersion;
+    private final int maxVersion;
+    private final Map<String, FrameRenderer> renderers = new HashMap<String, FrameRenderer>();
+
+    public CorpusGenerator(long seed, String[] profiles, int[][] resolutions, int minVersion, int maxVersion) {
+        for (String profile : profiles) {
+            if (indexOf(profile) < 0) {
+                throw new IllegalArgumentException("Unknown profile " + profile);
+            }
+        }
+        if (minVersion < 1 || maxVersion > 40 || minVersion > maxVersion) {
+            throw new IllegalArgumentException("Versions must be within 1-40");
+        }
+        this.seed = seed;
+        this.profiles = profiles;
+        this.resolutions = resolutions;
+        this.minVersion = minVersion;
+        this.maxVersion = maxVersion;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String out = "corpus.qrcf";
+        long seed = 1L;
+        int frames = 240;
+        String resolutions = "640x480,1280x720,1920x1080";
+        String versions = "1-10";
+        String profiles = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String name = args[i];
+            String value = args[i + 1];
+            if ("--out".equals(name)) {
+                out = value;
+            } else if ("--seed".equals(name)) {
+                seed = Long.parseLong(value);
+            } else if ("--frames".equals(name)) {
+                frames = Integer.parseInt(value);
+            } else if ("--resolutions".equals(name)) {
+                resolutions = value;
+            } else if ("--versions".equals(name)) {
+                versions = value;
+            } else if ("--profiles".equals(name)) {
+                profiles = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+        int dash = versions.indexOf('-');
+        int minVersion = Integer.parseInt(dash < 0 ? versions : versions.substring(0, dash));
+        int maxVersion = Integer.parseInt(dash < 0 ? versions : versions.substring(dash + 1));
+        CorpusGenerator generator = new CorpusGenerator(seed, profiles == null ? PROFILES : profiles.split(","),
+                parseResolutions(resolutions), minVersion, maxVersion);
+
+        File file = new File(out);
+        long start = System.nanoTime();
+        FrameCorpus.Writer writer = FrameCorpus.create(file, seed, frames);
+        try {
+            for (int i = 0; i < frames; i++) {
+                writer.write(generator.generate(i));
+            }
+        } finally {
+            writer.close();
+        }
+        System.out.println(String.format("%d frames, seed %d, %d KB in %.1f s to %s", frames, seed,
+                file.length() / 1024, (System.nanoTime() - start) / 1e9, file));
+        System.out.println("sha256 " + writer.getDigest());
+    }
+
+    /**
+     * @return Frame number index of the corpus.
+     */
+    public CorpusFrame generate(int index) {
+        Random random = new Random(mix(seed, index));
+        String profile = profiles[index % profiles.length];
+        int[] resolution = resolutions[(index / profiles.length) % resolutions.length];
+        int width = resolution[0];
+        int height = resolution[1];
+        String key = width + "x" + height;
+        FrameRenderer renderer = renderers.get(key);
+        if (renderer == null) {
+            renderer = new FrameRenderer(width, height);
+            renderers.put(key, renderer);
+        }
+        // the narrow side of the crop, as CorpusFrame places it
+        int cropShort = height * 54 / 100;
+
+        if ("empty".equals(profile)) {
+            Distortion distortion = new Distortion(0f, 0f, 0f, random.nextFloat() * 1.5f, 1.5f + 4f * random.nextFloat(),
+                    random.nextBoolean() ? 0f : 60f + 120f * random.nextFloat(), 0.3f + 0.7f * random.nextFloat(), false, 0f);
+            byte[] luminance = renderer.render(random, null, distortion, width / 2f, height / 2f, null);
+            return new CorpusFrame(index, profile, width, height, null, 0, null, null, distortion, luminance);
+        }
+
+        int targetVersion = minVersion + random.nextInt(maxVersion - minVersion + 1);
+        ErrorCorrectionLevel ecLevel = EC_LEVELS[random.nextInt(EC_LEVELS.length)];
+        String text = payload(random, targetVersion, ecLevel);
+        QRCode code;
+        try {
+            code = Encoder.encode(text, ecLevel);
+        } catch (WriterException we) {
+            throw new IllegalStateException(we);
+        }
+        int dimension = code.getMatrix().getWidth();
+
+        // the symbol with its quiet zone covers half to nine tenths of the crop
+        float fraction = 0.5f + 0.4f * random.nextFloat();
+        float modulePixels = fraction * cropShort / (dimension + 8);
+        float slack = (1f - fraction) * cropShort / 2f;
+        float centerX = width / 2f + (random.nextFloat() * 2f - 1f) * slack;
+        float centerY = height / 2f + (random.nextFloat() * 2f - 1f) * slack;
+
+        float rotation = (random.nextFloat() * 2f - 1f) * 5f;
+        float tiltX = (random.nextFloat() * 2f - 1f) * 5f;
+        float tiltY = (random.nextFloat() * 2f - 1f) * 5f;
+        float blur = 0.3f * random.nextFloat();
+        float noise = 1.5f + 1.5f * random.nextFloat();
+        float glare = 0f;
+        float light = 0.85f + 0.15f * random.nextFloat();
+        boolean inverted = false;
+        if ("perspective".equals(profile)) {
+            tiltX = signed(random, 15f + 30f * random.nextFloat());
+            tiltY = signed(random, 45f * random.nextFloat());
+            if (random.nextBoolean()) {
+                float swap = tiltX;
+                tiltX = tiltY;
+                tiltY = swap;
+            }
+        } else if ("rotation".equals(profile)) {
+            rotation = 360f * random.nextFloat();
+        } else if ("blur".equals(profile)) {
+            blur = Math.max(0.6f, modulePixels * (0.15f + 0.35f * random.nextFloat()));
+        } else if ("noise".equals(profile)) {
+            noise = 6f + 12f * random.nextFloat();
+        } else if ("glare".equals(profile)) {
+            glare = 120f + 135f * random.nextFloat();
+        } else if ("lowlight".equals(profile)) {
+            light = 0.1f + 0.15f * random.nextFloat();
+            noise = 3f + 5f * random.nextFloat();
+        } else if ("inverted".equals(profile)) {
+            inverted = true;
+        } else if ("mixed".equals(profile)) {
+            rotation = 360f * random.nextFloat();
+            tiltX = (random.nextFloat() * 2f - 1f) * 20f;
+            tiltY = (random.nextFloat() * 2f - 1f) * 20f;
+            blur = Math.max(0.4f, modulePixels * (0.1f + 0.3f * random.nextFloat()));
+            noise = 3f + 5f * random.nextFloat();
+            glare = random.nextBoolean() ? 0f : 120f * random.nextFloat();
+            light = 0.3f + 0.7f * random.nextFloat();
+            inverted = random.nextInt(5) == 0;
+        }
+        Distortion distortion = new Distortion(rotation, tiltX, tiltY, blur, noise, glare, light, inverted, modulePixels);
+        float[] corners = new float[8];
+        byte[] luminance = renderer.render(random, code.getMatrix(), distortion, centerX, centerY, corners);
+        return new CorpusFrame(index, profile, width, height, text, code.getVersion().getVersionNumber(), ecLevel,
+                corners, distortion, luminance);
+    }
+
+    /**
+     * @return Text in byte mode just too long for the version below, so that the encoder
+     * picks the target version.
+     */
+    private static String payload(Random random, int version, ErrorCorrectionLevel ecLevel) {
+        int min = version == 1 ? 1 : byteCapacity(version - 1, ecLevel) + 1;
+        int max = byteCapacity(version, ecLevel);
+        int length = min + random.nextInt(max - min + 1);
+        StringBuilder text = new StringBuilder(length);
+        // a lower case letter first keeps the encoder in byte mode
+        text.append(ALPHABET.charAt(random.nextInt(26)));
+        while (text.length() < length) {
+            text.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+        }
+        return text.toString();
+    }
+
+    private static int byteCapacity(int versionNumber, ErrorCorrectionLevel ecLevel) {
+        Version version = Version.getVersionForNumber(versionNumber);
+        int dataCodewords = version.getTotalCodewords() - version.getECBlocksForLevel(ecLevel).getTotalECCodewords();
+        return (dataCodewords * 8 - 4 - Mode.BYTE.getCharacterCountBits(version)) / 8;
+    }
+
+    private static float signed(Random random, float value) {
+        return random.nextBoolean() ? value : -value;
+    }
+
+    /**
+     * The seed of frame index, scrambled so that neighbouring frames do not start alike.
+     */
+    private static long mix(long seed, int index) {
+        long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int indexOf(String profile) {
+        for (int i = 0; i < PROFILES.length; i++) {
+            if (PROFILES[i].equals(profile)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[][] parseResolutions(String value) {
+        List<int[]> resolutions = new ArrayList<int[]>();
+        for (String resolution : value.split(",")) {
+            int x = resolution.indexOf('x');
+            if (x < 0) {
+                throw new IllegalArgumentException("Bad resolution " + resolution);
+            }
+            int width = Integer.parseInt(resolution.substring(0, x).trim());
+            int height = Integer.parseInt(resolution.substring(x + 1).trim());
+            if (width < height || width <= 0 || height <= 0 || (width & 1) != 0 || (height & 1) != 0) {
+                throw new IllegalArgumentException("Resolutions are landscape with even sides: " + resolution);
+            }
+            resolutions.add(new int[]{width, height});
+        }
+        return resolutions.toArray(new int[resolutions.size()][]);
+    }
+
+}
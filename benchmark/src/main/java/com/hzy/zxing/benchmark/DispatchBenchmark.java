@@ -0,0 +1,164 @@
+package com.hzy.zxing.benchmark;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.hzy.zxing.decoding.DecodeConfig;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Compares calling the session's readers directly through {@link DecodeConfig} with
+ * ZXing's {@link MultiFormatReader}, on a 360x360 crop with a QR Code and on a blank
+ * one, each binarized with {@link HybridBinarizer} per decode like the scan loop does.
+ * Prints microseconds and allocated bytes per decode in the steady state; the cases are
+ * run in {@value #ROUNDS} rounds, of which the last is the one to compare.
+ * <p>
+ * Options, as --name value: frames (measured decodes per case, default 5000), warmup
+ * (decodes before measuring, default 2000) and formats, comma-separated BarcodeFormat
+ * names, QR_CODE by default.
+ */
+public final class DispatchBenchmark {
+
+    private static final int SIZE = 360;
+    private static final int ROUNDS = 3;
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final int measuredFrames;
+    private final int warmupFrames;
+
+    private DispatchBenchmark(int measuredFrames, int warmupFrames) {
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        threads.setThreadAllocatedMemoryEnabled(true);
+        this.measuredFrames = measuredFrames;
+        this.warmupFrames = warmupFrames;
+    }
+
+    private interface Decoder {
+        Result decode(BinaryBitmap bitmap) throws ReaderException;
+    }
+
+    public static void main(String[] args) throws WriterException {
+        int frames = 5000;
+        int warmup = 2000;
+        Collection<BarcodeFormat> formats = EnumSet.of(BarcodeFormat.QR_CODE);
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if ("--frames".equals(args[i])) {
+                frames = Integer.parseInt(args[i + 1]);
+            } else if ("--warmup".equals(args[i])) {
+                warmup = Integer.parseInt(args[i + 1]);
+            } else if ("--formats".equals(args[i])) {
+                formats = EnumSet.noneOf(BarcodeFormat.class);
+                for (String name : args[i + 1].split(",")) {
+                    formats.add(BarcodeFormat.valueOf(name.trim()));
+                }
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
+
+        final DecodeConfig decodeConfig = new DecodeConfig(hints);
+        final MultiFormatReader multiFormatReader = new MultiFormatReader();
+        multiFormatReader.setHints(hints);
+        Decoder direct = new Decoder() {
+            public Result decode(BinaryBitmap bitmap) throws ReaderException {
+                return decodeConfig.decode(bitmap);
+            }
+        };
+        Decoder generic = new Decoder() {
+            public Result decode(BinaryBitmap bitmap) throws ReaderException {
+                return multiFormatReader.decodeWithState(bitmap);
+            }
+        };
+
+        LuminanceSource code = codeCrop();
+        LuminanceSource blank = blankCrop();
+        DispatchBenchmark benchmark = new DispatchBenchmark(frames, warmup);
+        System.out.println("formats " + formats);
+        System.out.println(String.format("%-24s %10s %10s %8s", "case", "us", "bytes", "read"));
+        // the cases take turns, so that the JIT has settled by the last round
+        for (int round = 1; round <= ROUNDS; round++) {
+            System.out.println("round " + round);
+            benchmark.run("DecodeConfig, code", direct, code);
+            benchmark.run("MultiFormatReader, code", generic, code);
+            benchmark.run("DecodeConfig, blank", direct, blank);
+            benchmark.run("MultiFormatReader, blank", generic, blank);
+        }
+    }
+
+    private void run(String name, Decoder decoder, LuminanceSource source) {
+        for (int i = 0; i < warmupFrames; i++) {
+            decode(decoder, source);
+        }
+        long thread = Thread.currentThread().getId();
+        int read = 0;
+        long startBytes = threads.getThreadAllocatedBytes(thread);
+        long startNanos = System.nanoTime();
+        for (int i = 0; i < measuredFrames; i++) {
+            if (decode(decoder, source)) {
+                read++;
+            }
+        }
+        long nanos = System.nanoTime() - startNanos;
+        long bytes = threads.getThreadAllocatedBytes(thread) - startBytes;
+        System.out.println(String.format(Locale.US, "%-24s %10.1f %10d %8d", name,
+                nanos / 1000.0 / measuredFrames, bytes / measuredFrames, read));
+    }
+
+    private static boolean decode(Decoder decoder, LuminanceSource source) {
+        try {
+            return decoder.decode(new BinaryBitmap(new HybridBinarizer(source))) != null;
+        } catch (ReaderException re) {
+            return false;
+        }
+    }
+
+    /**
+     * A version 2 code filling most of the crop, dark on a light grey gradient.
+     */
+    private static LuminanceSource codeCrop() throws WriterException {
+        BitMatrix matrix = new QRCodeWriter().encode("https://github.com/huangziye/scanner",
+                BarcodeFormat.QR_CODE, SIZE * 3 / 4, SIZE * 3 / 4);
+        int offset = (SIZE - matrix.getWidth()) / 2;
+        byte[] luminance = gradient();
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                if (matrix.get(x, y)) {
+                    luminance[(y + offset) * SIZE + x + offset] = (byte) 30;
+                }
+            }
+        }
+        return new PlanarYUVLuminanceSource(luminance, SIZE, SIZE, 0, 0, SIZE, SIZE, false);
+    }
+
+    private static LuminanceSource blankCrop() {
+        return new PlanarYUVLuminanceSource(gradient(), SIZE, SIZE, 0, 0, SIZE, SIZE, false);
+    }
+
+    private static byte[] gradient() {
+        byte[] luminance = new byte[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                luminance[y * SIZE + x] = (byte) (170 + x * 60 / SIZE);
+            }
+        }
+        return luminance;
+    }
+
+}
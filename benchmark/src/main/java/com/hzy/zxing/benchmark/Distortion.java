@@ -0,0 +1,122 @@
+package com.hzy.zxing.benchmark;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * How a synthetic frame was photographed: the pose of the code, the optics and the light.
+ * Part of a frame's ground truth, so that accuracy can be broken down by distortion.
+ */
+public final class Distortion {
+
+    /**
+     * Rotation in the image plane, degrees.
+     */
+    final float rotation;
+    /**
+     * Tilt of the code away from the camera around the vertical and the horizontal axis,
+     * degrees.
+     */
+    final float tiltX;
+    final float tiltY;
+    /**
+     * Sigma of the Gaussian blur, pixels; 0 for a sharp frame.
+     */
+    final float blur;
+    /**
+     * Sigma of the sensor noise, luminance levels.
+     */
+    final float noise;
+    /**
+     * Peak brightness a specular highlight adds, luminance levels; 0 without glare.
+     */
+    final float glare;
+    /**
+     * Illumination, 1 for a well lit scene. Below 0.6 the camera's gain, up to 4, brightens
+     * the frame and its noise.
+     */
+    final float light;
+    /**
+     * Light modules on a dark background.
+     */
+    final boolean inverted;
+    /**
+     * Size of a module in the frame before tilting, pixels.
+     */
+    final float modulePixels;
+
+    Distortion(float rotation, float tiltX, float tiltY, float blur, float noise, float glare, float light,
+               boolean inverted, float modulePixels) {
+        this.rotation = rotation;
+        this.tiltX = tiltX;
+        this.tiltY = tiltY;
+        this.blur = blur;
+        this.noise = noise;
+        this.glare = glare;
+        this.light = light;
+        this.inverted = inverted;
+        this.modulePixels = modulePixels;
+    }
+
+    public float getRotation() {
+        return rotation;
+    }
+
+    public float getTiltX() {
+        return tiltX;
+    }
+
+    public float getTiltY() {
+        return tiltY;
+    }
+
+    public float getBlur() {
+        return blur;
+    }
+
+    public float getNoise() {
+        return noise;
+    }
+
+    public float getGlare() {
+        return glare;
+    }
+
+    public float getLight() {
+        return light;
+    }
+
+    public boolean isInverted() {
+        return inverted;
+    }
+
+    public float getModulePixels() {
+        return modulePixels;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeFloat(rotation);
+        out.writeFloat(tiltX);
+        out.writeFloat(tiltY);
+        out.writeFloat(blur);
+        out.writeFloat(noise);
+        out.writeFloat(glare);
+        out.writeFloat(light);
+        out.writeBoolean(inverted);
+        out.writeFloat(modulePixels);
+    }
+
+    static Distortion read(DataInput in) throws IOException {
+        return new Distortion(in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat(),
+                in.readFloat(), in.readFloat(), in.readBoolean(), in.readFloat());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "rotation=%.1f tilt=%.1f/%.1f blur=%.2f noise=%.1f glare=%.0f light=%.2f%s module=%.2fpx",
+                rotation, tiltX, tiltY, blur, noise, glare, light, inverted ? " inverted" : "", modulePixels);
+    }
+
+}
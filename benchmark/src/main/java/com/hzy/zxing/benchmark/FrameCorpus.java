@@ -0,0 +1,239 @@
+package com.hzy.zxing.benchmark;
+
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The corpus file: gzip of a header, the frames one after the other, and the SHA-256 of
+ * everything before it, big-endian throughout. Frames are streamed, a corpus is never
+ * held in memory as a whole.
+ * <pre>
+ * header  int magic "QRCF", short format version, long seed, int frame count
+ * frame   int index, UTF profile, int width, int height, boolean has code,
+ *         [UTF text, byte version, byte EC level bits, 8 float corners], distortion,
+ *         width * height bytes Y plane
+ * trailer 32 bytes SHA-256 of the uncompressed header and frames
+ * </pre>
+ * The digest identifies the content independent of the zlib that compressed it: two
+ * corpora generated from the same seed and options have the same one.
+ */
+public final class FrameCorpus {
+
+    static final int MAGIC = 0x51524346;
+    static final int FORMAT_VERSION = 1;
+
+    private FrameCorpus() {
+    }
+
+    public static Writer create(File file, long seed, int frameCount) throws IOException {
+        return new Writer(file, seed, frameCount);
+    }
+
+    public static Reader open(File file) throws IOException {
+        return new Reader(file);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException(nsae);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0x0F, 16)).append(Character.forDigit(b & 0x0F, 16));
+        }
+        return hex.toString();
+    }
+
+    public static final class Writer implements Closeable {
+
+        private final MessageDigest digest = sha256();
+        private final DigestOutputStream digestOut;
+        private final DataOutputStream out;
+        private final int frameCount;
+        private int written;
+        private String hex;
+
+        private Writer(File file, long seed, int frameCount) throws IOException {
+            this.frameCount = frameCount;
+            digestOut = new DigestOutputStream(new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(file)), 64 * 1024), digest);
+            out = new DataOutputStream(digestOut);
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeLong(seed);
+            out.writeInt(frameCount);
+        }
+
+        public void write(CorpusFrame frame) throws IOException {
+            if (written == frameCount) {
+                throw new IllegalStateException("The corpus holds " + frameCount + " frames");
+            }
+            out.writeInt(frame.index);
+            out.writeUTF(frame.profile);
+            out.writeInt(frame.width);
+            out.writeInt(frame.height);
+            out.writeBoolean(frame.text != null);
+            if (frame.text != null) {
+                out.writeUTF(frame.text);
+                out.writeByte(frame.version);
+                out.writeByte(frame.ecLevel.getBits());
+                for (float corner : frame.corners) {
+                    out.writeFloat(corner);
+                }
+            }
+            frame.distortion.write(out);
+            out.write(frame.luminance, 0, frame.width * frame.height);
+            written++;
+        }
+
+        /**
+         * Writes the digest and closes the file.
+         *
+         * @throws IllegalStateException if fewer frames were written than announced.
+         */
+        @Override
+        public void close() throws IOException {
+            if (hex != null) {
+                return;
+            }
+            try {
+                if (written != frameCount) {
+                    throw new IllegalStateException(written + " of " + frameCount + " frames written");
+                }
+                out.flush();
+                digestOut.on(false);
+                byte[] sha = digest.digest();
+                out.write(sha);
+                hex = toHex(sha);
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * @return The SHA-256 of the content, hex, once closed.
+         */
+        public String getDigest() {
+            return hex;
+        }
+    }
+
+    public static final class Reader implements Closeable {
+
+        private final MessageDigest digest = sha256();
+        private final DigestInputStream digestIn;
+        private final DataInputStream in;
+        private final long seed;
+        private final int frameCount;
+        private int read;
+        private String hex;
+
+        private Reader(File file) throws IOException {
+            digestIn = new DigestInputStream(new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)), 64 * 1024), digest);
+            in = new DataInputStream(digestIn);
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException(file + " is not a frame corpus");
+                }
+                int format = in.readShort();
+                if (format != FORMAT_VERSION) {
+                    throw new IOException("Unsupported corpus format " + format);
+                }
+                seed = in.readLong();
+                frameCount = in.readInt();
+            } catch (IOException ioe) {
+                in.close();
+                throw ioe;
+            }
+        }
+
+        public long getSeed() {
+            return seed;
+        }
+
+        public int getFrameCount() {
+            return frameCount;
+        }
+
+        /**
+         * @return The next frame, or null after the last one, whose digest has then been
+         * checked.
+         * @throws IOException if the file is truncated or its digest does not match.
+         */
+        public CorpusFrame next() throws IOException {
+            if (read == frameCount) {
+                verify();
+                return null;
+            }
+            int index = in.readInt();
+            String profile = in.readUTF();
+            int width = in.readInt();
+            int height = in.readInt();
+            String text = null;
+            int version = 0;
+            ErrorCorrectionLevel ecLevel = null;
+            float[] corners = null;
+            if (in.readBoolean()) {
+                text = in.readUTF();
+                version = in.readUnsignedByte();
+                ecLevel = ErrorCorrectionLevel.forBits(in.readUnsignedByte());
+                corners = new float[8];
+                for (int i = 0; i < corners.length; i++) {
+                    corners[i] = in.readFloat();
+                }
+            }
+            Distortion distortion = Distortion.read(in);
+            byte[] luminance = new byte[width * height];
+            in.readFully(luminance);
+            read++;
+            return new CorpusFrame(index, profile, width, height, text, version, ecLevel, corners, distortion, luminance);
+        }
+
+        private void verify() throws IOException {
+            if (hex != null) {
+                return;
+            }
+            digestIn.on(false);
+            byte[] expected = new byte[32];
+            in.readFully(expected);
+            byte[] actual = digest.digest();
+            if (!Arrays.equals(expected, actual)) {
+                throw new IOException("Corpus digest mismatch, the file is damaged");
+            }
+            hex = toHex(actual);
+        }
+
+        /**
+         * @return The SHA-256 of the content, hex, once all frames have been read.
+         */
+        public String getDigest() {
+            return hex;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,272 @@
+package com.hzy.zxing.benchmark;
+
+import com.google.zxing.common.PerspectiveTransform;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+import java.util.Random;
+
+/**
+ * Photographs a QR Code symbol printed on a paper label lying on a desk. The label is posed
+ * in 3D in front of a pinhole camera, sampled 2x2 per pixel, lit with vignetting and an
+ * optional specular highlight, blurred by the lens and read out with shot and sensor noise.
+ * In dim light the camera's gain makes up for up to {@link #MAX_GAIN} times less light,
+ * and amplifies the noise with it, as auto exposure does.
+ * <p>
+ * Only {@link StrictMath} and float arithmetic on values drawn from the given
+ * {@link Random} are used, so a frame is the same bit for bit on every JVM.
+ */
+final class FrameRenderer {
+
+    private static final int QUIET_ZONE = 4;
+    /**
+     * Paper around the quiet zone, in modules.
+     */
+    private static final int LABEL_MARGIN = 2;
+    private static final int DESK_ITEMS = 5;
+    private static final float MAX_GAIN = 4f;
+    /**
+     * Illumination which auto exposure brings the frame up to, if the gain allows.
+     */
+    private static final float TARGET_LIGHT = 0.6f;
+
+    private final int width;
+    private final int height;
+    private final float[] plane;
+    private final float[] points;
+    private final float[] row;
+
+    FrameRenderer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        plane = new float[width * height];
+        points = new float[width * 4];
+        row = new float[Math.max(width, height)];
+    }
+
+    /**
+     * @param matrix  The symbol, null for a frame without a code.
+     * @param centerX Where the middle of the symbol is in the frame.
+     * @param corners Receives the symbol's corners in the frame, if there is a symbol.
+     * @return The Y plane.
+     */
+    byte[] render(Random random, ByteMatrix matrix, Distortion distortion, float centerX, float centerY,
+                  float[] corners) {
+        float paper = 0.72f + 0.16f * random.nextFloat();
+        float ink = 0.06f + 0.10f * random.nextFloat();
+        if (distortion.inverted) {
+            float swap = paper;
+            paper = ink;
+            ink = swap;
+        }
+        Desk desk = new Desk(random, width, height);
+        if (matrix == null) {
+            sampleDesk(desk);
+        } else {
+            sampleLabel(matrix, distortion, centerX, centerY, corners, desk, paper, ink);
+        }
+        light(random, distortion, centerX, centerY, matrix == null ? 0f : matrix.getWidth() * distortion.modulePixels);
+        if (distortion.blur > 0f) {
+            blur(distortion.blur);
+        }
+        return expose(random, distortion.noise, Math.max(1f, Math.min(MAX_GAIN, TARGET_LIGHT / distortion.light)));
+    }
+
+    private void sampleDesk(Desk desk) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane[y * width + x] = desk.reflectance(x + 0.5f, y + 0.5f);
+            }
+        }
+    }
+
+    /**
+     * Averages the reflectance of four samples per pixel, mapped back onto the label.
+     */
+    private void sampleLabel(ByteMatrix matrix, Distortion distortion, float centerX, float centerY, float[] corners,
+                             Desk desk, float paper, float ink) {
+        int dimension = matrix.getWidth();
+        project(dimension, distortion, centerX, centerY, corners);
+        PerspectiveTransform frameToModules = PerspectiveTransform.quadrilateralToQuadrilateral(
+                corners[0], corners[1], corners[2], corners[3], corners[4], corners[5], corners[6], corners[7],
+                0f, 0f, dimension, 0f, dimension, dimension, 0f, dimension);
+        float edge = QUIET_ZONE + LABEL_MARGIN;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                plane[y * width + x] = 0f;
+            }
+            for (int sub = 0; sub < 2; sub++) {
+                float sampleY = y + 0.25f + 0.5f * sub;
+                for (int x = 0; x < width; x++) {
+                    points[x * 4] = x + 0.25f;
+                    points[x * 4 + 1] = sampleY;
+                    points[x * 4 + 2] = x + 0.75f;
+                    points[x * 4 + 3] = sampleY;
+                }
+                frameToModules.transformPoints(points);
+                for (int i = 0; i < width * 2; i++) {
+                    float u = points[i * 2];
+                    float v = points[i * 2 + 1];
+                    float reflectance;
+                    if (u < -edge || v < -edge || u >= dimension + edge || v >= dimension + edge) {
+                        reflectance = desk.reflectance(i / 2 + 0.25f + 0.5f * (i & 1), sampleY);
+                    } else if (u >= 0f && v >= 0f && u < dimension && v < dimension && matrix.get((int) u, (int) v) == 1) {
+                        reflectance = ink;
+                    } else {
+                        reflectance = paper;
+                    }
+                    plane[y * width + i / 2] += reflectance * 0.25f;
+                }
+            }
+        }
+    }
+
+    /**
+     * Poses the symbol: tilted around its middle, turned in the image plane and seen by a
+     * camera whose focal length is the frame width, about 53 degrees across.
+     */
+    private void project(int dimension, Distortion distortion, float centerX, float centerY, float[] corners) {
+        double focal = width;
+        double tiltX = StrictMath.toRadians(distortion.tiltX);
+        double tiltY = StrictMath.toRadians(distortion.tiltY);
+        double rotation = StrictMath.toRadians(distortion.rotation);
+        double half = dimension * distortion.modulePixels / 2.0;
+        double[] xs = {-half, half, half, -half};
+        double[] ys = {-half, -half, half, half};
+        for (int i = 0; i < 4; i++) {
+            // around the vertical axis, then the horizontal one
+            double x = xs[i] * StrictMath.cos(tiltX);
+            double z = -xs[i] * StrictMath.sin(tiltX);
+            double y = ys[i] * StrictMath.cos(tiltY) - z * StrictMath.sin(tiltY);
+            z = ys[i] * StrictMath.sin(tiltY) + z * StrictMath.cos(tiltY);
+            double scale = focal / (focal + z);
+            double px = x * scale;
+            double py = y * scale;
+            corners[i * 2] = (float) (centerX + px * StrictMath.cos(rotation) - py * StrictMath.sin(rotation));
+            corners[i * 2 + 1] = (float) (centerY + px * StrictMath.sin(rotation) + py * StrictMath.cos(rotation));
+        }
+    }
+
+    /**
+     * Turns reflectance into luminance: light falling off towards the corners, and a
+     * highlight somewhere on the symbol.
+     */
+    private void light(Random random, Distortion distortion, float centerX, float centerY, float symbolSize) {
+        float vignette = 0.2f + 0.2f * random.nextFloat();
+        float glareX = centerX + (random.nextFloat() - 0.5f) * symbolSize * 0.6f;
+        float glareY = centerY + (random.nextFloat() - 0.5f) * symbolSize * 0.6f;
+        float glareSigma = Math.max(8f, (0.12f + 0.15f * random.nextFloat()) * Math.max(symbolSize, height / 3f));
+        float halfWidth = width / 2f;
+        float halfHeight = height / 2f;
+        float radius2 = halfWidth * halfWidth + halfHeight * halfHeight;
+        for (int y = 0; y < height; y++) {
+            float dy = y - halfHeight;
+            float gy = y - glareY;
+            for (int x = 0; x < width; x++) {
+                float dx = x - halfWidth;
+                float illumination = distortion.light * (1f - vignette * (dx * dx + dy * dy) / radius2);
+                float value = plane[y * width + x] * illumination * 255f;
+                if (distortion.glare > 0f) {
+                    float gx = x - glareX;
+                    value += distortion.glare * (float) StrictMath.exp(-(gx * gx + gy * gy) / (2f * glareSigma * glareSigma));
+                }
+                plane[y * width + x] = value;
+            }
+        }
+    }
+
+    /**
+     * Separable Gaussian, edges clamped.
+     */
+    private void blur(float sigma) {
+        int radius = (int) Math.ceil(sigma * 3f);
+        float[] kernel = new float[radius * 2 + 1];
+        float sum = 0f;
+        for (int i = -radius; i <= radius; i++) {
+            kernel[i + radius] = (float) StrictMath.exp(-(i * i) / (2.0 * sigma * sigma));
+            sum += kernel[i + radius];
+        }
+        for (int i = 0; i < kernel.length; i++) {
+            kernel[i] /= sum;
+        }
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            System.arraycopy(plane, offset, row, 0, width);
+            for (int x = 0; x < width; x++) {
+                float value = 0f;
+                for (int k = -radius; k <= radius; k++) {
+                    value += kernel[k + radius] * row[Math.min(width - 1, Math.max(0, x + k))];
+                }
+                plane[offset + x] = value;
+            }
+        }
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                row[y] = plane[y * width + x];
+            }
+            for (int y = 0; y < height; y++) {
+                float value = 0f;
+                for (int k = -radius; k <= radius; k++) {
+                    value += kernel[k + radius] * row[Math.min(height - 1, Math.max(0, y + k))];
+                }
+                plane[y * width + x] = value;
+            }
+        }
+    }
+
+    /**
+     * Adds shot noise, which grows with the signal, and the sensor's read noise, amplifies
+     * both with the gain, then quantizes to 8 bits.
+     */
+    private byte[] expose(Random random, float noise, float gain) {
+        byte[] luminance = new byte[width * height];
+        float read2 = noise * noise;
+        for (int i = 0; i < luminance.length; i++) {
+            float value = plane[i];
+            float sigma = (float) StrictMath.sqrt(read2 + 0.08f * Math.max(0f, value));
+            value = gain * (value + sigma * (float) random.nextGaussian());
+            int level = (int) (value + 0.5f);
+            luminance[i] = (byte) Math.min(255, Math.max(0, level));
+        }
+        return luminance;
+    }
+
+    /**
+     * The surface around the label: a shaded desk with a few darker and lighter things on it.
+     */
+    private static final class Desk {
+
+        private final float base;
+        private final float gradientX;
+        private final float gradientY;
+        private final float width;
+        private final float height;
+        private final float[] items = new float[DESK_ITEMS * 5];
+
+        Desk(Random random, int width, int height) {
+            this.width = width;
+            this.height = height;
+            base = 0.25f + 0.3f * random.nextFloat();
+            gradientX = (random.nextFloat() - 0.5f) * 0.2f;
+            gradientY = (random.nextFloat() - 0.5f) * 0.2f;
+            for (int i = 0; i < DESK_ITEMS; i++) {
+                float left = random.nextFloat() * width;
+                float top = random.nextFloat() * height;
+                items[i * 5] = left;
+                items[i * 5 + 1] = top;
+                items[i * 5 + 2] = left + (0.1f + 0.3f * random.nextFloat()) * width;
+                items[i * 5 + 3] = top + (0.1f + 0.3f * random.nextFloat()) * height;
+                items[i * 5 + 4] = 0.05f + 0.8f * random.nextFloat();
+            }
+        }
+
+        float reflectance(float x, float y) {
+            for (int i = DESK_ITEMS - 1; i >= 0; i--) {
+                if (x >= items[i * 5] && y >= items[i * 5 + 1] && x < items[i * 5 + 2] && y < items[i * 5 + 3]) {
+                    return items[i * 5 + 4];
+                }
+            }
+            return base + gradientX * (x / width - 0.5f) + gradientY * (y / height - 0.5f);
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package com.hzy.zxing.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * POST /decode. The body is either one image, answered with one JSON object, or a
+ * multipart/form-data batch, answered as newline-delimited JSON, one object per image in
+ * the order the images finish, each written as soon as it is decoded.
+ * <p>
+ * A request whose images do not all fit into the {@link DecodePool} right now is answered
+ * with 429 and Retry-After, a batch that could never fit with 413. When the pool is full,
+ * or the declared length is over the limit, that is answered before the body is read.
+ */
+final class DecodeEndpoint implements HttpHandler {
+
+    private static final String JSON = "application/json; charset=utf-8";
+    private static final String NDJSON = "application/x-ndjson; charset=utf-8";
+
+    private final DecodePool pool;
+    private final ServerStats stats;
+    private final int maxRequestBytes;
+
+    DecodeEndpoint(DecodePool pool, ServerStats stats, int maxRequestBytes) {
+        this.pool = pool;
+        this.stats = stats;
+        this.maxRequestBytes = maxRequestBytes;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                respond(exchange, 405, Json.error("POST an image or a multipart batch of images"));
+                return;
+            }
+            stats.onRequest();
+            if (contentLength(exchange) > maxRequestBytes) {
+                respond(exchange, 413, Json.error("request larger than " + maxRequestBytes + " bytes"));
+                return;
+            }
+            if (pool.isFull()) {
+                rejectBusy(exchange);
+                return;
+            }
+            byte[] body = readBody(exchange.getRequestBody());
+            if (body == null) {
+                respond(exchange, 413, Json.error("request larger than " + maxRequestBytes + " bytes"));
+                return;
+            }
+            if (body.length == 0) {
+                respond(exchange, 400, Json.error("empty request"));
+                return;
+            }
+            String boundary = MultipartParser.getBoundary(exchange.getRequestHeaders().getFirst("Content-Type"));
+            List<ImagePart> parts;
+            if (boundary == null) {
+                parts = Collections.singletonList(new ImagePart(0, null, body, 0, body.length));
+            } else {
+                try {
+                    parts = MultipartParser.parse(body, body.length, boundary);
+                } catch (IOException ioe) {
+                    respond(exchange, 400, Json.error(ioe.getMessage()));
+                    return;
+                }
+                if (parts.isEmpty()) {
+                    respond(exchange, 400, Json.error("no images in batch"));
+                    return;
+                }
+            }
+            if (parts.size() > pool.getCapacity()) {
+                respond(exchange, 413, Json.error("batch of " + parts.size() + " images, at most "
+                        + pool.getCapacity() + " fit"));
+                return;
+            }
+            if (!pool.tryReserve(parts.size())) {
+                rejectBusy(exchange);
+                return;
+            }
+            BlockingQueue<DecodeOutcome> results = new LinkedBlockingQueue<DecodeOutcome>();
+            for (ImagePart part : parts) {
+                pool.submit(part, results);
+            }
+            if (boundary == null) {
+                respond(exchange, 200, take(results).toJson());
+            } else {
+                stream(exchange, results, parts.size());
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void rejectBusy(HttpExchange exchange) throws IOException {
+        stats.onRejected();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        respond(exchange, 429, Json.error("decode queue full"));
+    }
+
+    /**
+     * @return The declared length of the body, or -1 if it is chunked or not a number.
+     */
+    private static long contentLength(HttpExchange exchange) {
+        String value = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (value == null) {
+            return -1L;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException nfe) {
+            return -1L;
+        }
+    }
+
+    /**
+     * Writes each outcome as it arrives. If the client goes away the images still finish,
+     * and free their places in the pool, but nobody reads them.
+     */
+    private void stream(HttpExchange exchange, BlockingQueue<DecodeOutcome> results, int count) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", NDJSON);
+        // 0: chunked, the length is not known yet
+        exchange.sendResponseHeaders(200, 0L);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < count; i++) {
+            out.write((take(results).toJson() + "\n").getBytes("UTF-8"));
+            out.flush();
+        }
+        out.close();
+    }
+
+    private static DecodeOutcome take(BlockingQueue<DecodeOutcome> results) throws IOException {
+        try {
+            return results.take();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while decoding");
+        }
+    }
+
+    /**
+     * @return The body, or null if it is longer than the limit.
+     */
+    private byte[] readBody(InputStream in) throws IOException {
+        byte[] buffer = new byte[8192];
+        int length = 0;
+        int read;
+        while ((read = in.read(buffer, length, buffer.length - length)) != -1) {
+            length += read;
+            if (length > maxRequestBytes) {
+                return null;
+            }
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxRequestBytes + 1));
+            }
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", JSON);
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+}
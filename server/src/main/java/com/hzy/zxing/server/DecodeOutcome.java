@@ -0,0 +1,100 @@
+package com.hzy.zxing.server;
+
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+
+import java.util.Map;
+
+/**
+ * What became of one image: the barcode, nothing found, or an error such as an unreadable
+ * image, with the time it waited for a worker and the time it took to decode.
+ */
+final class DecodeOutcome {
+
+    static final String STATUS_OK = "ok";
+    static final String STATUS_NOT_FOUND = "not_found";
+    static final String STATUS_ERROR = "error";
+
+    private final ImagePart part;
+    private final String status;
+    private final Result result;
+    private final String error;
+    private final int attempts;
+    private long queueNanos;
+    private long decodeNanos;
+
+    private DecodeOutcome(ImagePart part, String status, Result result, String error, int attempts) {
+        this.part = part;
+        this.status = status;
+        this.result = result;
+        this.error = error;
+        this.attempts = attempts;
+    }
+
+    static DecodeOutcome decoded(ImagePart part, Result result, int attempts) {
+        return new DecodeOutcome(part, STATUS_OK, result, null, attempts);
+    }
+
+    static DecodeOutcome notFound(ImagePart part, int attempts) {
+        return new DecodeOutcome(part, STATUS_NOT_FOUND, null, null, attempts);
+    }
+
+    static DecodeOutcome failed(ImagePart part, String error) {
+        return new DecodeOutcome(part, STATUS_ERROR, null, error, 0);
+    }
+
+    void setTimes(long queueNanos, long decodeNanos) {
+        this.queueNanos = queueNanos;
+        this.decodeNanos = decodeNanos;
+    }
+
+    String getStatus() {
+        return status;
+    }
+
+    long getQueueNanos() {
+        return queueNanos;
+    }
+
+    /**
+     * @return Time from the request handing the image over until it was decoded.
+     */
+    long getTotalNanos() {
+        return queueNanos + decodeNanos;
+    }
+
+    String toJson() {
+        StringBuilder builder = new StringBuilder(128);
+        builder.append("{\"index\":").append(part.getIndex());
+        builder.append(",\"name\":");
+        Json.appendString(builder, part.getName());
+        builder.append(",\"status\":");
+        Json.appendString(builder, status);
+        if (result != null) {
+            builder.append(",\"format\":");
+            Json.appendString(builder, result.getBarcodeFormat().toString());
+            builder.append(",\"text\":");
+            Json.appendString(builder, result.getText());
+            Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+            if (metadata != null && metadata.containsKey(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE)) {
+                // a symbol whose set was not complete in this image, for the client to join
+                int sequence = (Integer) metadata.get(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE);
+                builder.append(",\"structuredAppend\":{\"index\":").append(sequence >> 4)
+                        .append(",\"count\":").append((sequence & 0x0F) + 1)
+                        .append(",\"parity\":").append(metadata.get(ResultMetadataType.STRUCTURED_APPEND_PARITY))
+                        .append('}');
+            }
+        }
+        if (error != null) {
+            builder.append(",\"error\":");
+            Json.appendString(builder, error);
+        }
+        builder.append(",\"attempts\":").append(attempts);
+        builder.append(",\"queueMs\":");
+        Json.appendMillis(builder, queueNanos);
+        builder.append(",\"decodeMs\":");
+        Json.appendMillis(builder, decodeNanos);
+        return builder.append('}').toString();
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.hzy.zxing.server;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.hzy.zxing.decoding.ImageDecoder;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Decodes images on a fixed number of worker threads, each with its own
+ * {@link ImageDecoder}. At most workers + queue size images are accepted at a time: a
+ * request reserves a place for each of its images up front, all or none, so a batch is
+ * never turned away half way. More workers raise the throughput until the cores are busy,
+ * a shorter queue keeps the p99 latency down by refusing work sooner.
+ */
+final class DecodePool {
+
+    private final int workers;
+    private final int queueSize;
+    private final long maxPixels;
+    private final ServerStats stats;
+    private final Semaphore permits;
+    private final ThreadPoolExecutor executor;
+    private final ThreadLocal<ImageDecoder> decoders;
+
+    /**
+     * @param maxPixels Images with more pixels are refused with an error.
+     * @param hints     Hints for the decoders, see {@link ImageDecoder}.
+     */
+    DecodePool(int workers, int queueSize, long maxPixels, final Map<DecodeHintType, ?> hints, ServerStats stats) {
+        this.workers = workers;
+        this.queueSize = queueSize;
+        this.maxPixels = maxPixels;
+        this.stats = stats;
+        permits = new Semaphore(workers + queueSize);
+        // the permits bound the queue, so it never refuses a task itself
+        executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "DecodeWorker-" + count.incrementAndGet());
+            }
+        });
+        decoders = new ThreadLocal<ImageDecoder>() {
+            @Override
+            protected ImageDecoder initialValue() {
+                return new ImageDecoder(hints);
+            }
+        };
+    }
+
+    int getWorkers() {
+        return workers;
+    }
+
+    int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return The most images a single request may hold.
+     */
+    int getCapacity() {
+        return workers + queueSize;
+    }
+
+    /**
+     * @return Images accepted and not yet decoded.
+     */
+    int getInFlight() {
+        return getCapacity() - permits.availablePermits();
+    }
+
+    /**
+     * @return Whether no image would be accepted right now, a cheap check before a request
+     * is read.
+     */
+    boolean isFull() {
+        return permits.availablePermits() == 0;
+    }
+
+    /**
+     * Reserves places for a request's images; each {@link #submit} frees one when its image
+     * is done.
+     *
+     * @return Whether all of them fit.
+     */
+    boolean tryReserve(int images) {
+        return permits.tryAcquire(images);
+    }
+
+    /**
+     * Decodes an image for which a place was reserved.
+     *
+     * @param results Receives the outcome.
+     */
+    void submit(ImagePart part, BlockingQueue<DecodeOutcome> results) {
+        DecodeTask task = new DecodeTask(part, results);
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ree) {
+            // shutting down
+            task.finish(DecodeOutcome.failed(part, "server shutting down"), System.nanoTime());
+        }
+    }
+
+    /**
+     * Lets the workers finish the images already accepted, then stops them.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private final class DecodeTask implements Runnable {
+
+        private final ImagePart part;
+        private final BlockingQueue<DecodeOutcome> results;
+        private final long queued = System.nanoTime();
+
+        DecodeTask(ImagePart part, BlockingQueue<DecodeOutcome> results) {
+            this.part = part;
+            this.results = results;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            DecodeOutcome outcome = null;
+            ImageDecoder decoder = decoders.get();
+            try {
+                LuminanceSource source = part.toLuminanceSource(maxPixels);
+                Result result = decoder.decode(source);
+                outcome = DecodeOutcome.decoded(part, result, decoder.getAttempts());
+            } catch (NotFoundException nfe) {
+                outcome = DecodeOutcome.notFound(part, decoder.getAttempts());
+            } catch (IOException ioe) {
+                outcome = DecodeOutcome.failed(part, ioe.getMessage());
+            } catch (RuntimeException e) {
+                // a reader must not take down the worker
+                outcome = DecodeOutcome.failed(part, e.toString());
+            } finally {
+                // even after an Error the request gets its answer and the place is freed
+                finish(outcome != null ? outcome : DecodeOutcome.failed(part, "internal error"), start);
+            }
+        }
+
+        void finish(DecodeOutcome outcome, long start) {
+            outcome.setTimes(start - queued, System.nanoTime() - start);
+            stats.onImage(outcome);
+            permits.release();
+            results.add(outcome);
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+package com.hzy.zxing.server;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Serves the decode pipeline over HTTP on the local machine:
+ * <ul>
+ * <li>POST /decode, see {@link DecodeEndpoint}.</li>
+ * <li>GET /stats, the counters and latency percentiles of {@link ServerStats}.</li>
+ * </ul>
+ * Requests are read and answered on handler threads, the images are decoded on the
+ * {@link DecodePool}'s workers. Connections beyond the handlers wait, unread, in the
+ * handler executor's queue, which is not bounded; once a handler takes one it answers 429
+ * without reading the body if the pool is full, so a burst costs connections rather than
+ * request bodies in memory. The HTTP backlog bounds the connections not yet accepted.
+ * <p>
+ * Options, as --name value: host, port, workers (default: one per core), queue (images
+ * waiting for a worker, default: 2 per worker), handlers (default: workers + queue + 2),
+ * max-request-mb, max-megapixels (default: 8, less if half the heap cannot hold that
+ * much for every worker, see {@link Options#BYTES_PER_PIXEL}) and formats, a comma
+ * separated list of {@link BarcodeFormat} names (default: all).
+ */
+public final class DecodeServer {
+
+    private static final String TAG = DecodeServer.class.getSimpleName();
+    private static final Logger LOG = Logger.getLogger(TAG);
+
+    private final HttpServer server;
+    private final DecodePool pool;
+    private final ExecutorService handlers;
+
+    public DecodeServer(Options options) throws IOException {
+        ServerStats stats = new ServerStats();
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, options.formats);
+        pool = new DecodePool(options.workers, options.queue, options.maxPixels, hints, stats);
+        handlers = Executors.newFixedThreadPool(options.handlers, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "HttpHandler-" + count.incrementAndGet());
+            }
+        });
+        server = HttpServer.create(new InetSocketAddress(options.host, options.port), options.backlog);
+        server.setExecutor(handlers);
+        server.createContext("/decode", new DecodeEndpoint(pool, stats, options.maxRequestBytes));
+        server.createContext("/stats", new StatsEndpoint(pool, stats));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, gives those in progress a second, then stops the workers.
+     */
+    public void stop() {
+        server.stop(1);
+        pool.shutdown();
+        handlers.shutdown();
+    }
+
+    /**
+     * @return The port the server listens on, useful with port 0.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException iae) {
+            System.err.println(iae.getMessage());
+            System.exit(2);
+            return;
+        }
+        final DecodeServer server = new DecodeServer(options);
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.stop();
+            }
+        }, "DecodeServerShutdown"));
+        server.start();
+        LOG.info("Listening on http://" + options.host + ":" + server.getPort() + "/decode, " + options);
+    }
+
+    private static final class StatsEndpoint implements HttpHandler {
+
+        private final DecodePool pool;
+        private final ServerStats stats;
+
+        StatsEndpoint(DecodePool pool, ServerStats stats) {
+            this.pool = pool;
+            this.stats = stats;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                DecodeEndpoint.respond(exchange, 200, stats.toJson(pool));
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    /**
+     * The server's settings; workers and queue are the ones to tune throughput and tail
+     * latency with.
+     */
+    public static final class Options {
+
+        /**
+         * Heap an image takes while a worker decodes it: the decoded image, its luminance,
+         * the binarizer's copy and matrix and the adaptive binarizer's integral images, the
+         * latter kept by the worker for its next image.
+         */
+        static final int BYTES_PER_PIXEL = 20;
+        private static final long DEFAULT_MAX_PIXELS = 8L * 1000L * 1000L;
+
+        String host = "127.0.0.1";
+        int port = 8080;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = -1;
+        int handlers = -1;
+        int backlog = 64;
+        int maxRequestBytes = 16 * 1024 * 1024;
+        long maxPixels = -1L;
+        Set<BarcodeFormat> formats = EnumSet.allOf(BarcodeFormat.class);
+
+        /**
+         * @throws IllegalArgumentException for an unknown option or a bad value.
+         */
+        public static Options parse(String[] args) {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i += 2) {
+                String name = args[i];
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + name);
+                }
+                String value = args[i + 1];
+                if ("--host".equals(name)) {
+                    options.host = value;
+                } else if ("--port".equals(name)) {
+                    options.port = parseInt(name, value, 0);
+                } else if ("--workers".equals(name)) {
+                    options.workers = parseInt(name, value, 1);
+                } else if ("--queue".equals(name)) {
+                    options.queue = parseInt(name, value, 0);
+                } else if ("--handlers".equals(name)) {
+                    options.handlers = parseInt(name, value, 1);
+                } else if ("--backlog".equals(name)) {
+                    options.backlog = parseInt(name, value, 0);
+                } else if ("--max-request-mb".equals(name)) {
+                    options.maxRequestBytes = parseInt(name, value, 1) * 1024 * 1024;
+                } else if ("--max-megapixels".equals(name)) {
+                    options.maxPixels = parseInt(name, value, 1) * 1000L * 1000L;
+                } else if ("--formats".equals(name)) {
+                    options.formats = parseFormats(value);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + name);
+                }
+            }
+            if (options.maxPixels < 0L) {
+                options.maxPixels = defaultMaxPixels(options.workers);
+            }
+            if (options.queue < 0) {
+                options.queue = 2 * options.workers;
+            }
+            if (options.handlers < 0) {
+                // a handler waits for its request's images; beyond this many, requests wait
+                // for a handler, see the class doc
+                options.handlers = options.workers + options.queue + 2;
+            }
+            return options;
+        }
+
+        /**
+         * @return {@link #DEFAULT_MAX_PIXELS}, or less so that the largest images of all
+         * workers fit into half the heap.
+         */
+        static long defaultMaxPixels(int workers) {
+            long fit = Runtime.getRuntime().maxMemory() / 2L / workers / BYTES_PER_PIXEL;
+            return Math.max(1L, Math.min(DEFAULT_MAX_PIXELS, fit));
+        }
+
+        private static int parseInt(String name, String value, int min) {
+            int number;
+            try {
+                number = Integer.parseInt(value);
+            } catch (NumberFormatException nfe) {
+                throw new IllegalArgumentException(name + " needs a number: " + value);
+            }
+            if (number < min) {
+                throw new IllegalArgumentException(name + " must be at least " + min);
+            }
+            return number;
+        }
+
+        private static Set<BarcodeFormat> parseFormats(String value) {
+            Set<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
+            for (String format : value.split(",")) {
+                try {
+                    formats.add(BarcodeFormat.valueOf(format.trim().toUpperCase(Locale.US)));
+                } catch (IllegalArgumentException iae) {
+                    throw new IllegalArgumentException("Unknown format " + format);
+                }
+            }
+            return formats;
+        }
+
+        @Override
+        public String toString() {
+            return "workers=" + workers + " queue=" + queue + " handlers=" + handlers
+                    + " maxRequestBytes=" + maxRequestBytes + " maxPixels=" + maxPixels + " formats=" + formats;
+        }
+    }
+
+}
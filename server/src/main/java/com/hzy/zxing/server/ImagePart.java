@@ -0,0 +1,103 @@
+package com.hzy.zxing.server;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * One uploaded image: a whole request body, or a part of a multipart batch. The bytes stay
+ * in the request's buffer until a worker decodes them.
+ */
+final class ImagePart {
+
+    private final int index;
+    private final String name;
+    private final byte[] data;
+    private final int offset;
+    private final int length;
+
+    /**
+     * @param index Position in the request, reported with the result since a batch is
+     *              answered in the order the images finish.
+     * @param name  File name or form field of the part, may be null.
+     */
+    ImagePart(int index, String name, byte[] data, int offset, int length) {
+        this.index = index;
+        this.name = name;
+        this.data = data;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    int getIndex() {
+        return index;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Decodes the image into its luminance. Transparent pixels count as white, as they
+     * look on a page.
+     *
+     * @param maxPixels Images with more pixels are refused before they are decoded.
+     * @throws IOException if the bytes are no image ImageIO can read, or it is too large.
+     */
+    LuminanceSource toLuminanceSource(long maxPixels) throws IOException {
+        BufferedImage image = read(maxPixels);
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+        byte[] luminances = new byte[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int pixel = pixels[i];
+            int alpha = pixel >>> 24;
+            int r = (pixel >> 16) & 0xff;
+            int g = (pixel >> 8) & 0xff;
+            int b = pixel & 0xff;
+            // BT.601 weights in 1/1024
+            int luminance = (r * 306 + g * 601 + b * 117) >> 10;
+            if (alpha != 0xff) {
+                luminance = (luminance * alpha + 0xff * (0xff - alpha)) / 0xff;
+            }
+            luminances[i] = (byte) luminance;
+        }
+        return new PlanarYUVLuminanceSource(luminances, width, height, 0, 0, width, height, false);
+    }
+
+    private BufferedImage read(long maxPixels) throws IOException {
+        ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data, offset, length));
+        if (input == null) {
+            throw new IOException("unreadable image");
+        }
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) {
+                throw new IOException("unsupported image format");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // the header is enough to refuse an image that would not fit into memory
+                if ((long) reader.getWidth(0) * reader.getHeight(0) > maxPixels) {
+                    throw new IOException("image larger than " + maxPixels + " pixels");
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            input.close();
+        }
+    }
+
+}
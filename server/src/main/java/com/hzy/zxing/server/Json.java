@@ -0,0 +1,70 @@
+package com.hzy.zxing.server;
+
+/**
+ * The little JSON the server writes, without pulling in a library for it.
+ */
+final class Json {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private Json() {
+    }
+
+    /**
+     * Appends the string quoted and escaped, or null.
+     */
+    static StringBuilder appendString(StringBuilder builder, String value) {
+        if (value == null) {
+            return builder.append("null");
+        }
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        builder.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+                    } else {
+                        builder.append(c);
+                    }
+            }
+        }
+        return builder.append('"');
+    }
+
+    /**
+     * Appends nanoseconds as milliseconds with two decimals.
+     */
+    static StringBuilder appendMillis(StringBuilder builder, long nanos) {
+        long hundredths = nanos / 10000L;
+        builder.append(hundredths / 100L).append('.');
+        long fraction = hundredths % 100L;
+        if (fraction < 10L) {
+            builder.append('0');
+        }
+        return builder.append(fraction);
+    }
+
+    /**
+     * @return A JSON object with a single error message, for error responses.
+     */
+    static String error(String message) {
+        return appendString(new StringBuilder("{\"error\":"), message).append('}').toString();
+    }
+
+}
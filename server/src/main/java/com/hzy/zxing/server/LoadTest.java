@@ -0,0 +1,300 @@
+package com.hzy.zxing.server;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Sends decode requests to a running {@link DecodeServer} from a number of clients at once
+ * and reports throughput, latency percentiles and how many requests were refused. Run it
+ * against the same server with different --workers and --queue to pick the sizes.
+ * <p>
+ * Options, as --name value: url (default http://127.0.0.1:8080), clients (8), requests
+ * (400, after warmup), warmup (40), batch (images per request, 1 sends a plain image),
+ * backoff-ms (pause after a 429, 10) and images, a comma separated list of files; without
+ * it, generated QR codes are sent.
+ */
+public final class LoadTest {
+
+    private static final String BOUNDARY = "LoadTestBoundary";
+
+    private final String url;
+    private final int clients;
+    private final int requests;
+    private final int warmup;
+    private final int batch;
+    private final long backoffMs;
+    private final List<byte[]> images;
+
+    private final AtomicInteger issued = new AtomicInteger();
+    private final long[] latencies;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicInteger decodedImages = new AtomicInteger();
+
+    private LoadTest(String url, int clients, int requests, int warmup, int batch, long backoffMs, List<byte[]> images) {
+        this.url = url;
+        this.clients = clients;
+        this.requests = requests;
+        this.warmup = warmup;
+        this.batch = batch;
+        this.backoffMs = backoffMs;
+        this.images = images;
+        latencies = new long[requests];
+    }
+
+    public static void main(String[] args) throws Exception {
+        String url = "http://127.0.0.1:8080";
+        int clients = 8;
+        int requests = 400;
+        int warmup = 40;
+        int batch = 1;
+        long backoffMs = 10L;
+        String files = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String name = args[i];
+            String value = args[i + 1];
+            if ("--url".equals(name)) {
+                url = value;
+            } else if ("--clients".equals(name)) {
+                clients = Integer.parseInt(value);
+            } else if ("--requests".equals(name)) {
+                requests = Integer.parseInt(value);
+            } else if ("--warmup".equals(name)) {
+                warmup = Integer.parseInt(value);
+            } else if ("--batch".equals(name)) {
+                batch = Integer.parseInt(value);
+            } else if ("--backoff-ms".equals(name)) {
+                backoffMs = Long.parseLong(value);
+            } else if ("--images".equals(name)) {
+                files = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option " + name);
+            }
+        }
+        List<byte[]> images = files == null ? generateImages(8) : readImages(files.split(","));
+        new LoadTest(url, clients, requests, warmup, batch, backoffMs, images).run();
+    }
+
+    private void run() throws Exception {
+        System.out.println("Warming up with " + warmup + " requests");
+        for (int i = 0; i < warmup; i++) {
+            send(i, false);
+        }
+        System.out.println("Sending " + requests + " requests of " + batch + " image(s) from " + clients + " clients to " + url);
+        final CountDownLatch done = new CountDownLatch(clients);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        int n;
+                        while ((n = issued.getAndIncrement()) < requests) {
+                            send(n, true);
+                        }
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, "LoadClient-" + c).start();
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        report(elapsed);
+        System.out.println("Server: " + new String(read(new URL(url + "/stats").openStream()), "UTF-8"));
+    }
+
+    /**
+     * Sends one request, again after a pause as long as it is refused.
+     */
+    private void send(int n, boolean record) {
+        byte[] body;
+        String contentType;
+        if (batch <= 1) {
+            body = images.get(n % images.size());
+            contentType = "image/png";
+        } else {
+            body = multipart(n);
+            contentType = "multipart/form-data; boundary=" + BOUNDARY;
+        }
+        long start = System.nanoTime();
+        while (true) {
+            HttpURLConnection connection = null;
+            try {
+                connection = (HttpURLConnection) new URL(url + "/decode").openConnection();
+                connection.setDoOutput(true);
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", contentType);
+                connection.setFixedLengthStreamingMode(body.length);
+                OutputStream out = connection.getOutputStream();
+                out.write(body);
+                out.close();
+                int status = connection.getResponseCode();
+                if (status == 429) {
+                    read(connection.getErrorStream());
+                    if (record) {
+                        rejected.incrementAndGet();
+                    }
+                    Thread.sleep(backoffMs);
+                    continue;
+                }
+                if (status != 200) {
+                    read(connection.getErrorStream());
+                    if (record) {
+                        failed.incrementAndGet();
+                    }
+                    return;
+                }
+                String response = new String(read(connection.getInputStream()), "UTF-8");
+                if (record) {
+                    // includes the waits after refusals, as a client sees it
+                    latencies[n] = System.nanoTime() - start;
+                    completed.incrementAndGet();
+                    decodedImages.addAndGet(count(response, "\"status\":\"ok\""));
+                }
+                return;
+            } catch (IOException ioe) {
+                if (record) {
+                    failed.incrementAndGet();
+                }
+                return;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                if (connection != null) {
+                    connection.disconnect();
+                }
+            }
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        int ok = completed.get();
+        long[] sorted = new long[ok];
+        int k = 0;
+        for (long latency : latencies) {
+            if (latency > 0L && k < ok) {
+                sorted[k++] = latency;
+            }
+        }
+        Arrays.sort(sorted, 0, k);
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(String.format("Completed %d, refused (429) %d times, failed %d in %.2f s",
+                ok, rejected.get(), failed.get(), seconds));
+        System.out.println(String.format("Throughput %.1f requests/s, %.1f images/s, %d images decoded",
+                ok / seconds, ok * (double) Math.max(1, batch) / seconds, decodedImages.get()));
+        if (k > 0) {
+            System.out.println(String.format("Latency ms: p50 %.2f  p90 %.2f  p99 %.2f  max %.2f",
+                    percentile(sorted, k, 50), percentile(sorted, k, 90), percentile(sorted, k, 99), sorted[k - 1] / 1e6));
+        }
+    }
+
+    private static double percentile(long[] sorted, int count, int percent) {
+        int rank = (count * percent + 99) / 100;
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    private byte[] multipart(int n) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            for (int i = 0; i < batch; i++) {
+                String header = "--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"image\"; filename=\"image"
+                        + i + ".png\"\r\nContent-Type: image/png\r\n\r\n";
+                out.write(header.getBytes("US-ASCII"));
+                out.write(images.get((n * batch + i) % images.size()));
+                out.write("\r\n".getBytes("US-ASCII"));
+            }
+            out.write(("--" + BOUNDARY + "--\r\n").getBytes("US-ASCII"));
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe);
+        }
+        return out.toByteArray();
+    }
+
+    private static int count(String text, String pattern) {
+        int count = 0;
+        for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + pattern.length())) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * QR codes on a 640x480 grey page, a little like a photographed label.
+     */
+    private static List<byte[]> generateImages(int count) throws IOException, WriterException {
+        List<byte[]> images = new ArrayList<byte[]>(count);
+        QRCodeWriter writer = new QRCodeWriter();
+        for (int i = 0; i < count; i++) {
+            BitMatrix matrix = writer.encode("https://example.com/item/" + (1000 + i), BarcodeFormat.QR_CODE, 240, 240);
+            BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+            int left = 120 + 40 * (i % 4);
+            int top = 80 + 20 * (i % 3);
+            for (int y = 0; y < 480; y++) {
+                for (int x = 0; x < 640; x++) {
+                    boolean black = x >= left && y >= top && x < left + 240 && y < top + 240 && matrix.get(x - left, y - top);
+                    int grey = black ? 40 : 200 + (x + y) % 16;
+                    image.setRGB(x, y, grey << 16 | grey << 8 | grey);
+                }
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", out);
+            images.add(out.toByteArray());
+        }
+        return images;
+    }
+
+    private static List<byte[]> readImages(String[] files) throws IOException {
+        List<byte[]> images = new ArrayList<byte[]>(files.length);
+        for (String file : files) {
+            RandomAccessFile input = new RandomAccessFile(new File(file), "r");
+            try {
+                byte[] data = new byte[(int) input.length()];
+                input.readFully(data);
+                images.add(data);
+            } finally {
+                input.close();
+            }
+        }
+        return images;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        if (in == null) {
+            return new byte[0];
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+}
@@ -0,0 +1,115 @@
+package com.hzy.zxing.server;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits a multipart/form-data body into its parts, without copying them. Every part is
+ * taken as an image, whatever its field name.
+ */
+final class MultipartParser {
+
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=(?:\"([^\"]+)\"|([^;\\s]+))", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FILE_NAME = Pattern.compile("filename=\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+    private static final Pattern FIELD_NAME = Pattern.compile("\\bname=\"([^\"]*)\"", Pattern.CASE_INSENSITIVE);
+
+    private MultipartParser() {
+    }
+
+    /**
+     * @return The boundary of a multipart Content-Type, or null if it is none.
+     */
+    static String getBoundary(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.US).startsWith("multipart/")) {
+            return null;
+        }
+        Matcher matcher = BOUNDARY.matcher(contentType);
+        if (!matcher.find()) {
+            return null;
+        }
+        return matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+    }
+
+    /**
+     * @throws IOException if the body is not valid multipart.
+     */
+    static List<ImagePart> parse(byte[] body, int length, String boundary) throws IOException {
+        byte[] delimiter = ascii("--" + boundary);
+        List<ImagePart> parts = new ArrayList<ImagePart>();
+        int position = indexOf(body, length, delimiter, 0);
+        if (position < 0) {
+            throw new IOException("no multipart boundary in body");
+        }
+        while (true) {
+            position += delimiter.length;
+            if (position + 1 < length && body[position] == '-' && body[position + 1] == '-') {
+                // the closing delimiter
+                return parts;
+            }
+            position = skipLine(body, length, position);
+            int headersEnd = indexOf(body, length, ascii("\r\n\r\n"), position);
+            if (headersEnd < 0) {
+                throw new IOException("unterminated part headers");
+            }
+            String headers = new String(body, position, headersEnd - position, "ISO-8859-1");
+            int dataStart = headersEnd + 4;
+            int next = indexOf(body, length, ascii("\r\n--" + boundary), dataStart);
+            if (next < 0) {
+                throw new IOException("unterminated part");
+            }
+            parts.add(new ImagePart(parts.size(), partName(headers), body, dataStart, next - dataStart));
+            position = next + 2;
+        }
+    }
+
+    private static String partName(String headers) {
+        Matcher file = FILE_NAME.matcher(headers);
+        if (file.find()) {
+            return file.group(1);
+        }
+        Matcher field = FIELD_NAME.matcher(headers);
+        return field.find() ? field.group(1) : null;
+    }
+
+    private static int skipLine(byte[] body, int length, int position) throws IOException {
+        while (position < length && body[position] != '\n') {
+            position++;
+        }
+        if (position == length) {
+            throw new IOException("truncated multipart body");
+        }
+        return position + 1;
+    }
+
+    private static int indexOf(byte[] body, int length, byte[] pattern, int from) {
+        int last = length - pattern.length;
+        byte first = pattern[0];
+        for (int i = from; i <= last; i++) {
+            if (body[i] != first) {
+                continue;
+            }
+            int j = 1;
+            while (j < pattern.length && body[i + j] == pattern[j]) {
+                j++;
+            }
+            if (j == pattern.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String text) {
+        try {
+            return text.getBytes("US-ASCII");
+        } catch (UnsupportedEncodingException uee) {
+            throw new IllegalStateException(uee);
+        }
+    }
+
+}
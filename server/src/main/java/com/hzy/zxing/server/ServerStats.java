@@ -0,0 +1,88 @@
+package com.hzy.zxing.server;
+
+import java.util.Arrays;
+
+/**
+ * Request counts and the latency percentiles of the last {@link #WINDOW} images, served at
+ * /stats, to tune the pool and queue sizes against.
+ */
+final class ServerStats {
+
+    private static final int WINDOW = 4096;
+
+    private final long[] totalNanos = new long[WINDOW];
+    private final long[] queueNanos = new long[WINDOW];
+    private int samples;
+    private int next;
+
+    private long requests;
+    private long rejected;
+    private long images;
+    private long decoded;
+    private long notFound;
+    private long errors;
+
+    synchronized void onRequest() {
+        requests++;
+    }
+
+    /**
+     * Called for a request turned away with 429 since the pool was full.
+     */
+    synchronized void onRejected() {
+        rejected++;
+    }
+
+    synchronized void onImage(DecodeOutcome outcome) {
+        images++;
+        String status = outcome.getStatus();
+        if (DecodeOutcome.STATUS_OK.equals(status)) {
+            decoded++;
+        } else if (DecodeOutcome.STATUS_NOT_FOUND.equals(status)) {
+            notFound++;
+        } else {
+            errors++;
+        }
+        totalNanos[next] = outcome.getTotalNanos();
+        queueNanos[next] = outcome.getQueueNanos();
+        next = (next + 1) % WINDOW;
+        samples = Math.min(samples + 1, WINDOW);
+    }
+
+    synchronized String toJson(DecodePool pool) {
+        StringBuilder builder = new StringBuilder(256);
+        builder.append("{\"workers\":").append(pool.getWorkers())
+                .append(",\"queue\":").append(pool.getQueueSize())
+                .append(",\"inFlight\":").append(pool.getInFlight())
+                .append(",\"requests\":").append(requests)
+                .append(",\"rejected\":").append(rejected)
+                .append(",\"images\":").append(images)
+                .append(",\"decoded\":").append(decoded)
+                .append(",\"notFound\":").append(notFound)
+                .append(",\"errors\":").append(errors);
+        long[] total = sorted(totalNanos);
+        long[] queue = sorted(queueNanos);
+        builder.append(",\"p50Ms\":");
+        Json.appendMillis(builder, percentile(total, 50));
+        builder.append(",\"p99Ms\":");
+        Json.appendMillis(builder, percentile(total, 99));
+        builder.append(",\"queueP99Ms\":");
+        Json.appendMillis(builder, percentile(queue, 99));
+        return builder.append('}').toString();
+    }
+
+    private long[] sorted(long[] window) {
+        long[] copy = Arrays.copyOf(window, samples);
+        Arrays.sort(copy);
+        return copy;
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0L;
+        }
+        int rank = (sorted.length * percent + 99) / 100;
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+}
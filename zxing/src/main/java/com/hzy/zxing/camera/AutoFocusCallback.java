@@ -30,6 +30,9 @@ final class AutoFocusCallback implements Camera.AutoFocusCallback {
     private Handler autoFocusHandler;
     private int autoFocusMessage;
 
+    /**
+     * Called on the camera thread, which focus results are delivered on as well.
+     */
     void setHandler(Handler autoFocusHandler, int autoFocusMessage) {
         this.autoFocusHandler = autoFocusHandler;
         this.autoFocusMessage = autoFocusMessage;
@@ -40,11 +40,24 @@ final class CameraConfigurationManager {
 
     private static final Pattern COMMA_PATTERN = Pattern.compile(",");
 
+    /**
+     * Camera.open() without arguments opens the first back-facing camera.
+     */
+    private static final int DEFAULT_CAMERA_ID = 0;
+
     private final Context context;
     private Point screenResolution;
     private Point cameraResolution;
     private int previewFormat;
     private String previewFormatString;
+    private boolean torchSupported;
+    private int minExposureCompensation;
+    private int maxExposureCompensation;
+    private int maxZoom;
+    private List<Integer> zoomRatios;
+    private int[] activeFpsRange;
+    private int[] idleFpsRange;
+    private CameraProfile profile;
 
     CameraConfigurationManager(Context context) {
         this.context = context;
@@ -54,15 +67,33 @@ final class CameraConfigurationManager {
      * Reads, one time, values from the camera that are needed by the app.
      */
     void initFromCameraParameters(Camera camera) {
-        Camera.Parameters parameters = camera.getParameters();
-        previewFormat = parameters.getPreviewFormat();
-        previewFormatString = parameters.get("preview-format");
-        Log.d(TAG, "Default preview format: " + previewFormat + '/' + previewFormatString);
         WindowManager manager = (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
         Display display = manager.getDefaultDisplay();
         screenResolution = new Point(display.getWidth(), display.getHeight());
         Log.d(TAG, "Screen resolution: " + screenResolution);
 
+        profile = CameraProfile.load(context, DEFAULT_CAMERA_ID, screenResolution);
+        if (profile.isValid()) {
+            // Everything below was derived in an earlier session on this device
+            previewFormat = profile.getPreviewFormat();
+            previewFormatString = profile.getPreviewFormatString();
+            cameraResolution = profile.getPreviewSize();
+            torchSupported = profile.isTorchSupported();
+            minExposureCompensation = profile.getMinExposureCompensation();
+            maxExposureCompensation = profile.getMaxExposureCompensation();
+            maxZoom = profile.getMaxZoom();
+            zoomRatios = profile.getZoomRatios();
+            activeFpsRange = profile.getActiveFpsRange();
+            idleFpsRange = profile.getIdleFpsRange();
+            Log.d(TAG, "Using cached camera profile, preview size " + profile.getPreviewSize().x + 'x' + profile.getPreviewSize().y);
+            return;
+        }
+
+        Camera.Parameters parameters = camera.getParameters();
+        previewFormat = parameters.getPreviewFormat();
+        previewFormatString = parameters.get("preview-format");
+        Log.d(TAG, "Default preview format: " + previewFormat + '/' + previewFormatString);
+
         Point screenResolutionForCamera = new Point();
         screenResolutionForCamera.x = screenResolution.x;
         screenResolutionForCamera.y = screenResolution.y;
@@ -74,13 +105,58 @@ final class CameraConfigurationManager {
 
         //以下算法是：比例优先 尺寸接近次之
         DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
-        Camera.Size mCameraResolution = findCloselySize(displayMetrics.widthPixels, displayMetrics.heightPixels, parameters.getSupportedPreviewSizes());
-        parameters.setPreviewSize(mCameraResolution.width, mCameraResolution.height);
-        camera.setParameters(parameters);
+        List<Camera.Size> supportedPreviewSizes = parameters.getSupportedPreviewSizes();
+        StringBuilder supportedSizes = new StringBuilder();
+        for (Camera.Size size : supportedPreviewSizes) {
+            if (supportedSizes.length() > 0) {
+                supportedSizes.append(',');
+            }
+            supportedSizes.append(size.width).append('x').append(size.height);
+        }
+        Camera.Size mCameraResolution = findCloselySize(displayMetrics.widthPixels, displayMetrics.heightPixels, supportedPreviewSizes);
 
 //        cameraResolution = getCameraResolution(parameters, screenResolutionForCamera);
         cameraResolution = new Point(mCameraResolution.width, mCameraResolution.height);
         Log.d(TAG, "Camera resolution: " + screenResolution);
+
+        List<String> flashModes = parameters.getSupportedFlashModes();
+        torchSupported = flashModes != null && flashModes.contains(Camera.Parameters.FLASH_MODE_TORCH);
+        if (CameraManager.SDK_INT >= 8) {
+            minExposureCompensation = parameters.getMinExposureCompensation();
+            maxExposureCompensation = parameters.getMaxExposureCompensation();
+        }
+        if (CameraManager.SDK_INT >= 8 && parameters.isZoomSupported()) {
+            maxZoom = parameters.getMaxZoom();
+            zoomRatios = parameters.getZoomRatios();
+        }
+        Log.d(TAG, "Max zoom: " + maxZoom);
+        if (CameraManager.SDK_INT >= 9) {
+            findFpsRanges(parameters.getSupportedPreviewFpsRange());
+        }
+        Log.d(TAG, "Torch: " + torchSupported + ", exposure compensation: " + minExposureCompensation + ".." + maxExposureCompensation);
+
+        profile.update(screenResolution, supportedSizes.toString(), cameraResolution, previewFormat, previewFormatString,
+                torchSupported, minExposureCompensation, maxExposureCompensation, maxZoom, zoomRatios, activeFpsRange, idleFpsRange);
+    }
+
+    /**
+     * Picks the range with the highest maximum for active scanning, and the one with the
+     * lowest maximum for an idle scanner.
+     */
+    private void findFpsRanges(List<int[]> ranges) {
+        if (ranges == null || ranges.isEmpty()) {
+            return;
+        }
+        for (int[] range : ranges) {
+            int max = range[Camera.Parameters.PREVIEW_FPS_MAX_INDEX];
+            if (activeFpsRange == null || max > activeFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]) {
+                activeFpsRange = range;
+            }
+            if (idleFpsRange == null || max < idleFpsRange[Camera.Parameters.PREVIEW_FPS_MAX_INDEX]) {
+                idleFpsRange = range;
+            }
+        }
+        Log.d(TAG, "Preview fps: active " + activeFpsRange[0] + '-' + activeFpsRange[1] + ", idle " + idleFpsRange[0] + '-' + idleFpsRange[1]);
     }
 
     /**
@@ -89,8 +165,10 @@ final class CameraConfigurationManager {
      * buildLuminanceSource() can build an appropriate LuminanceSource subclass.
      * In the future we may want to force YUV420SP as it's the smallest, and the
      * planar Y can be used for barcode scanning without a copy in some cases.
+     *
+     * @return The parameters as set, for later changes without reading them back.
      */
-    void setDesiredCameraParameters(Camera camera) {
+    Camera.Parameters setDesiredCameraParameters(Camera camera) {
         Camera.Parameters parameters = camera.getParameters();
         Log.d(TAG, "Setting preview size: " + cameraResolution);
         parameters.setPreviewSize(cameraResolution.x, cameraResolution.y);
@@ -103,6 +181,7 @@ final class CameraConfigurationManager {
         // ����2.1
         setDisplayOrientation(camera, 90);
         camera.setParameters(parameters);
+        return parameters;
     }
 
     Point getCameraResolution() {
@@ -121,6 +200,42 @@ final class CameraConfigurationManager {
         return previewFormatString;
     }
 
+    /**
+     * @return Preview fps range, in 1/1000ths, for the given scanning activity, or null
+     * if the camera does not report any.
+     */
+    int[] getPreviewFpsRange(boolean idle) {
+        return idle ? idleFpsRange : activeFpsRange;
+    }
+
+    CameraProfile getProfile() {
+        return profile;
+    }
+
+    boolean isTorchSupported() {
+        return torchSupported;
+    }
+
+    int getMinExposureCompensation() {
+        return minExposureCompensation;
+    }
+
+    int getMaxExposureCompensation() {
+        return maxExposureCompensation;
+    }
+
+    /**
+     * @return Highest index accepted by {@link Camera.Parameters#setZoom(int)}, or 0 if
+     * the camera has no standard zoom and the vendor parameters are used instead.
+     */
+    int getMaxZoom() {
+        return maxZoom;
+    }
+
+    List<Integer> getZoomRatios() {
+        return zoomRatios;
+    }
+
     private static Point getCameraResolution(Camera.Parameters parameters, Point screenResolution) {
 
         String previewSizeValueString = parameters.get("preview-size-values");
@@ -277,6 +392,11 @@ final class CameraConfigurationManager {
     }
 
     private void setZoom(Camera.Parameters parameters) {
+        if (maxZoom > 0) {
+            // Zoom is driven at runtime by ZoomController, start out wide
+            parameters.setZoom(0);
+            return;
+        }
 
         String zoomSupportedString = parameters.get("zoom-supported");
         if (zoomSupportedString != null && !Boolean.parseBoolean(zoomSupportedString)) {
@@ -24,18 +24,33 @@ import android.hardware.Camera;
 import android.hardware.Camera.Parameters;
 import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
 import android.util.DisplayMetrics;
+import android.util.Log;
 import android.view.SurfaceHolder;
 
+import com.hzy.zxing.util.StartupTrace;
+
 import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * This object wraps the Camera service object and expects to be the only one
  * talking to it. The implementation encapsulates the steps needed to take
  * preview-sized images, which are used for both preview and decoding.
+ * <p>
+ * Every call into the camera runs on one camera thread: the public methods only post
+ * commands to it and return, so a slow camera HAL never stalls the UI or the decode
+ * thread. The camera, its {@link Parameters} and the {@link State} belong to that thread;
+ * other threads only read the state, which is published after each transition.
+ * Parameter changes which arrive while one is queued are merged into one
+ * {@code setParameters()} call on the cached parameters.
  */
 public final class CameraManager {
 
+    private static final String TAG = CameraManager.class.getSimpleName();
+
     private static CameraManager cameraManager;
 
     static final int SDK_INT; // Later we can use Build.VERSION.SDK_INT
@@ -51,13 +66,31 @@ public final class CameraManager {
         SDK_INT = sdkInt;
     }
 
-    private static Context context;
+    private static final int CHANGE_TORCH = 1;
+    private static final int CHANGE_EXPOSURE = 1 << 1;
+    private static final int CHANGE_ZOOM = 1 << 2;
+    private static final int CHANGE_FPS_RANGE = 1 << 3;
+
+    /**
+     * CLOSED -&gt; OPEN when the camera is opened and configured, OPEN -&gt; PREVIEWING and
+     * back with the preview, any -&gt; CLOSED when it is released. Commands which do not
+     * fit the state are dropped.
+     */
+    private enum State {
+        CLOSED, OPEN, PREVIEWING
+    }
+
+    private final Context context;
     private final CameraConfigurationManager configManager;
-    private static Camera camera;
-    private Rect framingRect;
-    private Rect framingRectInPreview;
-    private boolean initialized;
-    private boolean previewing;
+    // camera thread only
+    private Camera camera;
+    private Parameters parameters;
+    // written on the camera thread only, after the camera and configManager are set up
+    private volatile State state = State.CLOSED;
+    private volatile boolean initialized;
+    private volatile Rect framingRect;
+    private volatile Rect framingRectInPreview;
+    private volatile Rect framingRectInNativePreview;
     private final boolean useOneShotPreviewCallback;
     /**
      * Preview frames are delivered here, which we pass on to the registered
@@ -70,6 +103,45 @@ public final class CameraManager {
      * requested them.
      */
     private final AutoFocusCallback autoFocusCallback;
+    /**
+     * Drives the torch and exposure compensation from the luminance of decoded frames.
+     */
+    private final IlluminationController illuminationController;
+    /**
+     * Zooms towards codes which are too small to decode reliably.
+     */
+    private final ZoomController zoomController;
+    /**
+     * Runs every command on the camera thread. The camera is opened there, so preview and
+     * autofocus callbacks are delivered to this thread's looper as well.
+     */
+    private final Handler cameraHandler;
+    private final Handler mainHandler;
+
+    /**
+     * Parameter changes waiting for the camera thread, guarded by the lock.
+     */
+    private final Object changeLock = new Object();
+    private int pendingChanges;
+    private boolean pendingTorch;
+    private int pendingExposure;
+    private int pendingZoom;
+    private int[] pendingFpsRange;
+    private final Runnable applyChanges = new Runnable() {
+        public void run() {
+            applyPendingChanges();
+        }
+    };
+
+    /**
+     * Notified on the UI thread when {@link #openDriver(SurfaceHolder, OpenCallback)} completes.
+     */
+    public interface OpenCallback {
+
+        void onCameraReady();
+
+        void onCameraError(Exception e);
+    }
 
     /**
      * Initializes this static object with the Context of the calling Activity.
@@ -77,9 +149,9 @@ public final class CameraManager {
      * @param con The Activity which wants to use the camera.
      */
     public static void init(Context con) {
-        context = con;
         if (cameraManager == null) {
-            cameraManager = new CameraManager(context);
+            // the manager outlives the activity, so it must not keep it
+            cameraManager = new CameraManager(con.getApplicationContext());
         }
     }
 
@@ -99,67 +171,213 @@ public final class CameraManager {
         useOneShotPreviewCallback = Integer.parseInt(Build.VERSION.SDK) > 3; // 3
         previewCallback = new PreviewCallback(configManager, useOneShotPreviewCallback);
         autoFocusCallback = new AutoFocusCallback();
+        illuminationController = new IlluminationController();
+        zoomController = new ZoomController();
+        HandlerThread cameraThread = new HandlerThread("CameraThread");
+        cameraThread.start();
+        cameraHandler = new Handler(cameraThread.getLooper());
+        mainHandler = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Starts opening and configuring the camera on the camera thread, so it can overlap
+     * with layout inflation. Does nothing if the camera is already open.
+     */
+    public void openDriverAsync() {
+        cameraHandler.post(new Runnable() {
+            public void run() {
+                try {
+                    openCamera();
+                } catch (IOException ioe) {
+                    Log.w(TAG, "Failed to open camera", ioe);
+                } catch (RuntimeException re) {
+                    Log.w(TAG, "Failed to open camera", re);
+                }
+            }
+        });
     }
 
     /**
-     * Opens the camera driver and initializes the hardware parameters.
+     * Opens the camera if {@link #openDriverAsync()} has not done so yet and attaches it to
+     * the preview surface, all on the camera thread. The callback is run on the UI thread.
+     *
+     * @param holder   The surface object which the camera will draw preview frames into.
+     * @param callback Told whether the camera is ready for {@link #startPreview()}.
+     */
+    public void openDriver(final SurfaceHolder holder, final OpenCallback callback) {
+        cameraHandler.post(new Runnable() {
+            public void run() {
+                final Exception result = attachCamera(holder);
+                mainHandler.post(new Runnable() {
+                    public void run() {
+                        if (result == null) {
+                            callback.onCameraReady();
+                        } else {
+                            callback.onCameraError(result);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Like {@link #openDriver(SurfaceHolder, OpenCallback)}, but waits for the camera thread.
+     * Must not be called on the UI thread.
      *
      * @param holder The surface object which the camera will draw preview frames
      *               into.
      * @throws IOException Indicates the camera driver failed to open.
      */
-    public void openDriver(SurfaceHolder holder) throws IOException {
-        if (camera == null) {
-            camera = Camera.open();
-            if (camera == null) {
-                throw new IOException();
+    public void openDriver(final SurfaceHolder holder) throws IOException {
+        final Exception[] result = new Exception[1];
+        final CountDownLatch done = new CountDownLatch(1);
+        cameraHandler.post(new Runnable() {
+            public void run() {
+                result[0] = attachCamera(holder);
+                done.countDown();
             }
+        });
+        try {
+            done.await();
+        } catch (InterruptedException ie) {
+            throw new IOException("Interrupted while opening the camera");
+        }
+        if (result[0] instanceof IOException) {
+            throw (IOException) result[0];
+        }
+        if (result[0] != null) {
+            throw (RuntimeException) result[0];
+        }
+    }
+
+    /**
+     * @return The error, or null once the camera is open and draws into the surface.
+     */
+    private Exception attachCamera(SurfaceHolder holder) {
+        try {
+            openCamera();
             camera.setPreviewDisplay(holder);
+            return null;
+        } catch (IOException ioe) {
+            return ioe;
+        } catch (RuntimeException re) {
+            return re;
+        }
+    }
 
+    private void openCamera() throws IOException {
+        if (state != State.CLOSED) {
+            return;
+        }
+        Camera newCamera = Camera.open();
+        if (newCamera == null) {
+            throw new IOException();
+        }
+        camera = newCamera;
+        try {
             if (!initialized) {
-                initialized = true;
                 configManager.initFromCameraParameters(camera);
+                initialized = true;
             }
-            configManager.setDesiredCameraParameters(camera);
-
-            FlashlightManager.enableFlashlight();
+            parameters = configManager.setDesiredCameraParameters(camera);
+        } catch (RuntimeException re) {
+            releaseCamera();
+            throw re;
         }
+        illuminationController.reset(configManager.isTorchSupported(),
+                configManager.getMinExposureCompensation(), configManager.getMaxExposureCompensation());
+        zoomController.reset(configManager.getMaxZoom(), configManager.getZoomRatios());
+        // changes asked for while the camera was closed were meant for the old session
+        synchronized (changeLock) {
+            pendingChanges = 0;
+        }
+
+        FlashlightManager.enableFlashlight();
+        moveTo(State.OPEN);
+        StartupTrace.markCameraOpened();
     }
 
     /**
-     * Closes the camera driver if still in use.
+     * Closes the camera driver if still in use. The release runs on the camera thread,
+     * after any open that is still queued there.
      */
     public void closeDriver() {
+        Log.d(TAG, "Illumination: " + illuminationController + ", zoom changes: " + zoomController.getZoomChanges());
+        CameraProfile profile = configManager.getProfile();
+        if (profile != null) {
+            profile.saveDecodeStats();
+        }
+        cameraHandler.post(new Runnable() {
+            public void run() {
+                releaseCamera();
+            }
+        });
+    }
+
+    private void releaseCamera() {
         if (camera != null) {
             FlashlightManager.disableFlashlight();
+            previewCallback.setHandler(null, 0);
+            autoFocusCallback.setHandler(null, 0);
             camera.release();
             camera = null;
+            parameters = null;
+        }
+        if (state != State.CLOSED) {
+            moveTo(State.CLOSED);
         }
     }
 
+    private void moveTo(State next) {
+        Log.d(TAG, "Camera " + state + " -> " + next);
+        state = next;
+    }
+
+    /**
+     * @return Whether the camera is open, as last published by the camera thread.
+     */
+    private boolean isOpen() {
+        return state != State.CLOSED;
+    }
+
     /**
      * Asks the camera hardware to begin drawing preview frames to the screen.
      */
     public void startPreview() {
-        if (camera != null && !previewing) {
-            camera.startPreview();
-            previewing = true;
-        }
+        cameraHandler.post(new Runnable() {
+            public void run() {
+                if (state != State.OPEN) {
+                    return;
+                }
+                try {
+                    camera.startPreview();
+                    moveTo(State.PREVIEWING);
+                } catch (RuntimeException re) {
+                    Log.w(TAG, "Failed to start the preview", re);
+                }
+            }
+        });
     }
 
     /**
      * Tells the camera to stop drawing preview frames.
      */
     public void stopPreview() {
-        if (camera != null && previewing) {
-            if (!useOneShotPreviewCallback) {
-                camera.setPreviewCallback(null);
+        cameraHandler.post(new Runnable() {
+            public void run() {
+                if (state != State.PREVIEWING) {
+                    return;
+                }
+                if (!useOneShotPreviewCallback) {
+                    camera.setPreviewCallback(null);
+                }
+                camera.stopPreview();
+                previewCallback.setHandler(null, 0);
+                autoFocusCallback.setHandler(null, 0);
+                moveTo(State.OPEN);
             }
-            camera.stopPreview();
-            previewCallback.setHandler(null, 0);
-            autoFocusCallback.setHandler(null, 0);
-            previewing = false;
-        }
+        });
     }
 
     /**
@@ -170,36 +388,170 @@ public final class CameraManager {
      * @param handler The handler to send the message to.
      * @param message The what field of the message to be sent.
      */
-    public void requestPreviewFrame(Handler handler, int message) {
-        if (camera != null && previewing) {
-            previewCallback.setHandler(handler, message);
-            if (useOneShotPreviewCallback) {
-                camera.setOneShotPreviewCallback(previewCallback);
-            } else {
-                camera.setPreviewCallback(previewCallback);
+    public void requestPreviewFrame(final Handler handler, final int message) {
+        cameraHandler.post(new Runnable() {
+            public void run() {
+                if (state != State.PREVIEWING) {
+                    return;
+                }
+                previewCallback.setHandler(handler, message);
+                if (useOneShotPreviewCallback) {
+                    camera.setOneShotPreviewCallback(previewCallback);
+                } else {
+                    camera.setPreviewCallback(previewCallback);
+                }
             }
+        });
+    }
+
+    public static void start() {
+        if (cameraManager != null) {
+            cameraManager.illuminationController.setManualOverride();
+            cameraManager.setTorch(true);
         }
     }
 
-    private static Parameters parameter;
+    public static void stop() {
+        if (cameraManager != null) {
+            cameraManager.illuminationController.setManualOverride();
+            cameraManager.setTorch(false);
+        }
+    }
 
-    public static void start() {
+    /**
+     * Switches the torch.
+     *
+     * @param on Whether the torch should be lit.
+     * @return false if the camera is closed.
+     */
+    boolean setTorch(boolean on) {
+        if (!isOpen()) {
+            return false;
+        }
+        synchronized (changeLock) {
+            pendingTorch = on;
+            postChange(CHANGE_TORCH);
+        }
+        return true;
+    }
 
-        if (camera != null) {
-            parameter = camera.getParameters();
-            parameter.setFlashMode(Parameters.FLASH_MODE_TORCH);
-            camera.setParameters(parameter);
+    /**
+     * Sets the exposure compensation index, clamped to what the camera supports.
+     *
+     * @return false if the camera is closed or does not support exposure compensation.
+     */
+    boolean setExposureCompensation(int index) {
+        if (!isOpen() || configManager.getMinExposureCompensation() == configManager.getMaxExposureCompensation()) {
+            return false;
+        }
+        synchronized (changeLock) {
+            pendingExposure = Math.max(configManager.getMinExposureCompensation(), Math.min(configManager.getMaxExposureCompensation(), index));
+            postChange(CHANGE_EXPOSURE);
+        }
+        return true;
+    }
+
+    /**
+     * Sets the zoom through the standard {@link Parameters#setZoom(int)} API.
+     *
+     * @param index Zoom index between 0 and the camera's maximum zoom.
+     * @return false if the camera is closed or has no standard zoom.
+     */
+    boolean setZoom(int index) {
+        if (!isOpen() || configManager.getMaxZoom() <= 0) {
+            return false;
         }
+        synchronized (changeLock) {
+            pendingZoom = Math.max(0, Math.min(configManager.getMaxZoom(), index));
+            postChange(CHANGE_ZOOM);
+        }
+        return true;
+    }
 
+    /**
+     * Switches the preview between its fastest fps range and its most economical one.
+     *
+     * @param idle Whether the scanner is idle and a low frame rate is enough.
+     * @return false if the camera is closed or does not support fps ranges.
+     */
+    public boolean setPreviewFpsRange(boolean idle) {
+        int[] range = configManager.getPreviewFpsRange(idle);
+        if (!isOpen() || range == null) {
+            return false;
+        }
+        synchronized (changeLock) {
+            pendingFpsRange = range;
+            postChange(CHANGE_FPS_RANGE);
+        }
+        return true;
     }
 
-    public static void stop() {
-        if (camera != null) {
-            parameter = camera.getParameters();
-            parameter.setFlashMode(Parameters.FLASH_MODE_OFF);
-            camera.setParameters(parameter);
+    /**
+     * Queues a change; the camera thread applies all changes queued by then at once.
+     * Called with the change lock held.
+     */
+    private void postChange(int change) {
+        if (pendingChanges == 0) {
+            cameraHandler.post(applyChanges);
         }
+        pendingChanges |= change;
+    }
 
+    private void applyPendingChanges() {
+        int changes;
+        boolean torch;
+        int exposure;
+        int zoom;
+        int[] fpsRange;
+        synchronized (changeLock) {
+            changes = pendingChanges;
+            torch = pendingTorch;
+            exposure = pendingExposure;
+            zoom = pendingZoom;
+            fpsRange = pendingFpsRange;
+            pendingChanges = 0;
+        }
+        if (changes == 0 || state == State.CLOSED) {
+            return;
+        }
+        if ((changes & CHANGE_TORCH) != 0) {
+            parameters.setFlashMode(torch ? Parameters.FLASH_MODE_TORCH : Parameters.FLASH_MODE_OFF);
+        }
+        if ((changes & CHANGE_EXPOSURE) != 0) {
+            parameters.setExposureCompensation(exposure);
+        }
+        if ((changes & CHANGE_ZOOM) != 0) {
+            parameters.setZoom(zoom);
+        }
+        if ((changes & CHANGE_FPS_RANGE) != 0) {
+            parameters.setPreviewFpsRange(fpsRange[Parameters.PREVIEW_FPS_MIN_INDEX], fpsRange[Parameters.PREVIEW_FPS_MAX_INDEX]);
+        }
+        try {
+            camera.setParameters(parameters);
+        } catch (RuntimeException re) {
+            // the cache no longer matches what the camera accepted
+            Log.w(TAG, "Camera rejected parameter changes " + changes, re);
+            try {
+                parameters = camera.getParameters();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Could not read back the camera parameters", e);
+            }
+        }
+    }
+
+    /**
+     * @return What is known about this device's camera, or null before the first open.
+     */
+    public CameraProfile getCameraProfile() {
+        return configManager.getProfile();
+    }
+
+    public ZoomController getZoomController() {
+        return zoomController;
+    }
+
+    public IlluminationController getIlluminationController() {
+        return illuminationController;
     }
 
     /**
@@ -208,12 +560,22 @@ public final class CameraManager {
      * @param handler The Handler to notify when the autofocus completes.
      * @param message The message to deliver.
      */
-    public void requestAutoFocus(Handler handler, int message) {
-        if (camera != null && previewing) {
-            autoFocusCallback.setHandler(handler, message);
-            // Log.d(TAG, "Requesting auto-focus callback");
-            camera.autoFocus(autoFocusCallback);
-        }
+    public void requestAutoFocus(final Handler handler, final int message) {
+        cameraHandler.post(new Runnable() {
+            public void run() {
+                if (state != State.PREVIEWING) {
+                    return;
+                }
+                autoFocusCallback.setHandler(handler, message);
+                // Log.d(TAG, "Requesting auto-focus callback");
+                try {
+                    camera.autoFocus(autoFocusCallback);
+                } catch (RuntimeException re) {
+                    // some devices throw while the focus is still moving; the next request retries
+                    Log.w(TAG, "Unexpected exception while focusing", re);
+                }
+            }
+        });
     }
 
     /**
@@ -225,11 +587,11 @@ public final class CameraManager {
      * @return The rectangle to draw on screen in window coordinates.
      */
     public Rect getFramingRect() {
-        Point screenResolution = configManager.getScreenResolution();
         if (framingRect == null) {
-            if (camera == null) {
+            if (!initialized) {
                 return null;
             }
+            Point screenResolution = configManager.getScreenResolution();
 
             /* ɨ����޸� */
             DisplayMetrics metrics = context.getResources().getDisplayMetrics();
@@ -261,6 +623,20 @@ public final class CameraManager {
         return framingRectInPreview;
     }
 
+    /**
+     * Like {@link #getFramingRectInPreview()}, but in the coordinates of the landscape
+     * preview frame as delivered by the camera, before it is rotated to portrait.
+     */
+    public Rect getFramingRectInNativePreview() {
+        if (framingRectInNativePreview == null) {
+            Rect rect = getFramingRectInPreview();
+            int height = configManager.getCameraResolution().y;
+            // (x, y) in the native frame is (height - 1 - y, x) in the rotated one
+            framingRectInNativePreview = new Rect(rect.top, height - rect.right, rect.bottom, height - rect.left);
+        }
+        return framingRectInNativePreview;
+    }
+
     /**
      * Converts the result points from still resolution coordinates to screen
      * coordinates.
@@ -290,7 +666,18 @@ public final class CameraManager {
      * @return A PlanarYUVLuminanceSource instance.
      */
     public PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height) {
-        Rect rect = getFramingRectInPreview();
+        return buildLuminanceSource(data, width, height, getFramingRectInPreview());
+    }
+
+    /**
+     * Like {@link #buildLuminanceSource(byte[], int, int)}, for the un-rotated landscape
+     * preview frame. The frame is wrapped, not copied.
+     */
+    public PlanarYUVLuminanceSource buildNativeLuminanceSource(byte[] data, int width, int height) {
+        return buildLuminanceSource(data, width, height, getFramingRectInNativePreview());
+    }
+
+    private PlanarYUVLuminanceSource buildLuminanceSource(byte[] data, int width, int height, Rect rect) {
         int previewFormat = configManager.getPreviewFormat();
         String previewFormatString = configManager.getPreviewFormatString();
         switch (previewFormat) {
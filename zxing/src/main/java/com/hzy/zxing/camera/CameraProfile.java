@@ -0,0 +1,295 @@
+package com.hzy.zxing.camera;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Point;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * What was learned about one camera of this device model, persisted across sessions so
+ * that {@link CameraConfigurationManager} does not have to re-derive it on every open:
+ * supported and chosen preview sizes, preview format, torch, exposure and zoom
+ * capabilities. It also keeps live decode statistics per decode setting, from which
+ * the best-performing setting is chosen on the next session.
+ * <p>
+ * A profile is discarded when the OS build or the screen size changes.
+ */
+public final class CameraProfile {
+
+    private static final String TAG = CameraProfile.class.getSimpleName();
+
+    private static final String PREFS_NAME = "zxing_camera_profiles";
+    private static final Pattern COMMA_PATTERN = Pattern.compile(",");
+    private static final Pattern X_PATTERN = Pattern.compile("x");
+    /**
+     * A decode setting needs this many frames before its success rate is trusted.
+     */
+    private static final int MIN_FRAMES_FOR_PREFERENCE = 50;
+
+    private final SharedPreferences prefs;
+    private final String prefix;
+
+    private boolean valid;
+    private String supportedSizes;
+    private Point previewSize;
+    private int previewFormat;
+    private String previewFormatString;
+    private boolean torchSupported;
+    private int minExposureCompensation;
+    private int maxExposureCompensation;
+    private int maxZoom;
+    private List<Integer> zoomRatios;
+    private int[] activeFpsRange;
+    private int[] idleFpsRange;
+
+    private final List<String> decodeSettings = new ArrayList<String>();
+    private final List<int[]> decodeCounts = new ArrayList<int[]>();
+
+    private CameraProfile(SharedPreferences prefs, String prefix) {
+        this.prefs = prefs;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Loads the profile of a camera of this device, or an empty one.
+     *
+     * @param context          Any context.
+     * @param cameraId         Camera index as passed to Camera.open(int).
+     * @param screenResolution Current screen size; a profile taken on another size is ignored.
+     */
+    static CameraProfile load(Context context, int cameraId, Point screenResolution) {
+        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        CameraProfile profile = new CameraProfile(prefs, Build.MODEL + '/' + cameraId + '/');
+        profile.read(screenResolution);
+        return profile;
+    }
+
+    private void read(Point screenResolution) {
+        String fingerprint = prefs.getString(prefix + "fingerprint", null);
+        String screen = prefs.getString(prefix + "screen", null);
+        if (Build.FINGERPRINT.equals(fingerprint) && toString(screenResolution).equals(screen)) {
+            try {
+                supportedSizes = prefs.getString(prefix + "supportedSizes", "");
+                previewSize = parsePoint(prefs.getString(prefix + "previewSize", null));
+                previewFormat = prefs.getInt(prefix + "previewFormat", 0);
+                previewFormatString = prefs.getString(prefix + "previewFormatString", null);
+                torchSupported = prefs.getInt(prefix + "torch", 0) != 0;
+                minExposureCompensation = prefs.getInt(prefix + "minExposure", 0);
+                maxExposureCompensation = prefs.getInt(prefix + "maxExposure", 0);
+                maxZoom = prefs.getInt(prefix + "maxZoom", 0);
+                zoomRatios = parseInts(prefs.getString(prefix + "zoomRatios", ""));
+                activeFpsRange = parseRange(prefs.getString(prefix + "activeFps", null));
+                idleFpsRange = parseRange(prefs.getString(prefix + "idleFps", null));
+                valid = previewSize != null;
+            } catch (RuntimeException re) {
+                Log.w(TAG, "Ignoring corrupt camera profile", re);
+                valid = false;
+            }
+        }
+        String settings = prefs.getString(prefix + "decodeSettings", "");
+        for (String setting : COMMA_PATTERN.split(settings)) {
+            if (setting.length() > 0) {
+                decodeSettings.add(setting);
+                decodeCounts.add(new int[]{prefs.getInt(prefix + "frames." + setting, 0), prefs.getInt(prefix + "hits." + setting, 0)});
+            }
+        }
+    }
+
+    /**
+     * @return Whether the camera capabilities were loaded and can be used instead of
+     * querying and sorting them again.
+     */
+    boolean isValid() {
+        return valid;
+    }
+
+    /**
+     * Replaces the capabilities with freshly derived ones and stores them.
+     */
+    void update(Point screenResolution, String supportedSizes, Point previewSize, int previewFormat, String previewFormatString,
+                boolean torchSupported, int minExposureCompensation, int maxExposureCompensation, int maxZoom, List<Integer> zoomRatios,
+                int[] activeFpsRange, int[] idleFpsRange) {
+        this.supportedSizes = supportedSizes;
+        this.previewSize = previewSize;
+        this.previewFormat = previewFormat;
+        this.previewFormatString = previewFormatString;
+        this.torchSupported = torchSupported;
+        this.minExposureCompensation = minExposureCompensation;
+        this.maxExposureCompensation = maxExposureCompensation;
+        this.maxZoom = maxZoom;
+        this.zoomRatios = zoomRatios;
+        this.activeFpsRange = activeFpsRange;
+        this.idleFpsRange = idleFpsRange;
+        valid = true;
+
+        StringBuilder ratios = new StringBuilder();
+        if (zoomRatios != null) {
+            for (Integer ratio : zoomRatios) {
+                if (ratios.length() > 0) {
+                    ratios.append(',');
+                }
+                ratios.append(ratio);
+            }
+        }
+        prefs.edit()
+                .putString(prefix + "fingerprint", Build.FINGERPRINT)
+                .putString(prefix + "screen", toString(screenResolution))
+                .putString(prefix + "supportedSizes", supportedSizes)
+                .putString(prefix + "previewSize", toString(previewSize))
+                .putInt(prefix + "previewFormat", previewFormat)
+                .putString(prefix + "previewFormatString", previewFormatString)
+                .putInt(prefix + "torch", torchSupported ? 1 : 0)
+                .putInt(prefix + "minExposure", minExposureCompensation)
+                .putInt(prefix + "maxExposure", maxExposureCompensation)
+                .putInt(prefix + "maxZoom", maxZoom)
+                .putString(prefix + "zoomRatios", ratios.toString())
+                .putString(prefix + "activeFps", toString(activeFpsRange))
+                .putString(prefix + "idleFps", toString(idleFpsRange))
+                .apply();
+    }
+
+    /**
+     * Counts a decoded frame against a decode setting, e.g. the binarizer used.
+     * Called on the decode thread; persisted by {@link #saveDecodeStats()}.
+     */
+    public synchronized void recordDecode(String setting, boolean success) {
+        int index = decodeSettings.indexOf(setting);
+        if (index < 0) {
+            decodeSettings.add(setting);
+            decodeCounts.add(new int[2]);
+            index = decodeSettings.size() - 1;
+        }
+        int[] counts = decodeCounts.get(index);
+        counts[0]++;
+        if (success) {
+            counts[1]++;
+        }
+    }
+
+    /**
+     * @param candidates Settings to choose from, in default order.
+     * @return The candidate with the best observed success rate, or the first one if
+     * none has been tried often enough.
+     */
+    public synchronized String getPreferredDecodeSetting(String... candidates) {
+        String best = candidates[0];
+        float bestRate = -1.0f;
+        for (String candidate : candidates) {
+            int index = decodeSettings.indexOf(candidate);
+            if (index < 0) {
+                continue;
+            }
+            int[] counts = decodeCounts.get(index);
+            if (counts[0] >= MIN_FRAMES_FOR_PREFERENCE) {
+                float rate = (float) counts[1] / counts[0];
+                if (rate > bestRate) {
+                    best = candidate;
+                    bestRate = rate;
+                }
+            }
+        }
+        return best;
+    }
+
+    synchronized void saveDecodeStats() {
+        SharedPreferences.Editor editor = prefs.edit();
+        StringBuilder settings = new StringBuilder();
+        for (int i = 0; i < decodeSettings.size(); i++) {
+            String setting = decodeSettings.get(i);
+            int[] counts = decodeCounts.get(i);
+            if (settings.length() > 0) {
+                settings.append(',');
+            }
+            settings.append(setting);
+            editor.putInt(prefix + "frames." + setting, counts[0]);
+            editor.putInt(prefix + "hits." + setting, counts[1]);
+        }
+        editor.putString(prefix + "decodeSettings", settings.toString()).apply();
+    }
+
+    String getSupportedSizes() {
+        return supportedSizes;
+    }
+
+    Point getPreviewSize() {
+        return previewSize;
+    }
+
+    int getPreviewFormat() {
+        return previewFormat;
+    }
+
+    String getPreviewFormatString() {
+        return previewFormatString;
+    }
+
+    boolean isTorchSupported() {
+        return torchSupported;
+    }
+
+    int getMinExposureCompensation() {
+        return minExposureCompensation;
+    }
+
+    int getMaxExposureCompensation() {
+        return maxExposureCompensation;
+    }
+
+    int getMaxZoom() {
+        return maxZoom;
+    }
+
+    List<Integer> getZoomRatios() {
+        return zoomRatios;
+    }
+
+    int[] getActiveFpsRange() {
+        return activeFpsRange;
+    }
+
+    int[] getIdleFpsRange() {
+        return idleFpsRange;
+    }
+
+    private static String toString(int[] range) {
+        return range == null ? null : range[0] + "-" + range[1];
+    }
+
+    private static int[] parseRange(String value) {
+        if (value == null) {
+            return null;
+        }
+        int dash = value.indexOf('-');
+        return new int[]{Integer.parseInt(value.substring(0, dash)), Integer.parseInt(value.substring(dash + 1))};
+    }
+
+    private static String toString(Point point) {
+        return point.x + "x" + point.y;
+    }
+
+    private static Point parsePoint(String value) {
+        if (value == null) {
+            return null;
+        }
+        String[] parts = X_PATTERN.split(value);
+        return new Point(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+    }
+
+    private static List<Integer> parseInts(String value) {
+        if (value.length() == 0) {
+            return null;
+        }
+        List<Integer> ints = new ArrayList<Integer>();
+        for (String part : COMMA_PATTERN.split(value)) {
+            ints.add(Integer.valueOf(part));
+        }
+        return Collections.unmodifiableList(ints);
+    }
+
+}
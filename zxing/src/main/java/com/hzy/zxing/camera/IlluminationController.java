@@ -0,0 +1,172 @@
+package com.hzy.zxing.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Switches the torch and exposure compensation on and off from the luminance of the
+ * frames being decoded. The smoothed mean is compared against separate on and off
+ * thresholds (hysteresis), and the camera parameters are changed at most once per
+ * {@link #MIN_CHANGE_INTERVAL_MS} so the preview is never stalled by a burst of
+ * {@code setParameters()} calls. Exposure is raised first; the torch only comes on when
+ * exposure is already at its maximum and the scene is still too dark.
+ * <p>
+ * A torch switched by the user through the flash button always wins: automatic control
+ * stays out of the way until the camera is opened again.
+ */
+public final class IlluminationController {
+
+    private static final String TAG = IlluminationController.class.getSimpleName();
+
+    private static final long MIN_CHANGE_INTERVAL_MS = 750L;
+    /**
+     * Weight of the newest frame in the smoothed mean.
+     */
+    private static final float SMOOTHING = 0.25f;
+
+    private static final float EXPOSURE_UP_MEAN = 70.0f;
+    private static final float EXPOSURE_DOWN_MEAN = 150.0f;
+    private static final float TORCH_ON_MEAN = 45.0f;
+    private static final float TORCH_OFF_MEAN = 170.0f;
+    /**
+     * Glare, including the torch reflecting off a glossy label.
+     */
+    private static final float GLARE_CLIPPED_FRACTION = 0.20f;
+
+    private volatile boolean manualOverride;
+    private boolean torchSupported;
+    private int minExposure;
+    private int maxExposure;
+
+    private boolean torchOn;
+    private int exposure;
+    private float smoothedMean = -1.0f;
+    private long lastChangeTime;
+
+    private int interventions;
+    private int assistedFrames;
+    private int assistedDecodes;
+    private int darkFrames;
+    private int darkDecodes;
+
+    IlluminationController() {
+    }
+
+    /**
+     * Called when the camera has been opened with the capabilities of the new session.
+     */
+    synchronized void reset(boolean torchSupported, int minExposure, int maxExposure) {
+        this.torchSupported = torchSupported;
+        this.minExposure = minExposure;
+        this.maxExposure = maxExposure;
+        manualOverride = false;
+        torchOn = false;
+        exposure = 0;
+        smoothedMean = -1.0f;
+        lastChangeTime = 0L;
+    }
+
+    /**
+     * The user toggled the torch by hand; stop driving it automatically.
+     */
+    void setManualOverride() {
+        manualOverride = true;
+    }
+
+    /**
+     * Feeds the statistics of a frame which has just been decoded.
+     *
+     * @param stats   Luminance of the framing rect.
+     * @param decoded Whether a barcode was found in the frame.
+     */
+    public synchronized void onFrame(LuminanceStats stats, boolean decoded) {
+        float mean = stats.getMean();
+        smoothedMean = smoothedMean < 0.0f ? mean : smoothedMean + SMOOTHING * (mean - smoothedMean);
+
+        boolean assisted = torchOn || exposure > 0;
+        if (assisted) {
+            assistedFrames++;
+            if (decoded) {
+                assistedDecodes++;
+            }
+        } else if (smoothedMean < EXPOSURE_UP_MEAN) {
+            darkFrames++;
+            if (decoded) {
+                darkDecodes++;
+            }
+        }
+
+        if (manualOverride || decoded) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (now - lastChangeTime < MIN_CHANGE_INTERVAL_MS) {
+            return;
+        }
+
+        boolean glare = stats.getClippedFraction() > GLARE_CLIPPED_FRACTION;
+        if (torchOn) {
+            if (smoothedMean > TORCH_OFF_MEAN || glare) {
+                applyTorch(false, now);
+            }
+        } else if (glare || smoothedMean > EXPOSURE_DOWN_MEAN) {
+            if (exposure > minExposure && exposure > 0) {
+                applyExposure(exposure - 1, now);
+            }
+        } else if (smoothedMean < EXPOSURE_UP_MEAN && exposure < maxExposure) {
+            applyExposure(exposure + 1, now);
+        } else if (smoothedMean < TORCH_ON_MEAN && torchSupported) {
+            applyTorch(true, now);
+        }
+    }
+
+    private void applyTorch(boolean on, long now) {
+        if (CameraManager.get().setTorch(on)) {
+            torchOn = on;
+            lastChangeTime = now;
+            interventions++;
+            // the scene is about to change a lot; start averaging again
+            smoothedMean = -1.0f;
+            Log.d(TAG, "Auto torch " + (on ? "on" : "off"));
+        }
+    }
+
+    private void applyExposure(int index, long now) {
+        if (CameraManager.get().setExposureCompensation(index)) {
+            exposure = index;
+            lastChangeTime = now;
+            interventions++;
+            Log.d(TAG, "Auto exposure compensation " + index);
+        }
+    }
+
+    /**
+     * @return How many times the torch or exposure compensation was changed.
+     */
+    public synchronized int getInterventions() {
+        return interventions;
+    }
+
+    /**
+     * @return Decode success rate of frames taken with the torch or raised exposure.
+     */
+    public synchronized float getAssistedDecodeRate() {
+        return assistedFrames == 0 ? 0.0f : (float) assistedDecodes / assistedFrames;
+    }
+
+    /**
+     * @return Decode success rate of dark frames taken before any assistance kicked in.
+     */
+    public synchronized float getDarkDecodeRate() {
+        return darkFrames == 0 ? 0.0f : (float) darkDecodes / darkFrames;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "interventions=" + interventions
+                + " assisted=" + assistedDecodes + '/' + assistedFrames
+                + " dark=" + darkDecodes + '/' + darkFrames
+                + " improvement=" + (getAssistedDecodeRate() - getDarkDecodeRate());
+    }
+
+}
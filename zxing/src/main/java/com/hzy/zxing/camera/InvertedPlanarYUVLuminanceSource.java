@@ -0,0 +1,62 @@
+package com.hzy.zxing.camera;
+
+import com.google.zxing.LuminanceSource;
+
+/**
+ * A light-on-dark view of the same Y plane as a {@link PlanarYUVLuminanceSource}: pixels
+ * are inverted as they are read into the caller's row or the matrix buffer, so the frame
+ * itself is neither copied nor changed.
+ */
+final class InvertedPlanarYUVLuminanceSource extends LuminanceSource {
+
+    private final byte[] yuvData;
+    private final int dataWidth;
+    private final int left;
+    private final int top;
+    private byte[] matrix;
+
+    InvertedPlanarYUVLuminanceSource(byte[] yuvData, int dataWidth, int left, int top, int width, int height, byte[] matrix) {
+        super(width, height);
+        this.yuvData = yuvData;
+        this.dataWidth = dataWidth;
+        this.left = left;
+        this.top = top;
+        this.matrix = matrix;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        int width = getWidth();
+        if (row == null || row.length < width) {
+            row = new byte[width];
+        }
+        int offset = (y + top) * dataWidth + left;
+        for (int x = 0; x < width; x++) {
+            row[x] = (byte) (255 - (yuvData[offset + x] & 0xff));
+        }
+        return row;
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        if (matrix == null || matrix.length < width * height) {
+            matrix = new byte[width * height];
+        }
+        int inputOffset = top * dataWidth + left;
+        int outputOffset = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                matrix[outputOffset + x] = (byte) (255 - (yuvData[inputOffset + x] & 0xff));
+            }
+            inputOffset += dataWidth;
+            outputOffset += width;
+        }
+        return matrix;
+    }
+
+}
@@ -0,0 +1,79 @@
+package com.hzy.zxing.camera;
+
+/**
+ * Luminance statistics of the framing rect of one preview frame. A single instance is
+ * owned by the decode thread and refilled for every frame, so reading it allocates nothing.
+ */
+public final class LuminanceStats {
+
+    /**
+     * Luma values at or below this are treated as crushed to black.
+     */
+    static final int CLIP_LOW = 8;
+    /**
+     * Luma values at or above this are treated as blown out to white.
+     */
+    static final int CLIP_HIGH = 247;
+    /**
+     * The framing rect is summarized as a grid of this many cells per side, which is
+     * enough to tell a static scene from a moving one.
+     */
+    public static final int GRID = 4;
+
+    private float mean;
+    private float darkFraction;
+    private float clippedFraction;
+    private int samples;
+    private final int[] signature = new int[GRID * GRID];
+
+    /**
+     * @return Average luma of each grid cell, row by row. Owned by this object, do not modify.
+     */
+    public int[] getSignature() {
+        return signature;
+    }
+
+    void set(long sum, int dark, int clipped, int samples) {
+        this.samples = samples;
+        if (samples == 0) {
+            mean = 0.0f;
+            darkFraction = 0.0f;
+            clippedFraction = 0.0f;
+        } else {
+            mean = (float) sum / samples;
+            darkFraction = (float) dark / samples;
+            clippedFraction = (float) clipped / samples;
+        }
+    }
+
+    /**
+     * @return Average luma of the sampled pixels, 0-255.
+     */
+    public float getMean() {
+        return mean;
+    }
+
+    /**
+     * @return Fraction of sampled pixels crushed to black.
+     */
+    public float getDarkFraction() {
+        return darkFraction;
+    }
+
+    /**
+     * @return Fraction of sampled pixels blown out to white, e.g. by glare or the torch.
+     */
+    public float getClippedFraction() {
+        return clippedFraction;
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    @Override
+    public String toString() {
+        return "mean=" + mean + " dark=" + darkFraction + " clipped=" + clippedFraction;
+    }
+
+}
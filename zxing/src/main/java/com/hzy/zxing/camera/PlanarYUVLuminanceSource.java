@@ -101,6 +101,63 @@ public final class PlanarYUVLuminanceSource extends LuminanceSource {
         return true;
     }
 
+    @Override
+    public LuminanceSource invert() {
+        return invert(null);
+    }
+
+    /**
+     * Like {@link #invert()}, but the inverted view reads straight from this frame and fills
+     * its matrix into {@code matrix} when it is large enough.
+     *
+     * @param matrix A buffer to reuse, or null.
+     */
+    public LuminanceSource invert(byte[] matrix) {
+        return new InvertedPlanarYUVLuminanceSource(yuvData, dataWidth, left, top, getWidth(), getHeight(), matrix);
+    }
+
+    /**
+     * Fills in the luminance statistics of the cropped area, looking at every
+     * {@code step}-th pixel of every {@code step}-th row. Nothing is copied or allocated.
+     *
+     * @param stats The statistics to overwrite.
+     * @param step  Sampling stride in both directions, at least 1.
+     */
+    public void computeStats(LuminanceStats stats, int step) {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] yuv = yuvData;
+        int[] signature = stats.getSignature();
+        int grid = LuminanceStats.GRID;
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = 0;
+        }
+        long sum = 0L;
+        int dark = 0;
+        int clipped = 0;
+        int samples = 0;
+        for (int y = 0; y < height; y += step) {
+            int offset = (y + top) * dataWidth + left;
+            int row = y * grid / height * grid;
+            for (int x = 0; x < width; x += step) {
+                int luma = yuv[offset + x] & 0xff;
+                sum += luma;
+                signature[row + x * grid / width] += luma;
+                if (luma <= LuminanceStats.CLIP_LOW) {
+                    dark++;
+                } else if (luma >= LuminanceStats.CLIP_HIGH) {
+                    clipped++;
+                }
+                samples++;
+            }
+        }
+        int cellSamples = Math.max(1, samples / signature.length);
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] /= cellSamples;
+        }
+        stats.set(sum, dark, clipped, samples);
+    }
+
     public int getDataWidth() {
         return dataWidth;
     }
@@ -22,6 +22,8 @@ import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
 
+import com.hzy.zxing.util.StartupTrace;
+
 final class PreviewCallback implements Camera.PreviewCallback {
 
     private static final String TAG = PreviewCallback.class.getSimpleName();
@@ -36,12 +38,16 @@ final class PreviewCallback implements Camera.PreviewCallback {
         this.useOneShotPreviewCallback = useOneShotPreviewCallback;
     }
 
+    /**
+     * Called on the camera thread, which frames are delivered on as well.
+     */
     void setHandler(Handler previewHandler, int previewMessage) {
         this.previewHandler = previewHandler;
         this.previewMessage = previewMessage;
     }
 
     public void onPreviewFrame(byte[] data, Camera camera) {
+        StartupTrace.markFirstPreview();
         Point cameraResolution = configManager.getCameraResolution();
         if (!useOneShotPreviewCallback) {
             camera.setPreviewCallback(null);
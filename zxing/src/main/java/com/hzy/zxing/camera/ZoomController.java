@@ -0,0 +1,159 @@
+package com.hzy.zxing.camera;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.qrcode.detector.FinderPattern;
+
+import java.util.List;
+
+/**
+ * Closed-loop zoom driven by the size of the code in the preview. The module size is
+ * estimated from the finder patterns reported while a frame is being decoded; the zoom
+ * is stepped towards {@link #TARGET_MODULE_PX} pixels per module, and backed out when
+ * the finder patterns get close to the edges of the framing rect. Only one zoom step
+ * is taken per {@link #MIN_CHANGE_INTERVAL_MS} so the preview zooms smoothly.
+ * <p>
+ * Finder patterns are reported on the plane the readers decoded, which may be downsampled,
+ * and taken as they are; {@link #onFrame} brings them back to the framing rect. The
+ * callbacks arrive on the decode thread, or on a reader thread when all formats are
+ * decoded in parallel; {@link #onFrame} on the decode thread.
+ */
+public final class ZoomController implements ResultPointCallback {
+
+    private static final String TAG = ZoomController.class.getSimpleName();
+
+    private static final float TARGET_MODULE_PX = 4.0f;
+    /**
+     * Below this many pixels per module decoding gets unreliable; zoom in.
+     */
+    private static final float MIN_MODULE_PX = 2.5f;
+    /**
+     * Finder pattern centers further than this fraction of the framing rect from its
+     * center mean the code is about to overflow; zoom out.
+     */
+    private static final float MAX_EXTENT = 0.85f;
+    private static final long MIN_CHANGE_INTERVAL_MS = 250L;
+    /**
+     * With nothing seen for this long, drift back to no zoom so other codes can be found.
+     */
+    private static final long IDLE_RESET_MS = 3000L;
+    private static final int MAX_PATTERNS = 16;
+
+    private final float[] moduleSizes = new float[MAX_PATTERNS];
+    private final float[] patternX = new float[MAX_PATTERNS];
+    private final float[] patternY = new float[MAX_PATTERNS];
+    private int patternCount;
+
+    private List<Integer> zoomRatios;
+    private int maxZoom;
+    private int zoom;
+    private long lastChangeTime;
+    private long lastSeenTime;
+    private int zoomChanges;
+
+    ZoomController() {
+    }
+
+    /**
+     * Called when the camera has been opened.
+     *
+     * @param maxZoom    Highest zoom index, or 0 if the standard zoom API is not available.
+     * @param zoomRatios Zoom ratios in 1/100ths for every index up to maxZoom.
+     */
+    synchronized void reset(int maxZoom, List<Integer> zoomRatios) {
+        this.maxZoom = zoomRatios == null ? 0 : Math.min(maxZoom, zoomRatios.size() - 1);
+        this.zoomRatios = zoomRatios;
+        zoom = 0;
+        patternCount = 0;
+        lastChangeTime = 0L;
+        lastSeenTime = SystemClock.uptimeMillis();
+    }
+
+    @Override
+    public synchronized void foundPossibleResultPoint(ResultPoint point) {
+        if (point instanceof FinderPattern && patternCount < MAX_PATTERNS) {
+            moduleSizes[patternCount] = ((FinderPattern) point).getEstimatedModuleSize();
+            patternX[patternCount] = point.getX();
+            patternY[patternCount] = point.getY();
+            patternCount++;
+        }
+    }
+
+    /**
+     * Called after each frame with the size of the cropped area the points refer to.
+     *
+     * @param frameWidth  Width of the framing rect in preview pixels.
+     * @param frameHeight Height of the framing rect in preview pixels.
+     * @param scale       Pixels of the plane the readers worked on per preview pixel, below 1
+     *                    when it was downsampled; positions and module sizes are divided by it.
+     */
+    public synchronized void onFrame(int frameWidth, int frameHeight, float scale) {
+        int count = patternCount;
+        patternCount = 0;
+        if (maxZoom <= 0) {
+            return;
+        }
+        long now = SystemClock.uptimeMillis();
+        if (count > 0) {
+            lastSeenTime = now;
+        }
+        if (now - lastChangeTime < MIN_CHANGE_INTERVAL_MS) {
+            return;
+        }
+
+        if (count == 0) {
+            if (zoom > 0 && now - lastSeenTime > IDLE_RESET_MS) {
+                applyZoom(zoom - 1, now);
+            }
+            return;
+        }
+
+        float moduleSize = 0.0f;
+        float extent = 0.0f;
+        float centerX = frameWidth / 2.0f;
+        float centerY = frameHeight / 2.0f;
+        for (int i = 0; i < count; i++) {
+            moduleSize += moduleSizes[i];
+            float x = patternX[i] / scale;
+            float y = patternY[i] / scale;
+            extent = Math.max(extent, Math.max(Math.abs(x - centerX) / centerX, Math.abs(y - centerY) / centerY));
+        }
+        moduleSize /= count * scale;
+
+        if (extent > MAX_EXTENT) {
+            if (zoom > 0) {
+                applyZoom(zoom - 1, now);
+            }
+        } else if (moduleSize < MIN_MODULE_PX && zoom < maxZoom) {
+            // step towards the ratio which would bring the modules to the target size
+            int desiredRatio = (int) (zoomRatios.get(zoom) * TARGET_MODULE_PX / moduleSize);
+            if (zoomRatios.get(zoom + 1) <= desiredRatio) {
+                applyZoom(zoom + 1, now);
+            }
+        }
+    }
+
+    private void applyZoom(int index, long now) {
+        if (CameraManager.get().setZoom(index)) {
+            zoom = index;
+            lastChangeTime = now;
+            zoomChanges++;
+            Log.d(TAG, "Zoom " + zoomRatios.get(index) + "%");
+        }
+    }
+
+    /**
+     * @return The current zoom ratio in 1/100ths, 100 when not zoomed.
+     */
+    public synchronized int getZoomRatio() {
+        return zoomRatios == null || zoomRatios.isEmpty() ? 100 : zoomRatios.get(zoom);
+    }
+
+    public synchronized int getZoomChanges() {
+        return zoomChanges;
+    }
+
+}
@@ -0,0 +1,444 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+/**
+ * The binarizers of {@link com.google.zxing.common.GlobalHistogramBinarizer} and
+ * {@link com.google.zxing.common.HybridBinarizer}, with the same results, and the
+ * integral-image {@link SauvolaThreshold}, working in scratch buffers owned by the stage:
+ * the luminance copy, histogram, block black points, integral images and the output
+ * {@link BitMatrix} are allocated for the first frame and then cleared and reused as long
+ * as the crop size stays the same. So are the binarizers handed out, one per mode, which
+ * read the current frame through a source of the crop's size.
+ * <p>
+ * The binarizer and matrix returned for one frame are taken over by the next call, so a
+ * stage belongs to one decode worker and a result must be used before the next frame is
+ * binarized.
+ */
+final class BinarizationStage {
+
+    /**
+     * Names of the modes, as the decode settings tracked per device.
+     */
+    static final String GLOBAL = "binarizer.global";
+    static final String HYBRID = "binarizer.hybrid";
+    static final String ADAPTIVE = "binarizer.adaptive";
+
+    /**
+     * Bytes a frame may allocate here once the buffers fit the crop, checked by the unit test
+     * BinarizationStageTest. The adaptive mode adds
+     * {@link SauvolaThreshold#ALLOCATION_BUDGET_BYTES}.
+     */
+    static final int ALLOCATION_BUDGET_BYTES = 0;
+
+    static final int MODE_GLOBAL = 0;
+    static final int MODE_HYBRID = 1;
+    static final int MODE_ADAPTIVE = 2;
+
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+    private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+
+    // Block layout of the hybrid binarizer
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5;
+    private static final int MIN_DYNAMIC_RANGE = 24;
+
+    private final int[] buckets = new int[LUMINANCE_BUCKETS];
+    private byte[] row = new byte[0];
+    private byte[] luminances = new byte[0];
+    private int[] blackPoints = new int[0];
+    private BitMatrix matrix;
+    private final SauvolaThreshold sauvola = new SauvolaThreshold();
+    private FrameSource frame;
+    private final StageBinarizer[] binarizers = new StageBinarizer[MODE_ADAPTIVE + 1];
+
+    /**
+     * @param name {@link #GLOBAL}, {@link #HYBRID} or {@link #ADAPTIVE}; unknown names mean global.
+     * @return A binarizer of the source which works in this stage's buffers.
+     */
+    Binarizer createBinarizer(String name, LuminanceSource source) {
+        int mode = MODE_GLOBAL;
+        if (HYBRID.equals(name)) {
+            mode = MODE_HYBRID;
+        } else if (ADAPTIVE.equals(name)) {
+            mode = MODE_ADAPTIVE;
+        }
+        return createBinarizer(mode, source);
+    }
+
+    /**
+     * @param mode {@link #MODE_GLOBAL}, {@link #MODE_HYBRID} or {@link #MODE_ADAPTIVE}.
+     * @return A binarizer of the source which works in this stage's buffers, the same
+     * instance for every frame of the same size.
+     */
+    Binarizer createBinarizer(int mode, LuminanceSource source) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (frame == null || frame.getWidth() != width || frame.getHeight() != height) {
+            frame = new FrameSource(width, height);
+            for (int i = 0; i < binarizers.length; i++) {
+                binarizers[i] = null;
+            }
+        }
+        frame.source = source;
+        StageBinarizer binarizer = binarizers[mode];
+        if (binarizer == null) {
+            binarizer = new StageBinarizer(frame, this, mode);
+            binarizers[mode] = binarizer;
+        }
+        return binarizer;
+    }
+
+    /**
+     * Binarizes the whole source into the stage's matrix.
+     *
+     * @param mode {@link #MODE_GLOBAL}, {@link #MODE_HYBRID} or {@link #MODE_ADAPTIVE}.
+     */
+    BitMatrix binarize(LuminanceSource source, int mode) throws NotFoundException {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (matrix == null || matrix.getWidth() != width || matrix.getHeight() != height) {
+            matrix = new BitMatrix(width, height);
+        } else {
+            matrix.clear();
+        }
+        if (mode != MODE_GLOBAL && width >= MINIMUM_DIMENSION && height >= MINIMUM_DIMENSION) {
+            readLuminances(source, width, height);
+            if (mode == MODE_ADAPTIVE) {
+                sauvola.threshold(luminances, width, height, matrix);
+            } else {
+                binarizeHybrid(width, height);
+            }
+        } else {
+            binarizeGlobal(source, width, height);
+        }
+        return matrix;
+    }
+
+    /**
+     * One row thresholded at its own histogram's black point, with sharpening, as the
+     * global histogram binarizer does for 1D readers.
+     */
+    BitArray blackRow(LuminanceSource source, int y, BitArray bits) throws NotFoundException {
+        int width = source.getWidth();
+        if (bits == null || bits.getSize() < width) {
+            bits = new BitArray(width);
+        } else {
+            bits.clear();
+        }
+        byte[] localRow = readRow(source, y);
+        clearBuckets();
+        for (int x = 0; x < width; x++) {
+            buckets[(localRow[x] & 0xff) >> LUMINANCE_SHIFT]++;
+        }
+        int blackPoint = blackPoint(buckets);
+        int left = localRow[0] & 0xff;
+        int center = localRow[1] & 0xff;
+        for (int x = 1; x < width - 1; x++) {
+            int right = localRow[x + 1] & 0xff;
+            if (((center << 2) - left - right) >> 1 < blackPoint) {
+                bits.set(x);
+            }
+            left = center;
+            center = right;
+        }
+        return bits;
+    }
+
+    private void binarizeGlobal(LuminanceSource source, int width, int height) throws NotFoundException {
+        // The histogram comes from the middle three fifths of four rows
+        clearBuckets();
+        int right = (width << 2) / 5;
+        for (int y = 1; y < 5; y++) {
+            byte[] localRow = readRow(source, height * y / 5);
+            for (int x = width / 5; x < right; x++) {
+                buckets[(localRow[x] & 0xff) >> LUMINANCE_SHIFT]++;
+            }
+        }
+        int blackPoint = blackPoint(buckets);
+        BitMatrix localMatrix = matrix;
+        for (int y = 0; y < height; y++) {
+            byte[] localRow = readRow(source, y);
+            for (int x = 0; x < width; x++) {
+                if ((localRow[x] & 0xff) < blackPoint) {
+                    localMatrix.set(x, y);
+                }
+            }
+        }
+    }
+
+    private void readLuminances(LuminanceSource source, int width, int height) {
+        int area = width * height;
+        if (luminances.length < area) {
+            luminances = new byte[area];
+        }
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(readRow(source, y), 0, luminances, y * width, width);
+        }
+    }
+
+    private void binarizeHybrid(int width, int height) {
+        int subWidth = (width + BLOCK_SIZE_MASK) >> BLOCK_SIZE_POWER;
+        int subHeight = (height + BLOCK_SIZE_MASK) >> BLOCK_SIZE_POWER;
+        if (blackPoints.length < subWidth * subHeight) {
+            blackPoints = new int[subWidth * subHeight];
+        }
+        calculateBlackPoints(subWidth, subHeight, width, height);
+        calculateThresholdForBlocks(subWidth, subHeight, width, height);
+    }
+
+    private byte[] readRow(LuminanceSource source, int y) {
+        byte[] localRow = source.getRow(y, row);
+        // a source may hand out its own array instead of filling ours
+        if (localRow.length > row.length) {
+            row = localRow;
+        }
+        return localRow;
+    }
+
+    private void clearBuckets() {
+        for (int i = 0; i < LUMINANCE_BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+    }
+
+    /**
+     * Average of the black points of the 5x5 blocks around each block, used as the
+     * threshold of its 8x8 pixels.
+     */
+    private void calculateThresholdForBlocks(int subWidth, int subHeight, int width, int height) {
+        byte[] localLuminances = luminances;
+        int[] localBlackPoints = blackPoints;
+        BitMatrix localMatrix = matrix;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, height - BLOCK_SIZE);
+            int top = cap(y, subHeight - 3);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, width - BLOCK_SIZE);
+                int left = cap(x, subWidth - 3);
+                int sum = 0;
+                for (int z = -2; z <= 2; z++) {
+                    int offset = (top + z) * subWidth + left;
+                    sum += localBlackPoints[offset - 2] + localBlackPoints[offset - 1] + localBlackPoints[offset]
+                            + localBlackPoints[offset + 1] + localBlackPoints[offset + 2];
+                }
+                int threshold = sum / 25;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        if ((localLuminances[offset + xx] & 0xff) <= threshold) {
+                            localMatrix.set(xoffset + xx, yoffset + yy);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int cap(int value, int max) {
+        return value < 2 ? 2 : value > max ? max : value;
+    }
+
+    /**
+     * The black point of each 8x8 block: its mean, or for flat blocks a value derived from
+     * their minimum and the neighbors, so a flat block inside a dark area stays dark.
+     */
+    private void calculateBlackPoints(int subWidth, int subHeight, int width, int height) {
+        byte[] localLuminances = luminances;
+        int[] localBlackPoints = blackPoints;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, height - BLOCK_SIZE);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, width - BLOCK_SIZE);
+                int sum = 0;
+                int min = 0xff;
+                int max = 0;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = localLuminances[offset + xx] & 0xff;
+                        sum += pixel;
+                        if (pixel < min) {
+                            min = pixel;
+                        }
+                        if (pixel > max) {
+                            max = pixel;
+                        }
+                    }
+                    if (max - min > MIN_DYNAMIC_RANGE) {
+                        // the range is known to be wide enough, only the sum is still needed
+                        for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+                            for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                                sum += localLuminances[offset + xx] & 0xff;
+                            }
+                        }
+                    }
+                }
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+                if (max - min <= MIN_DYNAMIC_RANGE) {
+                    average = min / 2;
+                    if (y > 0 && x > 0) {
+                        int index = y * subWidth + x;
+                        int averageNeighborBlackPoint = (localBlackPoints[index - subWidth] + 2 * localBlackPoints[index - 1]
+                                + localBlackPoints[index - subWidth - 1]) / 4;
+                        if (min < averageNeighborBlackPoint) {
+                            average = averageNeighborBlackPoint;
+                        }
+                    }
+                }
+                localBlackPoints[y * subWidth + x] = average;
+            }
+        }
+    }
+
+    /**
+     * @throws NotFoundException if the histogram has a single peak.
+     */
+    private static int blackPoint(int[] buckets) throws NotFoundException {
+        int blackPoint = estimateBlackPoint(buckets);
+        if (blackPoint < 0) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        return blackPoint;
+    }
+
+    /**
+     * The valley between the two highest peaks of a 32-bucket luminance histogram, as in
+     * {@link com.google.zxing.common.GlobalHistogramBinarizer}.
+     *
+     * @return The black point, or -1 if the histogram has a single peak.
+     */
+    static int estimateBlackPoint(int[] buckets) {
+        int numBuckets = buckets.length;
+        int maxBucketCount = 0;
+        int firstPeak = 0;
+        int firstPeakSize = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            if (buckets[x] > firstPeakSize) {
+                firstPeak = x;
+                firstPeakSize = buckets[x];
+            }
+            if (buckets[x] > maxBucketCount) {
+                maxBucketCount = buckets[x];
+            }
+        }
+        int secondPeak = 0;
+        int secondPeakScore = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            int distanceToBiggest = x - firstPeak;
+            int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+            if (score > secondPeakScore) {
+                secondPeak = x;
+                secondPeakScore = score;
+            }
+        }
+        if (firstPeak > secondPeak) {
+            int temp = firstPeak;
+            firstPeak = secondPeak;
+            secondPeak = temp;
+        }
+        if (secondPeak - firstPeak <= numBuckets >> 4) {
+            return -1;
+        }
+        int bestValley = secondPeak - 1;
+        int bestValleyScore = -1;
+        for (int x = secondPeak - 1; x > firstPeak; x--) {
+            int fromFirst = x - firstPeak;
+            int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+            if (score > bestValleyScore) {
+                bestValley = x;
+                bestValleyScore = score;
+            }
+        }
+        return bestValley << LUMINANCE_SHIFT;
+    }
+
+    /**
+     * Binarizer facade handed to the readers; the work happens in the stage.
+     */
+    private static final class StageBinarizer extends Binarizer {
+
+        private final BinarizationStage stage;
+        private final int mode;
+
+        StageBinarizer(LuminanceSource source, BinarizationStage stage, int mode) {
+            super(source);
+            this.stage = stage;
+            this.mode = mode;
+        }
+
+        @Override
+        public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+            return stage.blackRow(getLuminanceSource(), y, row);
+        }
+
+        @Override
+        public BitMatrix getBlackMatrix() throws NotFoundException {
+            return stage.binarize(getLuminanceSource(), mode);
+        }
+
+        @Override
+        public Binarizer createBinarizer(LuminanceSource source) {
+            // crops and rotations keep their own source, the frame's moves on with the next call
+            return new StageBinarizer(source, stage, mode);
+        }
+    }
+
+    /**
+     * The current frame, for the binarizers kept across frames of the same size.
+     */
+    private static final class FrameSource extends LuminanceSource {
+
+        LuminanceSource source;
+
+        FrameSource(int width, int height) {
+            super(width, height);
+        }
+
+        @Override
+        public byte[] getRow(int y, byte[] row) {
+            return source.getRow(y, row);
+        }
+
+        @Override
+        public byte[] getMatrix() {
+            return source.getMatrix();
+        }
+
+        @Override
+        public boolean isCropSupported() {
+            return source.isCropSupported();
+        }
+
+        @Override
+        public LuminanceSource crop(int left, int top, int width, int height) {
+            return source.crop(left, top, width, height);
+        }
+
+        @Override
+        public boolean isRotateSupported() {
+            return source.isRotateSupported();
+        }
+
+        @Override
+        public LuminanceSource invert() {
+            return source.invert();
+        }
+
+        @Override
+        public LuminanceSource rotateCounterClockwise() {
+            return source.rotateCounterClockwise();
+        }
+
+        @Override
+        public LuminanceSource rotateCounterClockwise45() {
+            return source.rotateCounterClockwise45();
+        }
+    }
+
+}
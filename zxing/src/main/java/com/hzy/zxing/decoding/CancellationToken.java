@@ -0,0 +1,92 @@
+package com.hzy.zxing.decoding;
+
+/**
+ * Lets a frame's decode be given up between its stages: after the crop is rotated, after
+ * it is binarized and between reader attempts. A reader that is running cannot be
+ * stopped, so a frame ends at the next stage boundary, a few milliseconds later.
+ * <p>
+ * A frame is given up when the decode thread is quitting, see {@link #cancel()}, which
+ * holds for all later frames too, or when it runs past its deadline. Preview frames are
+ * requested one at a time, so a newer frame never waits behind the current one.
+ * <p>
+ * {@link #cancel()} may be called from any thread, everything else on the decode thread.
+ */
+final class CancellationToken {
+
+    /**
+     * Bytes a frame may allocate here, checked by the unit test FormatSchedulerTest.
+     */
+    static final int ALLOCATION_BUDGET_BYTES = 0;
+
+    private volatile boolean cancelled;
+    private long deadlineNanos = Long.MAX_VALUE;
+    private boolean expired;
+
+    private int cancelledFrames;
+    private int expiredFrames;
+
+    /**
+     * Cancels the current frame and every later one.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Called when a frame starts decoding.
+     *
+     * @param deadlineNanos {@link System#nanoTime()} after which the frame is given up.
+     */
+    void startFrame(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+        expired = false;
+    }
+
+    /**
+     * Checked at each stage boundary; a frame reported here is counted once.
+     *
+     * @return Whether the rest of the frame should be skipped.
+     */
+    boolean isCancelled() {
+        if (cancelled || expired) {
+            return true;
+        }
+        if (System.nanoTime() > deadlineNanos) {
+            expired = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return Whether a stage boundary of the current frame found it given up.
+     */
+    boolean isAborted() {
+        return cancelled || expired;
+    }
+
+    /**
+     * @return Whether the current frame was given up because it ran past its deadline, in
+     * which case the next frame must still be requested.
+     */
+    boolean isExpired() {
+        return expired && !cancelled;
+    }
+
+    /**
+     * Called at the end of a frame that was given up, to count it.
+     */
+    synchronized void onAborted() {
+        if (cancelled) {
+            cancelledFrames++;
+        } else {
+            expiredFrames++;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "cancelled=" + cancelledFrames + " expired=" + expiredFrames;
+    }
+
+}
@@ -30,9 +30,10 @@ import com.google.zxing.R;
 import com.google.zxing.Result;
 import com.hzy.zxing.camera.CameraManager;
 import com.hzy.zxing.ui.CaptureActivity;
+import com.hzy.zxing.util.StartupTrace;
 import com.hzy.zxing.view.ViewfinderResultPointCallback;
 
-import java.util.Vector;
+import java.util.Collection;
 
 /**
  * This class handles all the messaging which comprises the state machine for
@@ -44,15 +45,27 @@ public final class CaptureActivityHandler extends Handler {
 
     private final CaptureActivity activity;
     private final DecodeThread decodeThread;
+    private final DecodeRateScheduler rateScheduler;
     private State state;
+    /**
+     * Requests the next frame once the scheduler's delay has passed.
+     */
+    private final Runnable requestFrame = new Runnable() {
+        public void run() {
+            if (state == State.PREVIEW) {
+                CameraManager.get().requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+            }
+        }
+    };
 
     private enum State {
         PREVIEW, SUCCESS, DONE
     }
 
-    public CaptureActivityHandler(CaptureActivity activity, Vector<BarcodeFormat> decodeFormats, String characterSet) {
+    public CaptureActivityHandler(CaptureActivity activity, Collection<BarcodeFormat> decodeFormats, String characterSet) {
         this.activity = activity;
-        decodeThread = new DecodeThread(activity, decodeFormats, characterSet, new ViewfinderResultPointCallback(activity.getViewfinderView()));
+        rateScheduler = new DecodeRateScheduler(activity);
+        decodeThread = new DecodeThread(activity, decodeFormats, characterSet, new ViewfinderResultPointCallback(activity.getViewfinderView()), rateScheduler);
         decodeThread.start();
         state = State.SUCCESS;
         CameraManager.get().startPreview();
@@ -70,6 +83,7 @@ public final class CaptureActivityHandler extends Handler {
             restartPreviewAndDecode();
         } else if (message.what == R.id.decode_succeeded) {
             Log.d(TAG, "Got decode succeeded message");
+            StartupTrace.markFirstDecode();
             state = State.SUCCESS;
             Bundle bundle = message.getData();
 
@@ -78,11 +92,24 @@ public final class CaptureActivityHandler extends Handler {
 
             //将扫码后得的数据返回给CaptureActivity去处理
             activity.handleDecode((Result) message.obj, barcode);
-        } else if (message.what == R.id.decode_failed) {
-            // We're decoding as fast as possible, so when one decode fails,
-            // start another.
+        } else if (message.what == R.id.decode_partial) {
+            // One symbol of a Structured Append set: report progress, keep scanning
+            activity.handlePartialDecode(message.arg1, message.arg2);
             state = State.PREVIEW;
             CameraManager.get().requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+        } else if (message.what == R.id.decode_partial_expired) {
+            // The set being collected expired; the frame's decode_failed follows
+            activity.resetPartialDecode();
+        } else if (message.what == R.id.decode_failed) {
+            // Decode as fast as the scheduler allows: right away while the scene is
+            // changing, slower when the scanner is left pointing at nothing.
+            state = State.PREVIEW;
+            long delay = rateScheduler.getFrameDelay();
+            if (delay > 0L) {
+                postDelayed(requestFrame, delay);
+            } else {
+                CameraManager.get().requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
+            }
         } else if (message.what == R.id.return_scan_result) {
             Log.d(TAG, "Got return scan result message");
             activity.setResult(Activity.RESULT_OK, (Intent) message.obj);
@@ -98,7 +125,15 @@ public final class CaptureActivityHandler extends Handler {
 
     public void quitSynchronously() {
         state = State.DONE;
+        removeCallbacks(requestFrame);
+        Log.d(TAG, "Decode rate: " + rateScheduler);
+        Log.d(TAG, "Formats: " + decodeThread.getFormatScheduler());
+        Log.d(TAG, "Inversion: " + decodeThread.getInversionScheduler());
+        Log.d(TAG, "Escalation: " + decodeThread.getEscalationPolicy());
+        Log.d(TAG, "Aborted frames: " + decodeThread.getCancellation());
         CameraManager.get().stopPreview();
+        // 正在识别的帧在下一个阶段边界放弃，无需等它识别完
+        decodeThread.cancel();
         Message quit = Message.obtain(decodeThread.getHandler(), R.id.quit);
         quit.sendToTarget();
         try {
@@ -110,6 +145,8 @@ public final class CaptureActivityHandler extends Handler {
         // Be absolutely sure we don't send any queued up messages
         removeMessages(R.id.decode_succeeded);
         removeMessages(R.id.decode_failed);
+        removeMessages(R.id.decode_partial);
+        removeMessages(R.id.decode_partial_expired);
     }
 
     private void restartPreviewAndDecode() {
@@ -117,6 +154,7 @@ public final class CaptureActivityHandler extends Handler {
             state = State.PREVIEW;
             CameraManager.get().requestPreviewFrame(decodeThread.getHandler(), R.id.decode);
             CameraManager.get().requestAutoFocus(this, R.id.auto_focus);
+            activity.resetPartialDecode();
             activity.drawViewfinder();
         }
     }
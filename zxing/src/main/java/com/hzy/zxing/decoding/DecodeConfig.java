@@ -0,0 +1,197 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Reader;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.aztec.AztecReader;
+import com.google.zxing.datamatrix.DataMatrixReader;
+import com.google.zxing.maxicode.MaxiCodeReader;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.google.zxing.pdf417.PDF417Reader;
+import com.google.zxing.qrcode.QRCodeReader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A decode configuration compiled once per session: the requested formats are resolved
+ * into an immutable {@link EnumSet}, the hints into an immutable {@link EnumMap}, and
+ * the concrete readers for those formats are created up front. Decoding then calls
+ * those readers directly, e.g. only a {@link QRCodeReader} for QR-only scanning,
+ * instead of going through {@link com.google.zxing.MultiFormatReader}, which re-reads
+ * its hints and walks its generic reader list on every frame.
+ * <p>
+ * All 1D formats share one {@link MultiFormatOneDReader}, so each row is scanned once
+ * no matter how many 1D symbologies are enabled. Each reader is a slot which can also
+ * be run on its own, see {@link FormatScheduler}.
+ * <p>
+ * Readers keep per-decode state, so an instance must only be used by one thread.
+ */
+public final class DecodeConfig {
+
+    /**
+     * Bytes a QR Code attempt on a frame without a code may allocate, binarizer and
+     * bitmap wrappers included: ZXing's detector creates its finder pattern finder per
+     * call, and a candidate for every finder-like run in the noise. Checked by the unit test
+     * DecodeConfigTest.
+     */
+    static final int QR_ATTEMPT_ALLOCATION_BUDGET_BYTES = 6 * 1024;
+
+    private static final Set<BarcodeFormat> ONE_D = Collections.unmodifiableSet(EnumSet.of(
+            BarcodeFormat.UPC_A, BarcodeFormat.UPC_E, BarcodeFormat.EAN_13, BarcodeFormat.EAN_8,
+            BarcodeFormat.CODABAR, BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128,
+            BarcodeFormat.ITF, BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED));
+
+    private final Set<BarcodeFormat> formats;
+    private final Map<DecodeHintType, Object> hints;
+    private final Reader[] readers;
+    private final String[] slotNames;
+
+    /**
+     * @param hints Decode hints; {@link DecodeHintType#POSSIBLE_FORMATS} selects the
+     *              readers and defaults to QR Code only.
+     */
+    public DecodeConfig(Map<DecodeHintType, ?> hints) {
+        EnumMap<DecodeHintType, Object> copy = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        copy.putAll(hints);
+        @SuppressWarnings("unchecked")
+        Collection<BarcodeFormat> requested = (Collection<BarcodeFormat>) copy.get(DecodeHintType.POSSIBLE_FORMATS);
+        EnumSet<BarcodeFormat> formatSet = EnumSet.noneOf(BarcodeFormat.class);
+        if (requested == null || requested.isEmpty()) {
+            formatSet.add(BarcodeFormat.QR_CODE);
+        } else {
+            formatSet.addAll(requested);
+        }
+        this.formats = Collections.unmodifiableSet(formatSet);
+        copy.put(DecodeHintType.POSSIBLE_FORMATS, this.formats);
+        this.hints = Collections.unmodifiableMap(copy);
+        this.readers = createReaders(formatSet, this.hints);
+        this.slotNames = new String[readers.length];
+        for (int i = 0; i < readers.length; i++) {
+            slotNames[i] = slotName(readers[i]);
+        }
+    }
+
+    private static String slotName(Reader reader) {
+        if (reader instanceof MultiFormatOneDReader) {
+            return "1D";
+        }
+        if (reader instanceof QRCodeReader) {
+            return "QR";
+        }
+        if (reader instanceof DataMatrixReader) {
+            return "DM";
+        }
+        String name = reader.getClass().getSimpleName();
+        return name.substring(0, name.length() - "Reader".length());
+    }
+
+    private static Reader[] createReaders(Set<BarcodeFormat> formats, Map<DecodeHintType, ?> hints) {
+        boolean tryHarder = hints.containsKey(DecodeHintType.TRY_HARDER);
+        boolean oneD = !Collections.disjoint(formats, ONE_D);
+        List<Reader> readers = new ArrayList<Reader>(6);
+        // Same order as MultiFormatReader: 1D is cheap, so it goes first unless trying harder
+        if (oneD && !tryHarder) {
+            readers.add(new MultiFormatOneDReader(hints));
+        }
+        if (formats.contains(BarcodeFormat.QR_CODE)) {
+            readers.add(new QRCodeReader());
+        }
+        if (formats.contains(BarcodeFormat.DATA_MATRIX)) {
+            readers.add(new DataMatrixReader());
+        }
+        if (formats.contains(BarcodeFormat.AZTEC)) {
+            readers.add(new AztecReader());
+        }
+        if (formats.contains(BarcodeFormat.PDF_417)) {
+            readers.add(new PDF417Reader());
+        }
+        if (formats.contains(BarcodeFormat.MAXICODE)) {
+            readers.add(new MaxiCodeReader());
+        }
+        if (oneD && tryHarder) {
+            readers.add(new MultiFormatOneDReader(hints));
+        }
+        return readers.toArray(new Reader[readers.size()]);
+    }
+
+    /**
+     * Tries each reader in turn on the image.
+     *
+     * @return The first barcode found.
+     * @throws NotFoundException if none of the readers found a barcode.
+     */
+    public Result decode(BinaryBitmap image) throws NotFoundException {
+        for (Reader reader : readers) {
+            try {
+                return reader.decode(image, hints);
+            } catch (ReaderException re) {
+                // try the next reader
+            } finally {
+                reader.reset();
+            }
+        }
+        throw NotFoundException.getNotFoundInstance();
+    }
+
+    /**
+     * Runs only the reader in one slot on the image.
+     *
+     * @param slot Index between 0 and {@link #getSlotCount()} - 1.
+     * @throws ReaderException if the reader found no barcode, or could not decode it.
+     */
+    public Result decode(BinaryBitmap image, int slot) throws ReaderException {
+        return decode(image, slot, hints);
+    }
+
+    /**
+     * Runs only the reader in one slot on the image, with other hints than the session's,
+     * e.g. {@link DecodeHintType#TRY_HARDER} for a frame that deserves more effort. The
+     * formats must not change, the readers were chosen for them.
+     */
+    public Result decode(BinaryBitmap image, int slot, Map<DecodeHintType, ?> hints) throws ReaderException {
+        Reader reader = readers[slot];
+        try {
+            return reader.decode(image, hints);
+        } finally {
+            reader.reset();
+        }
+    }
+
+    /**
+     * @return Whether the slot holds the 1D reader, which only needs single rows.
+     */
+    public boolean isOneD(int slot) {
+        return readers[slot] instanceof MultiFormatOneDReader;
+    }
+
+    public int getSlotCount() {
+        return readers.length;
+    }
+
+    /**
+     * @return A short name of the formats read in a slot, e.g. "QR" or "1D".
+     */
+    public String getSlotName(int slot) {
+        return slotNames[slot];
+    }
+
+    public Set<BarcodeFormat> getFormats() {
+        return formats;
+    }
+
+    public Map<DecodeHintType, Object> getHints() {
+        return hints;
+    }
+
+}
@@ -22,43 +22,48 @@ import android.net.Uri;
 import com.google.zxing.BarcodeFormat;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.List;
-import java.util.Vector;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 final class DecodeFormatManager {
 
     private static final Pattern COMMA_PATTERN = Pattern.compile(",");
 
-//    static final Vector<BarcodeFormat> PRODUCT_FORMATS;
-//    static final Vector<BarcodeFormat> ONE_D_FORMATS;
-    static final Vector<BarcodeFormat> QR_CODE_FORMATS;
-//    static final Vector<BarcodeFormat> DATA_MATRIX_FORMATS;
+    // Resolved once; these sets are immutable and shared by every session
+    static final Set<BarcodeFormat> PRODUCT_FORMATS;
+    static final Set<BarcodeFormat> ONE_D_FORMATS;
+    static final Set<BarcodeFormat> QR_CODE_FORMATS;
+    static final Set<BarcodeFormat> DATA_MATRIX_FORMATS;
+    /**
+     * Everything above; {@link FormatScheduler} spreads them over consecutive frames.
+     */
+    static final Set<BarcodeFormat> ALL_FORMATS;
 
-    // 只保留二维码相关
     static {
-//        PRODUCT_FORMATS = new Vector<BarcodeFormat>(5);
-//        PRODUCT_FORMATS.add(BarcodeFormat.UPC_A);
-//        PRODUCT_FORMATS.add(BarcodeFormat.UPC_E);
-//        PRODUCT_FORMATS.add(BarcodeFormat.EAN_13);
-//        PRODUCT_FORMATS.add(BarcodeFormat.EAN_8);
-//        // PRODUCT_FORMATS.add(BarcodeFormat.RSS_14);
-//        ONE_D_FORMATS = new Vector<BarcodeFormat>(PRODUCT_FORMATS.size() + 4);
-//        ONE_D_FORMATS.addAll(PRODUCT_FORMATS);
-//        ONE_D_FORMATS.add(BarcodeFormat.CODE_39);
-//        ONE_D_FORMATS.add(BarcodeFormat.CODE_93);
-//        ONE_D_FORMATS.add(BarcodeFormat.CODE_128);
-//        ONE_D_FORMATS.add(BarcodeFormat.ITF);
-        QR_CODE_FORMATS = new Vector<BarcodeFormat>(1);
-        QR_CODE_FORMATS.add(BarcodeFormat.QR_CODE);
-//        DATA_MATRIX_FORMATS = new Vector<BarcodeFormat>(1);
-//        DATA_MATRIX_FORMATS.add(BarcodeFormat.DATA_MATRIX);
+        PRODUCT_FORMATS = Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.UPC_A, BarcodeFormat.UPC_E,
+                BarcodeFormat.EAN_13, BarcodeFormat.EAN_8));
+        // RSS_14 is left out
+        EnumSet<BarcodeFormat> oneD = EnumSet.copyOf(PRODUCT_FORMATS);
+        oneD.add(BarcodeFormat.CODE_39);
+        oneD.add(BarcodeFormat.CODE_93);
+        oneD.add(BarcodeFormat.CODE_128);
+        oneD.add(BarcodeFormat.ITF);
+        ONE_D_FORMATS = Collections.unmodifiableSet(oneD);
+        QR_CODE_FORMATS = Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.QR_CODE));
+        DATA_MATRIX_FORMATS = Collections.unmodifiableSet(EnumSet.of(BarcodeFormat.DATA_MATRIX));
+        EnumSet<BarcodeFormat> all = EnumSet.copyOf(ONE_D_FORMATS);
+        all.addAll(QR_CODE_FORMATS);
+        all.addAll(DATA_MATRIX_FORMATS);
+        ALL_FORMATS = Collections.unmodifiableSet(all);
     }
 
     private DecodeFormatManager() {
     }
 
-    static Vector<BarcodeFormat> parseDecodeFormats(Intent intent) {
+    static Set<BarcodeFormat> parseDecodeFormats(Intent intent) {
         List<String> scanFormats = null;
         String scanFormatsString = intent.getStringExtra(Intents.Scan.SCAN_FORMATS);
         if (scanFormatsString != null) {
@@ -67,7 +72,7 @@ final class DecodeFormatManager {
         return parseDecodeFormats(scanFormats, intent.getStringExtra(Intents.Scan.MODE));
     }
 
-    static Vector<BarcodeFormat> parseDecodeFormats(Uri inputUri) {
+    static Set<BarcodeFormat> parseDecodeFormats(Uri inputUri) {
         List<String> formats = inputUri.getQueryParameters(Intents.Scan.SCAN_FORMATS);
         if (formats != null && formats.size() == 1 && formats.get(0) != null) {
             formats = Arrays.asList(COMMA_PATTERN.split(formats.get(0)));
@@ -75,31 +80,31 @@ final class DecodeFormatManager {
         return parseDecodeFormats(formats, inputUri.getQueryParameter(Intents.Scan.MODE));
     }
 
-    private static Vector<BarcodeFormat> parseDecodeFormats(Iterable<String> scanFormats, String decodeMode) {
+    private static Set<BarcodeFormat> parseDecodeFormats(Iterable<String> scanFormats, String decodeMode) {
         if (scanFormats != null) {
-            Vector<BarcodeFormat> formats = new Vector<BarcodeFormat>();
+            EnumSet<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
             try {
                 for (String format : scanFormats) {
                     formats.add(BarcodeFormat.valueOf(format));
                 }
-                return formats;
+                return Collections.unmodifiableSet(formats);
             } catch (IllegalArgumentException iae) {
                 // ignore it then
             }
         }
         if (decodeMode != null) {
-            /*if (Intents.Scan.PRODUCT_MODE.equals(decodeMode)) {
+            if (Intents.Scan.PRODUCT_MODE.equals(decodeMode)) {
                 return PRODUCT_FORMATS;
-            }*/
+            }
             if (Intents.Scan.QR_CODE_MODE.equals(decodeMode)) {
                 return QR_CODE_FORMATS;
             }
-            /*if (Intents.Scan.DATA_MATRIX_MODE.equals(decodeMode)) {
+            if (Intents.Scan.DATA_MATRIX_MODE.equals(decodeMode)) {
                 return DATA_MATRIX_FORMATS;
             }
             if (Intents.Scan.ONE_D_MODE.equals(decodeMode)) {
                 return ONE_D_FORMATS;
-            }*/
+            }
         }
         return null;
     }
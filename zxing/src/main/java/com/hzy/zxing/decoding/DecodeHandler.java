@@ -16,7 +16,9 @@
 
 package com.hzy.zxing.decoding;
 
+import android.graphics.Rect;
 import android.os.Bundle;
+import android.os.Debug;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
@@ -24,29 +26,89 @@ import android.util.Log;
 
 import com.google.zxing.BinaryBitmap;
 import com.google.zxing.DecodeHintType;
-import com.google.zxing.MultiFormatReader;
+import com.google.zxing.LuminanceSource;
 import com.google.zxing.R;
 import com.google.zxing.ReaderException;
 import com.google.zxing.Result;
-import com.google.zxing.common.GlobalHistogramBinarizer;
-import com.google.zxing.common.HybridBinarizer;
 import com.hzy.zxing.camera.CameraManager;
+import com.hzy.zxing.camera.CameraProfile;
+import com.hzy.zxing.camera.LuminanceStats;
 import com.hzy.zxing.camera.PlanarYUVLuminanceSource;
 import com.hzy.zxing.ui.CaptureActivity;
+import com.hzy.zxing.util.StartupTrace;
 
-import java.util.Hashtable;
+import java.util.Map;
 
 final class DecodeHandler extends Handler {
 
     private static final String TAG = DecodeHandler.class.getSimpleName();
 
+    /**
+     * Only every n-th pixel of every n-th row is needed for the luminance statistics.
+     */
+    private static final int STATS_SAMPLE_STEP = 4;
+
+    /**
+     * Decode settings whose success rates are tracked in the {@link CameraProfile}.
+     */
+    static final String BINARIZER_GLOBAL = BinarizationStage.GLOBAL;
+    static final String BINARIZER_HYBRID = BinarizationStage.HYBRID;
+    static final String BINARIZER_ADAPTIVE = BinarizationStage.ADAPTIVE;
+    static final String[] BINARIZERS = {BINARIZER_GLOBAL, BINARIZER_HYBRID, BINARIZER_ADAPTIVE};
+    /**
+     * Every n-th frame uses one of the binarizers which are not preferred, in turn, so all
+     * of them keep being measured.
+     */
+    private static final int EXPLORE_INTERVAL = 8;
+    /**
+     * Slot of the frames on which all readers run at once.
+     */
+    private static final int ALL_SLOTS = -1;
+    /**
+     * Frames darker than this on average are averaged over time, see {@link FrameFusion}.
+     */
+    private static final float FUSION_MAX_MEAN = 70.0f;
+
     private final CaptureActivity activity;
-    private final MultiFormatReader multiFormatReader;
+    private final DecodeConfig decodeConfig;
+    private final FormatScheduler formatScheduler;
+    private final OneDRowSampler rowSampler;
+    private final ParallelDecoder parallelDecoder;
+    private final InversionScheduler inversionScheduler;
+    private final EscalationPolicy escalationPolicy;
+    private final CancellationToken cancellation;
+    private final BinarizationStage binarization = new BinarizationStage();
+    private final FrameFusion fusion = new FrameFusion();
+    private int fusionDecodes;
+    private final StructuredAppendCollector structuredAppend = new StructuredAppendCollector();
+    /**
+     * Whether the activity shows the progress of a Structured Append set.
+     */
+    private boolean partialShown;
+    private final PreprocessPipeline preprocess;
+    private byte[] invertedMatrix;
+    private final LuminanceStats luminanceStats = new LuminanceStats();
+    private final DecodeRateScheduler rateScheduler;
+    private int frameCount;
 
-    DecodeHandler(CaptureActivity activity, Hashtable<DecodeHintType, Object> hints) {
-        multiFormatReader = new MultiFormatReader();
-        multiFormatReader.setHints(hints);
+    /**
+     * @param parallelDecoder Runs all readers on every frame, or null to run one slot per
+     *                        frame as chosen by the format scheduler.
+     * @param preprocess      Turns the preview frame into the plane the 2D readers see.
+     */
+    DecodeHandler(CaptureActivity activity, DecodeConfig decodeConfig, FormatScheduler formatScheduler, OneDRowSampler rowSampler,
+                  ParallelDecoder parallelDecoder, InversionScheduler inversionScheduler, EscalationPolicy escalationPolicy, CancellationToken cancellation, DecodeRateScheduler rateScheduler,
+                  PreprocessPipeline preprocess) {
+        this.decodeConfig = decodeConfig;
+        this.formatScheduler = formatScheduler;
+        this.rowSampler = rowSampler;
+        this.parallelDecoder = parallelDecoder;
+        this.inversionScheduler = inversionScheduler;
+        this.escalationPolicy = escalationPolicy;
+        this.cancellation = cancellation;
         this.activity = activity;
+        this.rateScheduler = rateScheduler;
+        this.preprocess = preprocess;
     }
 
     @Override
@@ -55,6 +117,12 @@ final class DecodeHandler extends Handler {
             //Log.d(TAG, "Got decode message");
             decode((byte[]) message.obj, message.arg1, message.arg2);
         } else if (message.what == R.id.quit) {
+            Log.d(TAG, "Fusion: " + fusion + " decodes=" + fusionDecodes);
+            Log.d(TAG, "Structured append: " + structuredAppend);
+            Log.d(TAG, "Preprocessing: " + preprocess);
+            if (parallelDecoder != null) {
+                parallelDecoder.shutdown();
+            }
             Looper.myLooper().quit();
         }
     }
@@ -69,46 +137,272 @@ final class DecodeHandler extends Handler {
      */
     private void decode(byte[] data, int width, int height) {
         long start = System.currentTimeMillis();
+        long frameStart = System.nanoTime();
+        long cpuStart = Debug.threadCpuTimeNanos();
         Result rawResult = null;
+        int level = EscalationPolicy.LEVEL_CHEAP;
+        boolean escalated = false;
+        // a symbol of a Structured Append set was read, but the set is not complete yet
+        boolean fragmentRead = false;
+        boolean partial = false;
+        frameCount++;
+        cancellation.startFrame(frameStart + escalationPolicy.getFrameDeadlineNanos());
+        if (parallelDecoder != null) {
+            // readers still running on the last frame share its buffers
+            parallelDecoder.awaitIdle();
+        }
 
-        //modify here
-        byte[] rotatedData = new byte[data.length];
-        for (int y = 0; y < height; y++) {
-            for (int x = 0; x < width; x++)
-                rotatedData[x * height + height - y - 1] = data[x + y * width];
+        // Statistics are always taken on the landscape frame, so their grid keeps its orientation
+        CameraManager.get().buildNativeLuminanceSource(data, width, height).computeStats(luminanceStats, STATS_SAMPLE_STEP);
+        if (isCancelled()) {
+            abortFrame();
+            return;
         }
-        int tmp = width; // Here we are swapping, that's the difference to #11
-        width = height;
-        height = tmp;
-
-        PlanarYUVLuminanceSource source = CameraManager.get().buildLuminanceSource(rotatedData, width, height);
-        //优先GlobalHistogramBinarizer解码，解码失败转为HybridBinarizer解码
-//        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
-        BinaryBitmap bitmap = new BinaryBitmap(new GlobalHistogramBinarizer(source));
-        if(bitmap  == null){
-            bitmap = new BinaryBitmap(new HybridBinarizer(source));
+
+        // 每帧只运行一种格式的解码器，轮流覆盖所有格式；并行模式下所有格式同时识别
+        int slot;
+        if (parallelDecoder != null) {
+            formatScheduler.allSlots();
+            slot = ALL_SLOTS;
+        } else {
+            slot = formatScheduler.nextSlot();
         }
-        try {
-            rawResult = multiFormatReader.decodeWithState(bitmap);
-        } catch (ReaderException re) {
-            // continue
-        } finally {
-            multiFormatReader.reset();
+        PlanarYUVLuminanceSource source = null;
+        if (slot != ALL_SLOTS && decodeConfig.isOneD(slot)) {
+            // 一维码只需几条扫描线，直接在未旋转的预览帧上采样
+            Rect rect = CameraManager.get().getFramingRectInNativePreview();
+            long readerStart = System.nanoTime();
+            rawResult = rowSampler.decode(data, width, rect.left, rect.top, rect.width(), rect.height());
+            if (rawResult != null) {
+                inversionScheduler.onDecoded();
+            }
+            formatScheduler.onFrame(rawResult != null, System.nanoTime() - readerStart);
+        } else {
+            source = buildSource(data, width, height);
+            if (isCancelled()) {
+                abortFrame();
+                return;
+            }
+            // 弱光下单帧噪声太大，静止时把连续几帧平均后再识别
+            int fusedFrames = 0;
+            if (luminanceStats.getMean() < FUSION_MAX_MEAN) {
+                fusedFrames = fusion.add(source);
+            } else {
+                fusion.reset();
+            }
+            //优先使用本机历史识别率更高的二值化方式，默认GlobalHistogramBinarizer
+            CameraProfile profile = CameraManager.get().getCameraProfile();
+            String binarizer = profile == null ? BINARIZER_GLOBAL : profile.getPreferredDecodeSetting(BINARIZERS);
+            if (frameCount % EXPLORE_INTERVAL == 0) {
+                binarizer = exploreBinarizer(binarizer, frameCount / EXPLORE_INTERVAL);
+            }
+            // 连续识别失败后逐级加大力度，每帧有时间预算
+            level = escalationPolicy.getLevel();
+            Map<DecodeHintType, Object> hints = escalationPolicy.getHints(level);
+            long readerStart = System.nanoTime();
+            rawResult = attempt(source, binarizer, slot, hints);
+            if (rawResult == null && cancellation.isAborted()) {
+                abortFrame();
+                return;
+            }
+            boolean primaryDecoded = rawResult != null;
+            if (profile != null) {
+                profile.recordDecode(binarizer, primaryDecoded);
+            }
+            if (rawResult == null && level >= EscalationPolicy.LEVEL_ALTERNATE && canAttemptMore(frameStart)) {
+                rawResult = attempt(source, exploreBinarizer(binarizer, frameCount), slot, hints);
+            }
+            if (rawResult == null && level >= EscalationPolicy.LEVEL_PURE && canAttemptMore(frameStart)) {
+                rawResult = attempt(source, BINARIZER_GLOBAL, slot, escalationPolicy.getPureHints());
+                // retries with the same hints, another binarizer or fused frames, do not count
+                escalated = rawResult != null && escalationPolicy.pureChangesHints();
+            }
+            if (rawResult == null && fusedFrames >= FrameFusion.MIN_FRAMES && canAttemptMore(frameStart)) {
+                rawResult = attempt(fusion.composite(), binarizer, slot, hints);
+                if (rawResult != null) {
+                    fusionDecodes++;
+                }
+            }
+            if (rawResult != null) {
+                inversionScheduler.onDecoded();
+            } else if (inversionScheduler.shouldTry(formatScheduler.sawResultPoints()) && canAttemptMore(frameStart)) {
+                // 反色码（深色背景上的浅色码）：反相读取同一帧，不复制帧数据
+                int area = source.getWidth() * source.getHeight();
+                if (invertedMatrix == null || invertedMatrix.length < area) {
+                    invertedMatrix = new byte[area];
+                }
+                rawResult = attempt(source.invert(invertedMatrix), binarizer, slot, hints);
+                inversionScheduler.onAttempt(rawResult != null);
+            }
+            if (rawResult != null ? StructuredAppendCollector.isFragment(rawResult) : structuredAppend.isCollecting()) {
+                // 内容分在多个码中（Structured Append）：收齐所有码后才返回结果
+                int read = structuredAppend.getFragmentsRead();
+                int collected = structuredAppend.getFragmentsCollected();
+                rawResult = collectFragments(rawResult, source, binarizer, hints, frameStart);
+                fragmentRead = rawResult == null && structuredAppend.getFragmentsRead() > read;
+                // only a new symbol is reported, not the same one read again
+                partial = rawResult == null && structuredAppend.getFragmentsCollected() > collected;
+            }
+            if (rawResult == null && !fragmentRead && cancellation.isAborted()) {
+                // the frame was not fully tried, so it does not count as a failure
+                abortFrame();
+                return;
+            }
+            formatScheduler.onFrame(rawResult != null || fragmentRead, System.nanoTime() - readerStart);
+        }
+        // a fragment counts as read for the schedulers, the code is in view and readable
+        boolean decoded = rawResult != null || fragmentRead;
+        escalationPolicy.onFrame(level, decoded, escalated, formatScheduler.sawResultPoints(), System.nanoTime() - frameStart);
+        CameraManager.get().getIlluminationController().onFrame(luminanceStats, decoded);
+        Rect crop = CameraManager.get().getFramingRectInPreview();
+        CameraManager.get().getZoomController().onFrame(crop.width(), crop.height(), preprocess.getScale());
+        rateScheduler.onFrame(luminanceStats, decoded, Debug.threadCpuTimeNanos() - cpuStart);
+        if (frameCount == 1) {
+            StartupTrace.recordFirstFrameDecode(System.currentTimeMillis() - start);
         }
 
         if (rawResult != null) {
+            fusion.reset();
+            partialShown = false;
             long end = System.currentTimeMillis();
             Log.d(TAG, "Found barcode (" + (end - start) + " ms):\n" + rawResult.toString());
+            if (source == null) {
+                source = buildSource(data, width, height);
+            }
             Message message = Message.obtain(activity.getHandler(), R.id.decode_succeeded, rawResult);
             Bundle bundle = new Bundle();
             bundle.putParcelable(DecodeThread.BARCODE_BITMAP, source.renderCroppedGreyscaleBitmap());
             message.setData(bundle);
             //Log.d(TAG, "Sending decode succeeded message...");
             message.sendToTarget();
+        } else if (partial) {
+            fusion.reset();
+            partialShown = true;
+            Message message = Message.obtain(activity.getHandler(), R.id.decode_partial,
+                    structuredAppend.getReceived(), structuredAppend.getTotal());
+            message.sendToTarget();
         } else {
+            if (partialShown && !structuredAppend.isCollecting()) {
+                // the set expired without its other symbols, the progress is stale
+                partialShown = false;
+                Message.obtain(activity.getHandler(), R.id.decode_partial_expired).sendToTarget();
+            }
+            Message message = Message.obtain(activity.getHandler(), R.id.decode_failed);
+            message.sendToTarget();
+        }
+    }
+
+    /**
+     * One reader run on the source, timed for the escalation policy. The source is
+     * binarized first, so that the frame can be given up between binarizing and reading.
+     *
+     * @return The result, or null if the reader found nothing or the frame was given up.
+     */
+    private Result attempt(LuminanceSource source, String binarizer, int slot, Map<DecodeHintType, Object> hints) {
+        long attemptStart = System.nanoTime();
+        if (slot == ALL_SLOTS) {
+            // readers of the last attempt may still be using the stage's buffers
+            parallelDecoder.awaitIdle();
+        }
+        try {
+            BinaryBitmap bitmap = new BinaryBitmap(binarization.createBinarizer(binarizer, source));
+            // the bitmap keeps the matrix, the reader does not binarize again
+            bitmap.getBlackMatrix();
+            if (isCancelled()) {
+                return null;
+            }
+            if (slot == ALL_SLOTS) {
+                return parallelDecoder.decode(bitmap, hints);
+            }
+            return decodeConfig.decode(bitmap, slot, hints);
+        } catch (ReaderException re) {
+            return null;
+        } finally {
+            escalationPolicy.onAttempt(System.nanoTime() - attemptStart);
+        }
+    }
+
+    /**
+     * Adds a Structured Append fragment to the collector, and if its set is still missing
+     * symbols, looks for them in the same frame.
+     *
+     * @param fragment The fragment the readers found, or null if they found nothing while
+     *                 a set is being collected.
+     * @return The whole payload once the set is complete, otherwise null.
+     */
+    private Result collectFragments(Result fragment, LuminanceSource source, String binarizer, Map<DecodeHintType, Object> hints, long frameStart) {
+        Result assembled = fragment == null ? null : structuredAppend.add(fragment);
+        if (assembled != null || !canAttemptMore(frameStart)) {
+            return assembled;
+        }
+        long attemptStart = System.nanoTime();
+        if (parallelDecoder != null) {
+            // the stage is binarized again, which the readers of the last attempt may still read
+            parallelDecoder.awaitIdle();
+        }
+        try {
+            return structuredAppend.addAll(new BinaryBitmap(binarization.createBinarizer(binarizer, source)), hints);
+        } finally {
+            escalationPolicy.onAttempt(System.nanoTime() - attemptStart);
+        }
+    }
+
+    /**
+     * @return Whether another reader attempt may start on the frame: it was not given up
+     * and the attempt fits into the escalation policy's budget.
+     */
+    private boolean canAttemptMore(long frameStart) {
+        return !isCancelled() && escalationPolicy.canAttempt(System.nanoTime() - frameStart);
+    }
+
+    /**
+     * Checked at the stage boundaries of a frame.
+     *
+     * @return Whether the decode thread is quitting or the frame ran past its deadline.
+     */
+    private boolean isCancelled() {
+        return cancellation.isCancelled();
+    }
+
+    /**
+     * Ends a frame that was given up. A frame which ran out of time asks for the next one,
+     * when quitting none is needed.
+     */
+    private void abortFrame() {
+        cancellation.onAborted();
+        if (cancellation.isExpired()) {
             Message message = Message.obtain(activity.getHandler(), R.id.decode_failed);
             message.sendToTarget();
         }
     }
 
+    /**
+     * The n-th binarizer other than the preferred one.
+     */
+    private static String exploreBinarizer(String preferred, int n) {
+        int others = BINARIZERS.length - 1;
+        int index = n % others;
+        for (String binarizer : BINARIZERS) {
+            if (binarizer.equals(preferred)) {
+                continue;
+            }
+            if (index-- == 0) {
+                return binarizer;
+            }
+        }
+        return preferred;
+    }
+
+    /**
+     * Runs the preprocessing stages on the frame, by default cropping it to the framing rect
+     * and rotating it to portrait. The plane is reused by the next frame.
+     */
+    private PlanarYUVLuminanceSource buildSource(byte[] data, int width, int height) {
+        Rect rect = CameraManager.get().getFramingRectInNativePreview();
+        PreprocessPipeline.Frame frame = preprocess.process(data, width, height, rect.left, rect.top, rect.width(), rect.height());
+        // the whole plane, so getMatrix() hands it out without copying
+        return new PlanarYUVLuminanceSource(frame.getData(), frame.getWidth(), frame.getHeight(),
+                0, 0, frame.getWidth(), frame.getHeight());
+    }
+
 }
@@ -0,0 +1,189 @@
+package com.hzy.zxing.decoding;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.hzy.zxing.camera.CameraManager;
+import com.hzy.zxing.camera.LuminanceStats;
+
+/**
+ * Decides how long to wait before asking for the next preview frame after a failed
+ * decode. While the scene changes or finder patterns are being seen, frames are
+ * decoded back to back. A static scene steps the scanner down one level every
+ * {@link #STEP_DOWN_AFTER_MS}, to at most one frame per second; only at that deepest
+ * level is the preview switched to its lowest fps range. Low battery, power save mode
+ * and a hot battery put a floor under the level, which stays above the idle level, so
+ * they slow decoding down but never lower the preview's frame rate.
+ * <p>
+ * {@link #onFrame} and {@link #onResultPoint()} are called on the decode thread,
+ * {@link #getFrameDelay()} on the UI thread.
+ */
+final class DecodeRateScheduler {
+
+    private static final String TAG = DecodeRateScheduler.class.getSimpleName();
+
+    /**
+     * Delay before the next frame at each level; level 0 is full speed.
+     */
+    private static final long[] FRAME_DELAYS_MS = {0L, 100L, 250L, 500L, 1000L};
+    /**
+     * The level of a scene that has been static for a while, at which the preview fps drop.
+     */
+    private static final int IDLE_LEVEL = FRAME_DELAYS_MS.length - 1;
+    private static final long STEP_DOWN_AFTER_MS = 2000L;
+    /**
+     * Mean absolute difference per signature cell above which the scene has changed.
+     */
+    private static final int SCENE_CHANGE_THRESHOLD = 6;
+    private static final long BATTERY_POLL_MS = 30000L;
+    private static final int LOW_BATTERY_PERCENT = 20;
+    /**
+     * Battery temperatures in tenths of a degree Celsius, as reported by BatteryManager.
+     */
+    private static final int WARM_BATTERY_TEMPERATURE = 400;
+    private static final int HOT_BATTERY_TEMPERATURE = 450;
+
+    private final Context context;
+    private final int[] lastSignature = new int[LuminanceStats.GRID * LuminanceStats.GRID];
+    private boolean hasSignature;
+    private boolean resultPointSeen;
+
+    private int level;
+    private int powerFloor;
+    private boolean idleFps;
+    private long lastActivityTime;
+    private long lastLevelChangeTime;
+    private long lastBatteryPoll;
+
+    private long cpuNanosSinceScan;
+    private long cpuNanosTotal;
+    private int scans;
+
+    DecodeRateScheduler(Context context) {
+        this.context = context.getApplicationContext();
+        lastActivityTime = SystemClock.uptimeMillis();
+        lastLevelChangeTime = lastActivityTime;
+    }
+
+    /**
+     * A finder pattern or other result point was found in the frame being decoded.
+     */
+    synchronized void onResultPoint() {
+        resultPointSeen = true;
+    }
+
+    /**
+     * Called after each decoded frame.
+     *
+     * @param stats    Luminance of the framing rect.
+     * @param decoded  Whether a barcode was found.
+     * @param cpuNanos CPU time the decode thread spent on this frame.
+     */
+    synchronized void onFrame(LuminanceStats stats, boolean decoded, long cpuNanos) {
+        cpuNanosSinceScan += cpuNanos;
+        if (decoded) {
+            scans++;
+            cpuNanosTotal += cpuNanosSinceScan;
+            Log.d(TAG, "CPU time for this scan: " + cpuNanosSinceScan / 1000000L + " ms, average "
+                    + cpuNanosTotal / scans / 1000000L + " ms");
+            cpuNanosSinceScan = 0L;
+        }
+
+        long now = SystemClock.uptimeMillis();
+        boolean active = resultPointSeen || sceneChanged(stats.getSignature());
+        resultPointSeen = false;
+        int newLevel = level;
+        if (active) {
+            lastActivityTime = now;
+            newLevel = 0;
+        } else if (level < IDLE_LEVEL && now - Math.max(lastActivityTime, lastLevelChangeTime) > STEP_DOWN_AFTER_MS) {
+            newLevel = level + 1;
+        }
+        newLevel = Math.max(newLevel, powerFloor);
+        if (newLevel != level) {
+            Log.d(TAG, "Decode rate level " + level + " -> " + newLevel);
+            level = newLevel;
+            lastLevelChangeTime = now;
+        }
+        // camera parameters are changed here, off the UI thread
+        boolean wantIdleFps = level == IDLE_LEVEL;
+        if (wantIdleFps != idleFps && CameraManager.get().setPreviewFpsRange(wantIdleFps)) {
+            idleFps = wantIdleFps;
+        }
+    }
+
+    /**
+     * @return Milliseconds to wait before requesting the next preview frame.
+     */
+    synchronized long getFrameDelay() {
+        long now = SystemClock.uptimeMillis();
+        if (lastBatteryPoll == 0L || now - lastBatteryPoll > BATTERY_POLL_MS) {
+            lastBatteryPoll = now;
+            pollPowerState();
+        }
+        return FRAME_DELAYS_MS[Math.max(level, powerFloor)];
+    }
+
+    /**
+     * @return Average CPU time spent decoding per successful scan, in milliseconds, or -1.
+     */
+    synchronized long getCpuMillisPerScan() {
+        return scans == 0 ? -1L : cpuNanosTotal / scans / 1000000L;
+    }
+
+    private boolean sceneChanged(int[] signature) {
+        int difference = 0;
+        for (int i = 0; i < signature.length; i++) {
+            difference += Math.abs(signature[i] - lastSignature[i]);
+            lastSignature[i] = signature[i];
+        }
+        boolean changed = !hasSignature || difference > SCENE_CHANGE_THRESHOLD * signature.length;
+        hasSignature = true;
+        return changed;
+    }
+
+    /**
+     * Reads the sticky battery broadcast; no receiver is registered.
+     */
+    private void pollPowerState() {
+        Intent battery = context.registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        int floor = 0;
+        if (battery != null) {
+            int level = battery.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = battery.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            boolean plugged = battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+            int temperature = battery.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, 0);
+            if (!plugged && level >= 0 && scale > 0 && level * 100 / scale < LOW_BATTERY_PERCENT) {
+                floor = 1;
+            }
+            // below IDLE_LEVEL: a hot phone still has a scene that may change
+            if (temperature >= HOT_BATTERY_TEMPERATURE) {
+                floor = 3;
+            } else if (temperature >= WARM_BATTERY_TEMPERATURE) {
+                floor = Math.max(floor, 2);
+            }
+        }
+        if (Build.VERSION.SDK_INT >= 21) {
+            PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+            if (powerManager != null && powerManager.isPowerSaveMode()) {
+                floor = Math.max(floor, 1);
+            }
+        }
+        if (floor != powerFloor) {
+            Log.d(TAG, "Power floor " + powerFloor + " -> " + floor);
+            powerFloor = floor;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "level=" + level + " powerFloor=" + powerFloor + " scans=" + scans + " cpuPerScan=" + getCpuMillisPerScan() + "ms";
+    }
+
+}
@@ -0,0 +1,602 @@
+package com.hzy.zxing.decoding;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.hzy.zxing.camera.RGBLuminanceSource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 图片解码结果缓存
+ * <p>
+ * Remembers what decoding an image file gave, keyed by the {@link ContentHash} of its bytes,
+ * its length and the {@link ImageDecoder#getFingerprint() fingerprint} of the decoder, so
+ * decoding the same gallery image or screenshot again is a hash and a lookup instead of
+ * loading the bitmap and running every attempt. A decoder with other hints, or a newer
+ * pipeline, has another fingerprint and never sees these results; they expire or are
+ * evicted. Images without a code are remembered too, for {@link #NEGATIVE_TTL_MS} only,
+ * results for {@link #RESULT_TTL_MS}. Only the text, raw bytes, format and result points of
+ * a result are kept, not its metadata.
+ * <p>
+ * Entries are appended to a log in the app's cache directory, records of
+ * {@code [length][payload][crc32]} like the scan history's; a torn tail is cut off on load.
+ * In memory they are kept in access order, and the least recently used ones are dropped
+ * while the entries take more than {@link #MAX_BYTES}. Once the log is twice that size it
+ * is rewritten with the live entries. All file access happens on one background thread.
+ */
+public final class DecodeResultCache {
+
+    private static final String TAG = DecodeResultCache.class.getSimpleName();
+
+    private static final String FILE_NAME = "zxing_decode_cache.log";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    static final long MAX_BYTES = 512 * 1024;
+    static final long RESULT_TTL_MS = 30L * 24L * 60L * 60L * 1000L;
+    static final long NEGATIVE_TTL_MS = 24L * 60L * 60L * 1000L;
+    /**
+     * How long a lookup waits for the log to be loaded after start.
+     */
+    private static final long LOAD_WAIT_MS = 500L;
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+    // key, length, fingerprint, time and kind, and the record's length and CRC
+    private static final int RECORD_OVERHEAD = 8 + 8 + 8 + 8 + 1 + 4 + 4;
+
+    private static DecodeResultCache instance;
+
+    private final File file;
+    private final long maxBytes;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(new WriterThreadFactory());
+    private final CountDownLatch loaded = new CountDownLatch(1);
+
+    // Guarded by this
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private long bytes;
+    private int hits;
+    private int misses;
+    private int generation;
+
+    // Only used on the writer thread
+    private DataOutputStream out;
+    private long logBytes;
+
+    DecodeResultCache(File file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        writer.execute(new Runnable() {
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * @return The cache of this app; it is loaded in the background on first use.
+     */
+    public static synchronized DecodeResultCache get(Context context) {
+        if (instance == null) {
+            instance = new DecodeResultCache(new File(context.getApplicationContext().getCacheDir(), FILE_NAME), MAX_BYTES);
+        }
+        return instance;
+    }
+
+    /**
+     * Decodes an image file, or answers from the cache if the same bytes were decoded with
+     * the same configuration before. Runs on the caller's thread, which should not be the
+     * main thread.
+     *
+     * @throws NotFoundException     if there is no code in the image, now or when cached.
+     * @throws FileNotFoundException if the file cannot be read or is no image.
+     */
+    public Result decode(String path, ImageDecoder decoder) throws NotFoundException, FileNotFoundException {
+        Key key;
+        try {
+            ContentHash hash = ContentHash.of(new File(path));
+            key = new Key(hash.digest(), hash.getLength(), decoder.getFingerprint());
+        } catch (FileNotFoundException fnfe) {
+            throw fnfe;
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not hash " + path, ioe);
+            key = null;
+        }
+        if (key != null) {
+            Entry entry = find(key);
+            if (entry != null) {
+                if (entry.text == null) {
+                    throw NotFoundException.getNotFoundInstance();
+                }
+                return entry.toResult();
+            }
+        }
+        Result result;
+        try {
+            result = decoder.decode(new RGBLuminanceSource(path));
+        } catch (NotFoundException nfe) {
+            if (key != null) {
+                put(new Entry(key, System.currentTimeMillis(), null));
+            }
+            throw nfe;
+        }
+        if (key != null) {
+            put(new Entry(key, System.currentTimeMillis(), result));
+        }
+        return result;
+    }
+
+    /**
+     * @return The live entry for the key, or null; an expired one is dropped.
+     */
+    private Entry find(Key key) {
+        awaitLoad();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+                entries.remove(key);
+                bytes -= entry.size;
+                entry = null;
+            }
+            if (entry == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return entry;
+        }
+    }
+
+    private void put(final Entry entry) {
+        final int entryGeneration;
+        synchronized (this) {
+            add(entry);
+            entryGeneration = generation;
+        }
+        writer.execute(new Runnable() {
+            public void run() {
+                synchronized (DecodeResultCache.this) {
+                    if (entryGeneration != generation) {
+                        // cleared before it was written
+                        return;
+                    }
+                }
+                append(entry);
+            }
+        });
+    }
+
+    /**
+     * Adds the entry and evicts the least recently used ones beyond the size bound.
+     */
+    private void add(Entry entry) {
+        Entry old = entries.put(entry.key, entry);
+        if (old != null) {
+            bytes -= old.size;
+        }
+        bytes += entry.size;
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Entry evicted = eldest.next();
+            if (evicted == entry) {
+                break;
+            }
+            eldest.remove();
+            bytes -= evicted.size;
+        }
+    }
+
+    /**
+     * Forgets all results and deletes the log in the background.
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            bytes = 0L;
+            generation++;
+        }
+        writer.execute(new Runnable() {
+            public void run() {
+                close();
+                if (file.exists() && !file.delete()) {
+                    Log.w(TAG, "Could not delete " + file);
+                }
+                logBytes = 0L;
+                open();
+            }
+        });
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized int getHitCount() {
+        return hits;
+    }
+
+    public synchronized int getMissCount() {
+        return misses;
+    }
+
+    private void awaitLoad() {
+        try {
+            if (!loaded.await(LOAD_WAIT_MS, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Decode cache not loaded yet");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void load() {
+        List<Entry> read = new ArrayList<Entry>();
+        long validLength = 0L;
+        if (file.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                CRC32 crc = new CRC32();
+                while (true) {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                    Entry entry = decodeRecord(payload);
+                    if (entry != null) {
+                        read.add(entry);
+                    }
+                    validLength += 4 + length + 4;
+                }
+            } catch (EOFException eofe) {
+                // end of the log, or a record torn by a crash
+            } catch (IOException ioe) {
+                Log.w(TAG, "Could not read decode cache", ioe);
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ioe) {
+                        // ignore
+                    }
+                }
+            }
+            if (validLength < file.length()) {
+                Log.w(TAG, "Truncating decode cache from " + file.length() + " to " + validLength + " bytes");
+                truncate(validLength);
+            }
+        }
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            // a clear() queued behind this load deletes the log anyway
+            if (generation == 0) {
+                // entries put meanwhile are newer, so they go last and win
+                List<Entry> added = new ArrayList<Entry>(entries.values());
+                entries.clear();
+                bytes = 0L;
+                for (Entry entry : read) {
+                    if (!entry.isExpired(now)) {
+                        add(entry);
+                    }
+                }
+                for (Entry entry : added) {
+                    add(entry);
+                }
+            }
+        }
+        loaded.countDown();
+        logBytes = validLength;
+        open();
+        compactIfNeeded();
+    }
+
+    private void truncate(long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not truncate decode cache", ioe);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ioe) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void open() {
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        } catch (FileNotFoundException fnfe) {
+            Log.w(TAG, "Could not open decode cache", fnfe);
+            out = null;
+        }
+    }
+
+    private void close() {
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // ignore
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * Writes the record through; a lost tail only costs a decode, so it is not synced.
+     */
+    private void append(Entry entry) {
+        if (out == null) {
+            return;
+        }
+        try {
+            logBytes += writeRecord(out, entry);
+            out.flush();
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not write decode cache", ioe);
+            return;
+        }
+        compactIfNeeded();
+    }
+
+    /**
+     * Rewrites the log with the live entries, least recently used first so that a reload
+     * evicts in the same order, then swaps it in.
+     */
+    private void compactIfNeeded() {
+        if (logBytes <= 2 * maxBytes) {
+            return;
+        }
+        List<Entry> keep;
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            keep = new ArrayList<Entry>(entries.size());
+            for (Entry entry : entries.values()) {
+                if (!entry.isExpired(now)) {
+                    keep.add(entry);
+                }
+            }
+        }
+        File compacted = new File(file.getPath() + ".tmp");
+        FileOutputStream compactedOut = null;
+        try {
+            compactedOut = new FileOutputStream(compacted);
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(compactedOut));
+            long written = 0L;
+            for (Entry entry : keep) {
+                written += writeRecord(dataOut, entry);
+            }
+            dataOut.flush();
+            compactedOut.getFD().sync();
+            dataOut.close();
+            compactedOut = null;
+            close();
+            if (!compacted.renameTo(file)) {
+                throw new IOException("Could not rename " + compacted);
+            }
+            logBytes = written;
+            Log.d(TAG, "Compacted decode cache to " + keep.size() + " entries");
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not compact decode cache", ioe);
+        } finally {
+            if (compactedOut != null) {
+                try {
+                    compactedOut.close();
+                } catch (IOException ioe) {
+                    // ignore
+                }
+            }
+            if (out == null) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * @return Bytes written.
+     */
+    private static int writeRecord(DataOutputStream out, Entry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(buffer);
+        payload.writeLong(entry.key.hash);
+        payload.writeLong(entry.key.length);
+        payload.writeLong(entry.key.fingerprint);
+        payload.writeLong(entry.time);
+        payload.writeBoolean(entry.text != null);
+        if (entry.text != null) {
+            payload.writeUTF(entry.format.name());
+            byte[] text = entry.text.getBytes(UTF8);
+            payload.writeInt(text.length);
+            payload.write(text);
+            payload.writeInt(entry.rawBytes == null ? -1 : entry.rawBytes.length);
+            if (entry.rawBytes != null) {
+                payload.write(entry.rawBytes);
+            }
+            payload.writeShort(entry.points == null ? -1 : entry.points.length / 2);
+            if (entry.points != null) {
+                for (float coordinate : entry.points) {
+                    payload.writeFloat(coordinate);
+                }
+            }
+        }
+        payload.flush();
+        byte[] bytes = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+        return 4 + bytes.length + 4;
+    }
+
+    private static Entry decodeRecord(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        Key key = new Key(in.readLong(), in.readLong(), in.readLong());
+        long time = in.readLong();
+        if (!in.readBoolean()) {
+            return new Entry(key, time, null, null, null, null);
+        }
+        String formatName = in.readUTF();
+        byte[] text = new byte[in.readInt()];
+        in.readFully(text);
+        int rawLength = in.readInt();
+        byte[] rawBytes = null;
+        if (rawLength >= 0) {
+            rawBytes = new byte[rawLength];
+            in.readFully(rawBytes);
+        }
+        int pointCount = in.readShort();
+        float[] points = null;
+        if (pointCount >= 0) {
+            points = new float[pointCount * 2];
+            for (int i = 0; i < points.length; i++) {
+                points[i] = in.readFloat();
+            }
+        }
+        BarcodeFormat format;
+        try {
+            format = BarcodeFormat.valueOf(formatName);
+        } catch (IllegalArgumentException iae) {
+            // a format this version does not know
+            return null;
+        }
+        return new Entry(key, time, format, new String(text, UTF8), rawBytes, points);
+    }
+
+    private static final class Key {
+
+        final long hash;
+        final long length;
+        final long fingerprint;
+
+        Key(long hash, long length, long fingerprint) {
+            this.hash = hash;
+            this.length = length;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && length == other.length && fingerprint == other.fingerprint;
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (hash ^ (hash >>> 32) ^ fingerprint);
+        }
+    }
+
+    /**
+     * A cached outcome; no text means no code was found.
+     */
+    private static final class Entry {
+
+        final Key key;
+        final long time;
+        final BarcodeFormat format;
+        final String text;
+        final byte[] rawBytes;
+        final float[] points;
+        final int size;
+
+        Entry(Key key, long time, Result result) {
+            this(key, time, result == null ? null : result.getBarcodeFormat(), result == null ? null : result.getText(),
+                    result == null ? null : result.getRawBytes(), result == null ? null : toArray(result.getResultPoints()));
+        }
+
+        Entry(Key key, long time, BarcodeFormat format, String text, byte[] rawBytes, float[] points) {
+            this.key = key;
+            this.time = time;
+            this.format = format;
+            this.text = text;
+            this.rawBytes = rawBytes;
+            this.points = points;
+            // about what its record takes, text counted as UTF-16
+            size = RECORD_OVERHEAD + (text == null ? 0 : 32 + 2 * text.length())
+                    + (rawBytes == null ? 0 : rawBytes.length) + (points == null ? 0 : 4 * points.length);
+        }
+
+        boolean isExpired(long now) {
+            return now - time > (text == null ? NEGATIVE_TTL_MS : RESULT_TTL_MS) || now < time;
+        }
+
+        /**
+         * @return A new result each time, callers may add metadata to it.
+         */
+        Result toResult() {
+            ResultPoint[] resultPoints = null;
+            if (points != null) {
+                resultPoints = new ResultPoint[points.length / 2];
+                for (int i = 0; i < resultPoints.length; i++) {
+                    if (!Float.isNaN(points[i * 2])) {
+                        resultPoints[i] = new ResultPoint(points[i * 2], points[i * 2 + 1]);
+                    }
+                }
+            }
+            return new Result(text, rawBytes, resultPoints, format);
+        }
+
+        private static float[] toArray(ResultPoint[] resultPoints) {
+            if (resultPoints == null) {
+                return null;
+            }
+            float[] points = new float[resultPoints.length * 2];
+            for (int i = 0; i < resultPoints.length; i++) {
+                // some readers leave gaps, kept as NaN
+                points[i * 2] = resultPoints[i] == null ? Float.NaN : resultPoints[i].getX();
+                points[i * 2 + 1] = resultPoints[i] == null ? Float.NaN : resultPoints[i].getY();
+            }
+            return points;
+        }
+    }
+
+    private static final class WriterThreadFactory implements ThreadFactory {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "DecodeResultCache");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -16,16 +16,24 @@
 
 package com.hzy.zxing.decoding;
 
+import android.content.Intent;
 import android.os.Handler;
 import android.os.Looper;
+import android.util.Log;
 
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.DecodeHintType;
+import com.google.zxing.R;
+import com.google.zxing.ResultPoint;
 import com.google.zxing.ResultPointCallback;
+import com.hzy.zxing.camera.CameraManager;
+import com.hzy.zxing.camera.ZoomController;
 import com.hzy.zxing.ui.CaptureActivity;
 
-import java.util.Hashtable;
-import java.util.Vector;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 
 /**
@@ -33,34 +41,131 @@ import java.util.concurrent.CountDownLatch;
  */
 final class DecodeThread extends Thread {
 
+    private static final String TAG = DecodeThread.class.getSimpleName();
+
     public static final String BARCODE_BITMAP = "barcode_bitmap";
     private final CaptureActivity activity;
-    private final Hashtable<DecodeHintType, Object> hints;
+    private final DecodeConfig decodeConfig;
+    private final FormatScheduler formatScheduler;
+    private final InversionScheduler inversionScheduler = new InversionScheduler();
+    private final EscalationPolicy escalationPolicy;
+    private final CancellationToken cancellation = new CancellationToken();
+    private final boolean parallelDecode;
+    private final DecodeRateScheduler rateScheduler;
+    private final PreprocessPipeline preprocess;
+    // takes points on the framing rect, as the 1D sampler reports them since it reads the frame as it is
+    private final ResultPointCallback framePointCallback;
     private Handler handler;
     private final CountDownLatch handlerInitLatch;
 
-    DecodeThread(CaptureActivity activity, Vector<BarcodeFormat> decodeFormats, String characterSet, ResultPointCallback resultPointCallback) {
+    DecodeThread(CaptureActivity activity, Collection<BarcodeFormat> decodeFormats, String characterSet, final ResultPointCallback resultPointCallback,
+                 final DecodeRateScheduler rateScheduler) {
 
         this.activity = activity;
+        this.rateScheduler = rateScheduler;
         handlerInitLatch = new CountDownLatch(1);
 
-        hints = new Hashtable<DecodeHintType, Object>(3);
+        Map<DecodeHintType, Object> hints = buildHints(decodeFormats, characterSet);
+        Intent intent = activity.getIntent();
+        preprocess = buildPreprocess(intent.getStringExtra(Intents.Scan.PREPROCESS));
+
+        framePointCallback = new ResultPointCallback() {
+            public void foundPossibleResultPoint(ResultPoint point) {
+                resultPointCallback.foundPossibleResultPoint(point);
+                rateScheduler.onResultPoint();
+                formatScheduler.onResultPoint();
+            }
+        };
+        // The zoom controller estimates the code size from the same finder patterns the viewfinder draws
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK,
+                planeCallback(framePointCallback, CameraManager.get().getZoomController(), preprocess.getScale()));
+        decodeConfig = new DecodeConfig(hints);
+        formatScheduler = new FormatScheduler(decodeConfig);
+        escalationPolicy = new EscalationPolicy(decodeConfig.getHints(),
+                intent.getIntExtra(Intents.Scan.ESCALATION_FAILURES, EscalationPolicy.DEFAULT_FAILURES_PER_LEVEL),
+                intent.getIntExtra(Intents.Scan.FRAME_BUDGET_MS, EscalationPolicy.DEFAULT_FRAME_BUDGET_MS));
+        parallelDecode = intent.getBooleanExtra(Intents.Scan.PARALLEL_DECODE, false) && decodeConfig.getSlotCount() > 1;
+    }
+
+    /**
+     * The callback of the readers, which report points on the preprocessed plane. The zoom
+     * controller gets them as they are, finder patterns with their module size, and converts
+     * them with the plane's scale, see {@link ZoomController#onFrame}; the other listeners
+     * get new points on the framing rect.
+     *
+     * @param scale See {@link PreprocessPipeline#getScale()}.
+     */
+    static ResultPointCallback planeCallback(final ResultPointCallback framePoints, final ResultPointCallback zoomController,
+                                             final float scale) {
+        return new ResultPointCallback() {
+            public void foundPossibleResultPoint(ResultPoint point) {
+                zoomController.foundPossibleResultPoint(point);
+                framePoints.foundPossibleResultPoint(scale == 1f ? point
+                        : new ResultPoint(point.getX() / scale, point.getY() / scale));
+            }
+        };
+    }
+
+    /**
+     * The session's preprocessing; a spec that does not parse falls back to the default.
+     */
+    static PreprocessPipeline buildPreprocess(String spec) {
+        try {
+            return PreprocessPipeline.parse(spec);
+        } catch (IllegalArgumentException iae) {
+            Log.w(TAG, "Ignoring preprocessing \"" + spec + "\": " + iae.getMessage());
+            return PreprocessPipeline.parse(null);
+        }
+    }
 
-        // 只保留二维码相关
+    /**
+     * Builds the decode hints for the requested formats, without a result point callback.
+     */
+    static Map<DecodeHintType, Object> buildHints(Collection<BarcodeFormat> decodeFormats, String characterSet) {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+
+        // 默认识别一维码、二维码和Data Matrix，由FormatScheduler分摊到各帧
+        EnumSet<BarcodeFormat> formats = EnumSet.noneOf(BarcodeFormat.class);
         if (decodeFormats == null || decodeFormats.isEmpty()) {
-            decodeFormats = new Vector<BarcodeFormat>();
-//            decodeFormats.addAll(DecodeFormatManager.ONE_D_FORMATS);
-            decodeFormats.addAll(DecodeFormatManager.QR_CODE_FORMATS);
-//            decodeFormats.addAll(DecodeFormatManager.DATA_MATRIX_FORMATS);
+            formats.addAll(DecodeFormatManager.ALL_FORMATS);
+        } else {
+            formats.addAll(decodeFormats);
         }
 
-        hints.put(DecodeHintType.POSSIBLE_FORMATS, decodeFormats);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, formats);
 
         if (characterSet != null) {
             hints.put(DecodeHintType.CHARACTER_SET, characterSet);
         }
+        return hints;
+    }
 
-        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, resultPointCallback);
+    FormatScheduler getFormatScheduler() {
+        return formatScheduler;
+    }
+
+    InversionScheduler getInversionScheduler() {
+        return inversionScheduler;
+    }
+
+    EscalationPolicy getEscalationPolicy() {
+        return escalationPolicy;
+    }
+
+    CancellationToken getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Gives up the frame being decoded at its next stage boundary, and every later one,
+     * so that the thread can quit without finishing it. Frames still queued are dropped.
+     */
+    void cancel() {
+        cancellation.cancel();
+        Handler decodeHandler = getHandler();
+        if (decodeHandler != null) {
+            decodeHandler.removeMessages(R.id.decode);
+        }
     }
 
     Handler getHandler() {
@@ -75,7 +180,12 @@ final class DecodeThread extends Thread {
     @Override
     public void run() {
         Looper.prepare();
-        handler = new DecodeHandler(activity, hints);
+        Map<DecodeHintType, Object> rowHints = new EnumMap<DecodeHintType, Object>(decodeConfig.getHints());
+        rowHints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, framePointCallback);
+        OneDRowSampler rowSampler = new OneDRowSampler(rowHints, OneDRowSampler.DEFAULT_LINES);
+        ParallelDecoder parallelDecoder = parallelDecode ? new ParallelDecoder(decodeConfig) : null;
+        handler = new DecodeHandler(activity, decodeConfig, formatScheduler, rowSampler, parallelDecoder, inversionScheduler,
+                escalationPolicy, cancellation, rateScheduler, preprocess);
         handlerInitLatch.countDown();
         Looper.loop();
     }
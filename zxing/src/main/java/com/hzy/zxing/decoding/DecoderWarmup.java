@@ -0,0 +1,181 @@
+package com.hzy.zxing.decoding;
+
+import android.util.Log;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.hzy.zxing.camera.LuminanceStats;
+import com.hzy.zxing.camera.PlanarYUVLuminanceSource;
+import com.hzy.zxing.util.StartupTrace;
+
+import java.util.Map;
+
+/**
+ * Runs a handful of synthetic QR frames through the decode pipeline while the camera
+ * is still opening, so that the reader, binarizer, detector and Reed-Solomon classes
+ * are loaded and their hot methods compiled before the first real frame arrives.
+ * The pipeline is built like {@link DecodeThread} builds it: the session's preprocessing,
+ * the 1D row sampler, and every 2D slot of the decode config with the hints of the
+ * escalation levels. It runs at most once per process; its cost is reported through
+ * {@link StartupTrace}.
+ */
+public final class DecoderWarmup implements Runnable {
+
+    private static final String TAG = DecoderWarmup.class.getSimpleName();
+
+    /**
+     * A small landscape preview frame; the code paths do not depend on the size.
+     */
+    private static final int FRAME_WIDTH = 640;
+    private static final int FRAME_HEIGHT = 480;
+    private static final int CODE_SIZE = 240;
+    private static final byte DARK = (byte) 24;
+    private static final byte LIGHT = (byte) 220;
+
+    /**
+     * Payloads of increasing length, so several QR versions and the byte, alphanumeric
+     * and numeric modes are exercised. The last frame is left blank to warm up the
+     * not-found path as well.
+     */
+    private static final String[] PAYLOADS = {
+            "0123456789012345",
+            "HTTP://ZXING.WARMUP/SCAN",
+            "https://github.com/huangziye/scanner?warmup=1&frame=3&padding=abcdefghijklmnopqrstuvwxyz",
+            null
+    };
+
+    private static boolean started;
+
+    private final String preprocessSpec;
+
+    private DecoderWarmup(String preprocessSpec) {
+        this.preprocessSpec = preprocessSpec;
+    }
+
+    /**
+     * Starts the warm-up on a background thread, unless it already ran in this process.
+     *
+     * @param preprocessSpec The session's {@link Intents.Scan#PREPROCESS}, or null.
+     */
+    public static synchronized void start(String preprocessSpec) {
+        if (started) {
+            return;
+        }
+        started = true;
+        Thread thread = new Thread(new DecoderWarmup(preprocessSpec), "DecoderWarmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void run() {
+        long start = System.currentTimeMillis();
+        // the objects DecodeThread builds, without the result point callback
+        DecodeConfig decodeConfig = new DecodeConfig(DecodeThread.buildHints(null, null));
+        PreprocessPipeline preprocess = DecodeThread.buildPreprocess(preprocessSpec);
+        OneDRowSampler rowSampler = new OneDRowSampler(decodeConfig.getHints(), OneDRowSampler.DEFAULT_LINES);
+        EscalationPolicy escalationPolicy = new EscalationPolicy(decodeConfig.getHints(),
+                EscalationPolicy.DEFAULT_FAILURES_PER_LEVEL, EscalationPolicy.DEFAULT_FRAME_BUDGET_MS);
+        LuminanceStats stats = new LuminanceStats();
+        BinarizationStage binarization = new BinarizationStage();
+        byte[] frame = new byte[FRAME_WIDTH * FRAME_HEIGHT * 3 / 2];
+        // same framing rect as the camera's: centered, square, in the landscape frame
+        int cropSize = FRAME_HEIGHT * 3 / 4;
+        int cropLeft = (FRAME_WIDTH - cropSize) / 2;
+        int cropTop = (FRAME_HEIGHT - cropSize) / 2;
+        int decoded = 0;
+        int attempts = 0;
+        for (String payload : PAYLOADS) {
+            try {
+                render(payload, frame);
+            } catch (WriterException we) {
+                Log.w(TAG, "Could not encode warm-up frame", we);
+                continue;
+            }
+            new PlanarYUVLuminanceSource(frame, FRAME_WIDTH, FRAME_HEIGHT, cropLeft, cropTop, cropSize, cropSize)
+                    .computeStats(stats, 4);
+            // the 1D slots share the sampler, which reads the landscape frame as it is
+            attempts++;
+            if (rowSampler.decode(frame, FRAME_WIDTH, cropLeft, cropTop, cropSize, cropSize) != null) {
+                decoded++;
+            }
+            PreprocessPipeline.Frame plane = preprocess.process(frame, FRAME_WIDTH, FRAME_HEIGHT,
+                    cropLeft, cropTop, cropSize, cropSize);
+            PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(plane.getData(), plane.getWidth(), plane.getHeight(),
+                    0, 0, plane.getWidth(), plane.getHeight());
+            for (int slot = 0; slot < decodeConfig.getSlotCount(); slot++) {
+                if (decodeConfig.isOneD(slot)) {
+                    continue;
+                }
+                Map<DecodeHintType, Object> hints = escalationPolicy.getHints(EscalationPolicy.LEVEL_CHEAP);
+                for (String binarizer : DecodeHandler.BINARIZERS) {
+                    attempts++;
+                    if (attempt(decodeConfig, binarization, source, binarizer, slot, hints)) {
+                        decoded++;
+                    }
+                }
+                // the later escalation levels
+                attempts += 2;
+                if (attempt(decodeConfig, binarization, source, DecodeHandler.BINARIZER_GLOBAL, slot,
+                        escalationPolicy.getHints(EscalationPolicy.LEVEL_TRY_HARDER))) {
+                    decoded++;
+                }
+                if (attempt(decodeConfig, binarization, source, DecodeHandler.BINARIZER_GLOBAL, slot,
+                        escalationPolicy.getPureHints())) {
+                    decoded++;
+                }
+            }
+        }
+        long cost = System.currentTimeMillis() - start;
+        Log.i(TAG, "Warm-up decoded " + decoded + '/' + attempts + " attempts in " + cost + " ms");
+        StartupTrace.recordWarmup(cost);
+    }
+
+    /**
+     * One reader run on the source, as DecodeHandler makes it: binarized first, then read
+     * by the slot's reader.
+     *
+     * @return Whether the reader found a code.
+     */
+    private static boolean attempt(DecodeConfig decodeConfig, BinarizationStage binarization, LuminanceSource source,
+                                   String binarizer, int slot, Map<DecodeHintType, Object> hints) {
+        try {
+            BinaryBitmap bitmap = new BinaryBitmap(binarization.createBinarizer(binarizer, source));
+            bitmap.getBlackMatrix();
+            decodeConfig.decode(bitmap, slot, hints);
+            return true;
+        } catch (ReaderException re) {
+            // expected for the blank frame and the readers of other formats
+            return false;
+        }
+    }
+
+    /**
+     * Draws a QR code, or nothing, into the middle of a landscape Y plane.
+     */
+    private static void render(String payload, byte[] frame) throws WriterException {
+        for (int i = 0; i < FRAME_WIDTH * FRAME_HEIGHT; i++) {
+            // a gentle gradient, so the histogram is not degenerate
+            frame[i] = (byte) (LIGHT - (i % FRAME_WIDTH) / 16);
+        }
+        if (payload == null) {
+            return;
+        }
+        BitMatrix matrix = new QRCodeWriter().encode(payload, BarcodeFormat.QR_CODE, CODE_SIZE, CODE_SIZE);
+        int left = (FRAME_WIDTH - matrix.getWidth()) / 2;
+        int top = (FRAME_HEIGHT - matrix.getHeight()) / 2;
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            int offset = (top + y) * FRAME_WIDTH + left;
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                frame[offset + x] = matrix.get(x, y) ? DARK : LIGHT;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.DecodeHintType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Decides how much effort a frame gets. Frames start at {@link #LEVEL_CHEAP}, one attempt
+ * with the session's hints. Every failed frame adds to an escalation score, a failed frame
+ * whose reader reported result points, i.e. a code that seems to be there but does not
+ * read, adds a whole level at once. Each level adds to the ones below it:
+ * <ol>
+ * <li>{@link #LEVEL_ALTERNATE}: a second attempt with another binarizer.</li>
+ * <li>{@link #LEVEL_TRY_HARDER}: all attempts with {@link DecodeHintType#TRY_HARDER}.</li>
+ * <li>{@link #LEVEL_PURE}: a last attempt with {@link DecodeHintType#PURE_BARCODE}, for
+ * codes shown on a screen, which fill the crop without distortion.</li>
+ * </ol>
+ * A decoded frame drops back to the cheap level, and so does a long run of failures
+ * without any result points, since then there is probably no code in view.
+ * <p>
+ * Each frame also has a time budget. A running reader cannot be stopped, so an extra
+ * attempt is only started if the time spent on the frame so far plus the average cost of
+ * an attempt still fits.
+ * <p>
+ * Used on the decode thread only; the statistics may be read from any thread.
+ */
+final class EscalationPolicy {
+
+    /**
+     * Bytes a frame may allocate here, checked by the unit test FormatSchedulerTest.
+     */
+    static final int ALLOCATION_BUDGET_BYTES = 0;
+
+    static final int LEVEL_CHEAP = 0;
+    static final int LEVEL_ALTERNATE = 1;
+    static final int LEVEL_TRY_HARDER = 2;
+    static final int LEVEL_PURE = 3;
+    private static final int LEVELS = 4;
+
+    static final int DEFAULT_FAILURES_PER_LEVEL = 6;
+    static final int DEFAULT_FRAME_BUDGET_MS = 120;
+    private static final float COST_SMOOTHING = 0.2f;
+    /**
+     * A frame is given up at this multiple of its budget, or at {@link #MIN_DEADLINE_MS}.
+     */
+    private static final int DEADLINE_FACTOR = 3;
+    private static final int MIN_DEADLINE_MS = 250;
+
+    private final int failuresPerLevel;
+    /**
+     * Failed frames in a row without any result points after which the level is reset.
+     */
+    private final int idleResetFrames;
+    private final long frameBudgetNanos;
+    private final Map<DecodeHintType, Object> baseHints;
+    private final Map<DecodeHintType, Object> tryHarderHints;
+    private final Map<DecodeHintType, Object> pureHints;
+    /**
+     * Whether the {@link #LEVEL_PURE} attempt runs with other hints than the regular ones,
+     * i.e. the session does not ask for pure barcodes already.
+     */
+    private final boolean pureChangesHints;
+
+    private int score;
+    private int idleFrames;
+    private float averageAttemptNanos;
+
+    private final int[] levelFrames = new int[LEVELS];
+    private final int[] levelDecodes = new int[LEVELS];
+    private int escalatedDecodes;
+    private int overBudgetFrames;
+    private int skippedAttempts;
+
+    /**
+     * @param hints            The session's hints, see {@link DecodeConfig#getHints()}.
+     * @param failuresPerLevel Failed frames in a row that raise the level by one.
+     * @param frameBudgetMs    Time after which no further attempts are started on a frame.
+     */
+    EscalationPolicy(Map<DecodeHintType, ?> hints, int failuresPerLevel, int frameBudgetMs) {
+        this.failuresPerLevel = Math.max(1, failuresPerLevel);
+        this.idleResetFrames = this.failuresPerLevel * LEVELS * 2;
+        this.frameBudgetNanos = frameBudgetMs * 1000000L;
+        baseHints = Collections.unmodifiableMap(new EnumMap<DecodeHintType, Object>(hints));
+        EnumMap<DecodeHintType, Object> tryHarder = new EnumMap<DecodeHintType, Object>(hints);
+        tryHarder.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        tryHarderHints = Collections.unmodifiableMap(tryHarder);
+        EnumMap<DecodeHintType, Object> pure = new EnumMap<DecodeHintType, Object>(tryHarder);
+        pure.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+        pureHints = Collections.unmodifiableMap(pure);
+        pureChangesHints = !pure.equals(tryHarder);
+    }
+
+    /**
+     * @return The level of the next frame.
+     */
+    synchronized int getLevel() {
+        return Math.min(LEVELS - 1, score / failuresPerLevel);
+    }
+
+    /**
+     * @return The hints for the regular attempts at a level.
+     */
+    Map<DecodeHintType, Object> getHints(int level) {
+        return level >= LEVEL_TRY_HARDER ? tryHarderHints : baseHints;
+    }
+
+    /**
+     * @return The hints for the {@link #LEVEL_PURE} attempt.
+     */
+    Map<DecodeHintType, Object> getPureHints() {
+        return pureHints;
+    }
+
+    /**
+     * @return Whether a frame decoded by the {@link #LEVEL_PURE} attempt counts as escalated,
+     * which it only does if that attempt's hints differ from the frame's regular ones.
+     */
+    boolean pureChangesHints() {
+        return pureChangesHints;
+    }
+
+    /**
+     * @return Time after which a frame is given up at the next stage boundary. Well beyond
+     * the budget, which only keeps extra attempts from starting, so that a slow device
+     * still gets to finish its cheap attempts.
+     */
+    long getFrameDeadlineNanos() {
+        return Math.max(DEADLINE_FACTOR * frameBudgetNanos, MIN_DEADLINE_MS * 1000000L);
+    }
+
+    /**
+     * Asks whether another attempt fits into the frame's budget; a refusal is counted.
+     *
+     * @param frameNanos Time spent on the frame so far.
+     */
+    synchronized boolean canAttempt(long frameNanos) {
+        if (frameNanos + averageAttemptNanos <= frameBudgetNanos) {
+            return true;
+        }
+        skippedAttempts++;
+        return false;
+    }
+
+    /**
+     * Called after each reader attempt, to learn what an attempt costs.
+     */
+    synchronized void onAttempt(long nanos) {
+        averageAttemptNanos = averageAttemptNanos == 0.0f ? nanos
+                : averageAttemptNanos + COST_SMOOTHING * (nanos - averageAttemptNanos);
+    }
+
+    /**
+     * Called at the end of every frame.
+     *
+     * @param level           The level the frame ran at.
+     * @param decoded         Whether the frame decoded.
+     * @param escalated       Whether it only decoded in a retry with other hints than its
+     *                        first attempt, see {@link #pureChangesHints()}.
+     * @param sawResultPoints Whether a reader reported result points on the frame.
+     * @param frameNanos      Time spent on the frame.
+     */
+    synchronized void onFrame(int level, boolean decoded, boolean escalated, boolean sawResultPoints, long frameNanos) {
+        levelFrames[level]++;
+        if (frameNanos > frameBudgetNanos) {
+            overBudgetFrames++;
+        }
+        if (decoded) {
+            levelDecodes[level]++;
+            if (escalated) {
+                escalatedDecodes++;
+            }
+            score = 0;
+            idleFrames = 0;
+            return;
+        }
+        if (sawResultPoints) {
+            score += failuresPerLevel;
+            idleFrames = 0;
+        } else {
+            score++;
+            if (++idleFrames >= idleResetFrames) {
+                score = 0;
+                idleFrames = 0;
+            }
+        }
+        // no need to count beyond the top level
+        score = Math.min(score, failuresPerLevel * LEVELS);
+    }
+
+    /**
+     * @return Share of the decoded frames that needed a retry with other hints, or -1 if none decoded.
+     */
+    synchronized float getEscalatedRate() {
+        int decodes = 0;
+        for (int count : levelDecodes) {
+            decodes += count;
+        }
+        return decodes == 0 ? -1.0f : (float) escalatedDecodes / decodes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("failuresPerLevel=").append(failuresPerLevel)
+                .append(" budgetMs=").append(frameBudgetNanos / 1000000L)
+                .append(" level=").append(getLevel());
+        for (int level = 0; level < LEVELS; level++) {
+            builder.append(" L").append(level).append('=').append(levelDecodes[level]).append('/').append(levelFrames[level]);
+        }
+        builder.append(" escalatedDecodes=").append(escalatedDecodes)
+                .append(" overBudget=").append(overBudgetFrames)
+                .append(" skippedAttempts=").append(skippedAttempts)
+                .append(" attemptMs=").append(averageAttemptNanos / 1000000.0f);
+        return builder.toString();
+    }
+
+}
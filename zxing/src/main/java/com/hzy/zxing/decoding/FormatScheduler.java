@@ -0,0 +1,179 @@
+package com.hzy.zxing.decoding;
+
+/**
+ * Spreads the reader slots of a {@link DecodeConfig} over consecutive frames, so each
+ * frame runs a single reader and its cost stays bounded however many formats are
+ * enabled. Slots are picked by smooth weighted round-robin: every slot keeps a base
+ * weight so none is starved, and a slot that decoded recently, or reported result
+ * points (QR finder patterns, 1D guard patterns) on one of its recent frames, gets
+ * more frames until the boost runs out.
+ * <p>
+ * {@link #nextSlot()}, {@link #onResultPoint()} and {@link #onFrame} are called on the
+ * decode thread; the statistics may be read from any thread.
+ */
+final class FormatScheduler {
+
+    /**
+     * Bytes a frame may allocate here, checked by the unit test FormatSchedulerTest.
+     */
+    static final int ALLOCATION_BUDGET_BYTES = 0;
+
+    private static final int BASE_WEIGHT = 2;
+    private static final int HIT_WEIGHT = 6;
+    private static final int PARTIAL_WEIGHT = 3;
+    /**
+     * Frames, counted over all slots, for which a hit or a partial detection boosts its slot.
+     */
+    private static final int HIT_WINDOW = 30;
+    private static final int PARTIAL_WINDOW = 10;
+
+    private final String[] names;
+    private final int[] current;
+    private final long[] lastHitFrame;
+    private final long[] lastPartialFrame;
+    private final int[] frames;
+    private final int[] hits;
+    private final long[] costNanos;
+    private long frameCount;
+    private int slot = -1;
+    private boolean partialSeen;
+
+    FormatScheduler(DecodeConfig config) {
+        int count = config.getSlotCount();
+        names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = config.getSlotName(i);
+        }
+        current = new int[count];
+        lastHitFrame = new long[count];
+        lastPartialFrame = new long[count];
+        frames = new int[count];
+        hits = new int[count];
+        costNanos = new long[count];
+        for (int i = 0; i < count; i++) {
+            lastHitFrame[i] = -HIT_WINDOW;
+            lastPartialFrame[i] = -PARTIAL_WINDOW;
+        }
+    }
+
+    /**
+     * @return The slot to decode the next frame with.
+     */
+    synchronized int nextSlot() {
+        int total = 0;
+        int best = 0;
+        for (int i = 0; i < names.length; i++) {
+            int weight = weight(i);
+            current[i] += weight;
+            total += weight;
+            if (current[i] > current[best]) {
+                best = i;
+            }
+        }
+        current[best] -= total;
+        slot = best;
+        partialSeen = false;
+        return best;
+    }
+
+    /**
+     * Starts a frame on which the readers of all slots run at once, see
+     * {@link ParallelDecoder}. It is not counted for any slot.
+     */
+    synchronized void allSlots() {
+        slot = -1;
+        partialSeen = false;
+    }
+
+    private int weight(int i) {
+        int weight = BASE_WEIGHT;
+        if (frameCount - lastHitFrame[i] < HIT_WINDOW) {
+            weight += HIT_WEIGHT;
+        }
+        if (frameCount - lastPartialFrame[i] < PARTIAL_WINDOW) {
+            weight += PARTIAL_WEIGHT;
+        }
+        return weight;
+    }
+
+    /**
+     * A result point was found by the reader of the current slot.
+     */
+    synchronized void onResultPoint() {
+        partialSeen = true;
+    }
+
+    /**
+     * Called after the reader of the slot returned by {@link #nextSlot()} ran.
+     *
+     * @param decoded Whether it found a barcode.
+     * @param nanos   Time the reader took.
+     */
+    synchronized void onFrame(boolean decoded, long nanos) {
+        if (slot < 0) {
+            return;
+        }
+        frames[slot]++;
+        costNanos[slot] += nanos;
+        if (decoded) {
+            hits[slot]++;
+            lastHitFrame[slot] = frameCount;
+        }
+        if (partialSeen) {
+            lastPartialFrame[slot] = frameCount;
+        }
+        frameCount++;
+    }
+
+    /**
+     * @return Whether the reader of the current slot reported result points on this frame so far.
+     */
+    synchronized boolean sawResultPoints() {
+        return partialSeen;
+    }
+
+    int getSlotCount() {
+        return names.length;
+    }
+
+    String getSlotName(int slot) {
+        return names[slot];
+    }
+
+    /**
+     * @return Share of the frames given to a slot in which it found a barcode, or -1 if it got none.
+     */
+    synchronized float getHitRate(int slot) {
+        return frames[slot] == 0 ? -1.0f : (float) hits[slot] / frames[slot];
+    }
+
+    /**
+     * @return Average time the reader of a slot took per frame in microseconds, or -1.
+     */
+    synchronized long getAverageCostMicros(int slot) {
+        return frames[slot] == 0 ? -1L : costNanos[slot] / frames[slot] / 1000L;
+    }
+
+    /**
+     * @return Average reader time per frame over all slots in microseconds, or -1.
+     */
+    synchronized long getFrameCostMicros() {
+        long cost = 0L;
+        for (long slotCost : costNanos) {
+            cost += slotCost;
+        }
+        return frameCount == 0L ? -1L : cost / frameCount / 1000L;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder result = new StringBuilder();
+        result.append("frames=").append(frameCount).append(" cost=").append(getFrameCostMicros()).append("us");
+        for (int i = 0; i < names.length; i++) {
+            result.append(' ').append(names[i]).append('[').append(hits[i]).append('/').append(frames[i])
+                    .append(' ').append(getAverageCostMicros(i)).append("us]");
+        }
+        return result.toString();
+    }
+
+}
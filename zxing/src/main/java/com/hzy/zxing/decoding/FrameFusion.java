@@ -0,0 +1,291 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.LuminanceSource;
+import com.hzy.zxing.camera.PlanarYUVLuminanceSource;
+
+/**
+ * Averages consecutive crops of a still scene to get rid of sensor noise, for dim scenes
+ * in which single frames are too noisy to binarize. The average is kept per pixel in 8.8
+ * fixed point: the first {@link #MAX_FRAMES} frames are averaged evenly, later ones are
+ * blended in with a weight of 1 / {@link #MAX_FRAMES}, so the average keeps following
+ * slow changes.
+ * <p>
+ * Global motion is estimated from the row and column sums of each crop, compared with
+ * those of the first frame: a shift of up to {@link #MAX_FUSE_SHIFT} pixels is undone
+ * while blending, anything more, or a scene that no longer matches at any shift,
+ * starts over with the new frame.
+ * <p>
+ * The composite is contrast stretched, which makes use of the extra precision of the
+ * average: a dim label whose frames only span a few grey levels gets its full range.
+ * <p>
+ * All buffers are reused between frames, so an instance belongs to one decode thread.
+ */
+final class FrameFusion {
+
+    /**
+     * Frames needed before the composite is worth decoding.
+     */
+    static final int MIN_FRAMES = 3;
+    private static final int MAX_FRAMES = 16;
+    private static final int FRACTION_BITS = 8;
+    private static final int MAX_SEARCH_SHIFT = 4;
+    private static final int MAX_FUSE_SHIFT = 2;
+    /**
+     * The scene is taken to have changed when the aligned row or column averages differ
+     * by more than this share of how much they vary themselves, in 1/1000...
+     */
+    private static final int MAX_RESIDUAL_PERMILLE = 500;
+    /**
+     * ...or, for a scene without much structure, by more than this many grey levels.
+     */
+    private static final int MIN_RESIDUAL = 1;
+    /**
+     * Share of the darkest and brightest pixels, in 1/1000, left out of the stretch.
+     */
+    private static final int STRETCH_CLIP_PERMILLE = 5;
+
+    private int width;
+    private int height;
+    private int frames;
+    private int[] accumulator = new int[0];
+    private byte[] composite = new byte[0];
+    private byte[] row = new byte[0];
+    private int[] referenceRows = new int[0];
+    private int[] referenceColumns = new int[0];
+    private long rowTexture;
+    private long columnTexture;
+    private int[] rowSums = new int[0];
+    private int[] columnSums = new int[0];
+    private final int[] histogram = new int[256];
+    private int shiftX;
+    private int shiftY;
+
+    private int fusedFrames;
+    private int motionResets;
+
+    /**
+     * Blends the crop into the average, or starts a new average with it if the crop size
+     * changed or the scene moved.
+     *
+     * @return Number of frames in the average.
+     */
+    int add(LuminanceSource source) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        if (sourceWidth != width || sourceHeight != height) {
+            allocate(sourceWidth, sourceHeight);
+            frames = 0;
+        }
+        project(source);
+        if (frames > 0 && !align()) {
+            motionResets++;
+            frames = 0;
+        }
+        if (frames == 0) {
+            start(source);
+        } else {
+            blend(source);
+            fusedFrames++;
+        }
+        return frames;
+    }
+
+    /**
+     * Drops the average, e.g. after a code was read or when the scene is bright again.
+     */
+    void reset() {
+        frames = 0;
+    }
+
+    /**
+     * @return The contrast stretched average. Backed by a buffer which the next call
+     * overwrites.
+     */
+    LuminanceSource composite() {
+        int area = width * height;
+        int[] localAccumulator = accumulator;
+        for (int i = 0; i < 256; i++) {
+            histogram[i] = 0;
+        }
+        for (int i = 0; i < area; i++) {
+            histogram[localAccumulator[i] >> FRACTION_BITS]++;
+        }
+        int clip = area * STRETCH_CLIP_PERMILLE / 1000;
+        int low = 0;
+        for (int count = 0; low < 255 && (count += histogram[low]) <= clip; ) {
+            low++;
+        }
+        int high = 255;
+        for (int count = 0; high > low && (count += histogram[high]) <= clip; ) {
+            high--;
+        }
+        int lowFixed = low << FRACTION_BITS;
+        int range = Math.max(1 << FRACTION_BITS, ((high + 1) << FRACTION_BITS) - lowFixed);
+        // 255 / range in 16.16, so the stretch is a multiply and a shift per pixel
+        long scale = (255L << 16) / range;
+        byte[] localComposite = composite;
+        for (int i = 0; i < area; i++) {
+            long value = ((localAccumulator[i] - lowFixed) * scale) >> 16;
+            localComposite[i] = (byte) (value < 0L ? 0 : value > 255L ? 255 : value);
+        }
+        return new PlanarYUVLuminanceSource(localComposite, width, height, 0, 0, width, height);
+    }
+
+    private void allocate(int newWidth, int newHeight) {
+        width = newWidth;
+        height = newHeight;
+        int area = newWidth * newHeight;
+        if (accumulator.length < area) {
+            accumulator = new int[area];
+            composite = new byte[area];
+        }
+        if (row.length < newWidth) {
+            row = new byte[newWidth];
+        }
+        if (rowSums.length < newHeight) {
+            rowSums = new int[newHeight];
+            referenceRows = new int[newHeight];
+        }
+        if (columnSums.length < newWidth) {
+            columnSums = new int[newWidth];
+            referenceColumns = new int[newWidth];
+        }
+    }
+
+    /**
+     * Fills the row and column sums of the crop.
+     */
+    private void project(LuminanceSource source) {
+        for (int x = 0; x < width; x++) {
+            columnSums[x] = 0;
+        }
+        for (int y = 0; y < height; y++) {
+            byte[] localRow = readRow(source, y);
+            int sum = 0;
+            for (int x = 0; x < width; x++) {
+                int pixel = localRow[x] & 0xff;
+                sum += pixel;
+                columnSums[x] += pixel;
+            }
+            rowSums[y] = sum;
+        }
+    }
+
+    /**
+     * Finds the shift of the crop against the first frame.
+     *
+     * @return Whether the shift is small enough to blend the crop.
+     */
+    private boolean align() {
+        int bestX = bestShift(columnSums, referenceColumns, width, height, columnTexture);
+        int bestY = bestShift(rowSums, referenceRows, height, width, rowTexture);
+        if (bestX == Integer.MIN_VALUE || bestY == Integer.MIN_VALUE
+                || Math.abs(bestX) > MAX_FUSE_SHIFT || Math.abs(bestY) > MAX_FUSE_SHIFT) {
+            return false;
+        }
+        shiftX = bestX;
+        shiftY = bestY;
+        return true;
+    }
+
+    /**
+     * @param samples Pixels summed into each entry.
+     * @param texture See {@link #texture}.
+     * @return The shift d for which current[i + d] matches reference[i] best, or
+     * {@link Integer#MIN_VALUE} if even that one differs too much.
+     */
+    private static int bestShift(int[] current, int[] reference, int length, int samples, long texture) {
+        int best = Integer.MIN_VALUE;
+        long bestResidual = Long.MAX_VALUE;
+        for (int shift = -MAX_SEARCH_SHIFT; shift <= MAX_SEARCH_SHIFT; shift++) {
+            int from = Math.max(0, -shift);
+            int to = Math.min(length, length - shift);
+            long residual = 0L;
+            for (int i = from; i < to; i++) {
+                residual += Math.abs(current[i + shift] - reference[i]);
+            }
+            // in 1/1000 grey levels per pixel, to stay in integers
+            long overlap = (long) (to - from) * samples;
+            if (overlap > 0L && residual * 1000L / overlap < bestResidual) {
+                bestResidual = residual * 1000L / overlap;
+                best = shift;
+            }
+        }
+        long maxResidual = Math.max(MIN_RESIDUAL * 1000L, texture * MAX_RESIDUAL_PERMILLE / 1000L);
+        return bestResidual <= maxResidual ? best : Integer.MIN_VALUE;
+    }
+
+    /**
+     * @return Mean deviation of the sums from their average, in 1/1000 grey levels per
+     * pixel: how different the rows or columns of the first frame are from each other.
+     */
+    private static long texture(int[] sums, int length, int samples) {
+        long total = 0L;
+        for (int i = 0; i < length; i++) {
+            total += sums[i];
+        }
+        long mean = total / length;
+        long deviation = 0L;
+        for (int i = 0; i < length; i++) {
+            deviation += Math.abs(sums[i] - mean);
+        }
+        return deviation * 1000L / ((long) length * samples);
+    }
+
+    private void start(LuminanceSource source) {
+        System.arraycopy(rowSums, 0, referenceRows, 0, height);
+        System.arraycopy(columnSums, 0, referenceColumns, 0, width);
+        rowTexture = texture(rowSums, height, width);
+        columnTexture = texture(columnSums, width, height);
+        int[] localAccumulator = accumulator;
+        for (int y = 0; y < height; y++) {
+            byte[] localRow = readRow(source, y);
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                localAccumulator[offset + x] = (localRow[x] & 0xff) << FRACTION_BITS;
+            }
+        }
+        frames = 1;
+    }
+
+    /**
+     * Blends the crop in, shifted back onto the first frame. Pixels which the shift
+     * moves out of the crop keep their average.
+     */
+    private void blend(LuminanceSource source) {
+        // 1 / (frames + 1) in 1/256, e.g. 128 for the second frame
+        int weight = 256 / (Math.min(frames, MAX_FRAMES - 1) + 1);
+        int[] localAccumulator = accumulator;
+        int fromY = Math.max(0, -shiftY);
+        int toY = Math.min(height, height - shiftY);
+        int fromX = Math.max(0, -shiftX);
+        int toX = Math.min(width, width - shiftX);
+        for (int y = fromY; y < toY; y++) {
+            byte[] localRow = readRow(source, y + shiftY);
+            int offset = y * width;
+            for (int x = fromX; x < toX; x++) {
+                int index = offset + x;
+                int difference = ((localRow[x + shiftX] & 0xff) << FRACTION_BITS) - localAccumulator[index];
+                localAccumulator[index] += (difference * weight) >> 8;
+            }
+        }
+        if (frames < MAX_FRAMES) {
+            frames++;
+        }
+    }
+
+    private byte[] readRow(LuminanceSource source, int y) {
+        byte[] localRow = source.getRow(y, row);
+        // a source may hand out its own array instead of filling ours
+        if (localRow.length > row.length) {
+            row = localRow;
+        }
+        return localRow;
+    }
+
+    @Override
+    public String toString() {
+        return "fusedFrames=" + fusedFrames + " motionResets=" + motionResets;
+    }
+
+}
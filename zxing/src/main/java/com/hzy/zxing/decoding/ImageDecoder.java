@@ -0,0 +1,164 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes still images, e.g. a picture from the gallery or an upload on a server, with the
+ * readers and binarizers of the camera pipeline. A still image gets a single chance, so the
+ * attempts which the camera spreads over failed frames run in turn until one reads: the
+ * global binarizer with the session's hints, the hybrid and adaptive ones with
+ * {@link DecodeHintType#TRY_HARDER}, {@link DecodeHintType#PURE_BARCODE}, and last the
+ * inverted image. The symbols of a Structured Append set which are all in the image are
+ * joined into one result.
+ * <p>
+ * Needs no Android classes. Readers and binarizer buffers are reused from one image to the
+ * next, so an instance must only be used by one thread.
+ */
+public final class ImageDecoder {
+
+    /**
+     * Version of the sequence of attempts in {@link #decode(LuminanceSource)}. Raise it
+     * when a change may read images differently, so that cached results are not reused.
+     */
+    static final int PIPELINE_VERSION = 1;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final DecodeConfig decodeConfig;
+    private final long fingerprint;
+    private final BinarizationStage binarization = new BinarizationStage();
+    private final Map<DecodeHintType, Object> tryHarderHints;
+    private final Map<DecodeHintType, Object> pureHints;
+    private int attempts;
+
+    /**
+     * @param hints Decode hints; {@link DecodeHintType#POSSIBLE_FORMATS} selects the
+     *              readers and defaults to QR Code only, see {@link DecodeConfig}.
+     */
+    public ImageDecoder(Map<DecodeHintType, ?> hints) {
+        decodeConfig = new DecodeConfig(hints);
+        EnumMap<DecodeHintType, Object> tryHarder = new EnumMap<DecodeHintType, Object>(decodeConfig.getHints());
+        tryHarder.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        tryHarderHints = Collections.unmodifiableMap(tryHarder);
+        EnumMap<DecodeHintType, Object> pure = new EnumMap<DecodeHintType, Object>(tryHarder);
+        pure.put(DecodeHintType.PURE_BARCODE, Boolean.TRUE);
+        pureHints = Collections.unmodifiableMap(pure);
+        fingerprint = fingerprint(decodeConfig.getHints());
+    }
+
+    /**
+     * @return The first barcode found.
+     * @throws NotFoundException if none of the attempts found a barcode.
+     */
+    public Result decode(LuminanceSource source) throws NotFoundException {
+        attempts = 0;
+        Result result = attempt(source, BinarizationStage.MODE_GLOBAL, decodeConfig.getHints());
+        if (result == null) {
+            result = attempt(source, BinarizationStage.MODE_HYBRID, tryHarderHints);
+        }
+        if (result == null) {
+            result = attempt(source, BinarizationStage.MODE_ADAPTIVE, tryHarderHints);
+        }
+        if (result == null) {
+            result = attempt(source, BinarizationStage.MODE_GLOBAL, pureHints);
+        }
+        if (result == null) {
+            // 反色码（深色背景上的浅色码）
+            result = attempt(source.invert(), BinarizationStage.MODE_HYBRID, tryHarderHints);
+        }
+        if (result == null || StructuredAppendCollector.isFragment(result)) {
+            // several symbols of a set in view also keep the readers above from finding any
+            StructuredAppendCollector collector = new StructuredAppendCollector();
+            if (result != null) {
+                collector.add(result);
+            }
+            BinaryBitmap image = new BinaryBitmap(binarization.createBinarizer(BinarizationStage.MODE_HYBRID, source));
+            Result assembled = collector.addAll(image, tryHarderHints);
+            if (assembled != null) {
+                return assembled;
+            }
+        }
+        if (result == null) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        return result;
+    }
+
+    /**
+     * @return Reader attempts the last image took, each running every reader once.
+     */
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public DecodeConfig getDecodeConfig() {
+        return decodeConfig;
+    }
+
+    /**
+     * @return A hash of what decides the result for an image: the hints and
+     * {@link #PIPELINE_VERSION}. Decoders with the same fingerprint read the same images.
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * 64-bit FNV-1a over the hints in enum order, collections sorted; the result point
+     * callback is left out as it does not change what is read.
+     */
+    private static long fingerprint(Map<DecodeHintType, ?> hints) {
+        StringBuilder description = new StringBuilder().append(PIPELINE_VERSION);
+        for (Map.Entry<DecodeHintType, ?> entry : new EnumMap<DecodeHintType, Object>(hints).entrySet()) {
+            if (entry.getKey() == DecodeHintType.NEED_RESULT_POINT_CALLBACK) {
+                continue;
+            }
+            description.append(';').append(entry.getKey().name()).append('=');
+            Object value = entry.getValue();
+            if (value instanceof Collection) {
+                List<String> items = new ArrayList<String>();
+                for (Object item : (Collection<?>) value) {
+                    items.add(String.valueOf(item));
+                }
+                Collections.sort(items);
+                description.append(items);
+            } else {
+                description.append(value);
+            }
+        }
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < description.length(); i++) {
+            char c = description.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private Result attempt(LuminanceSource source, int mode, Map<DecodeHintType, ?> hints) {
+        attempts++;
+        BinaryBitmap image = new BinaryBitmap(binarization.createBinarizer(mode, source));
+        for (int slot = 0; slot < decodeConfig.getSlotCount(); slot++) {
+            try {
+                return decodeConfig.decode(image, slot, hints);
+            } catch (ReaderException re) {
+                // try the next reader
+            }
+        }
+        return null;
+    }
+
+}
@@ -96,6 +96,35 @@ public final class Intents {
          */
         public static final String SAVE_HISTORY = "SAVE_HISTORY";
 
+        /**
+         * Number of failed frames in a row after which the decoder tries harder: first another
+         * binarizer, then {@link com.google.zxing.DecodeHintType#TRY_HARDER}, then
+         * {@link com.google.zxing.DecodeHintType#PURE_BARCODE}. Use Intent.putExtra(ESCALATION_FAILURES, int).
+         * Optional, defaults to 6.
+         */
+        public static final String ESCALATION_FAILURES = "ESCALATION_FAILURES";
+
+        /**
+         * Milliseconds after which no further decode attempts are started on a frame.
+         * Use Intent.putExtra(FRAME_BUDGET_MS, int). Optional, defaults to 120.
+         */
+        public static final String FRAME_BUDGET_MS = "FRAME_BUDGET_MS";
+
+        /**
+         * Set to true to run the readers of all requested formats on every frame, in parallel
+         * on multi-core devices, instead of one format per frame in turn. Faster to find any
+         * code at the cost of more CPU per frame. Optional, defaults to false.
+         */
+        public static final String PARALLEL_DECODE = "PARALLEL_DECODE";
+
+        /**
+         * Preprocessing of each frame before it is decoded, as stage names separated by commas,
+         * e.g. "crop,downsample:2,rotate,stretch"; see the stages of
+         * com.hzy.zxing.decoding.PreprocessPipeline. Use Intent.putExtra(PREPROCESS, String).
+         * Optional, defaults to "crop,rotate".
+         */
+        public static final String PREPROCESS = "PREPROCESS";
+
         private Scan() {
         }
     }
@@ -110,13 +139,14 @@ public final class Intents {
         /**
          * The data to encode. Use Intent.putExtra(DATA, data) where data is either a String or a
          * Bundle, depending on the type and format specified. Non-QR Code formats should
-         * just use a String here. For QR Code, see Contents for details.
+         * just use a String here. For QR Code, see com.hzy.zxing.encoding.Contents for details.
          */
         public static final String DATA = "ENCODE_DATA";
 
         /**
          * The type of data being supplied if the format is QR Code. Use
-         * Intent.putExtra(TYPE, type) with one of Contents.Type.
+         * Intent.putExtra(TYPE, type) with one of com.hzy.zxing.encoding.Contents.Type.
+         * Other formats only take Contents.Type.TEXT, the default.
          */
         public static final String TYPE = "ENCODE_TYPE";
 
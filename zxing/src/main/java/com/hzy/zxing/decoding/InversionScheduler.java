@@ -0,0 +1,73 @@
+package com.hzy.zxing.decoding;
+
+/**
+ * Decides when a frame that failed to decode is tried again as light-on-dark. Frames
+ * that decode normally never pay for it. A failed frame is retried when its reader saw
+ * finder-pattern-like structure, on every {@link #INVERT_INTERVAL}-th failed frame,
+ * and on every failed frame for a while after an inverted read succeeded, since the
+ * user is then most likely scanning another inverted code.
+ * <p>
+ * Used on the decode thread only; the statistics may be read from any thread.
+ */
+final class InversionScheduler {
+
+    /**
+     * Bytes a frame may allocate here, checked by the unit test FormatSchedulerTest.
+     */
+    static final int ALLOCATION_BUDGET_BYTES = 0;
+
+    private static final int INVERT_INTERVAL = 2;
+    /**
+     * Failed frames after a rescue during which every failed frame is retried.
+     */
+    private static final int RESCUE_WINDOW = 30;
+
+    private long failedFrames;
+    private long lastRescueFrame = -RESCUE_WINDOW;
+    private int scans;
+    private int attempts;
+    private int rescues;
+
+    /**
+     * Called when a frame failed to decode normally.
+     *
+     * @param structureSeen Whether the reader reported result points on the frame.
+     * @return Whether to retry the frame inverted.
+     */
+    synchronized boolean shouldTry(boolean structureSeen) {
+        failedFrames++;
+        return structureSeen || failedFrames - lastRescueFrame <= RESCUE_WINDOW || failedFrames % INVERT_INTERVAL == 0;
+    }
+
+    /**
+     * Called after the retry asked for by {@link #shouldTry}.
+     */
+    synchronized void onAttempt(boolean rescued) {
+        attempts++;
+        if (rescued) {
+            rescues++;
+            scans++;
+            lastRescueFrame = failedFrames;
+        }
+    }
+
+    /**
+     * Called when a frame decoded without inversion.
+     */
+    synchronized void onDecoded() {
+        scans++;
+    }
+
+    /**
+     * @return Share of all scans that were only found inverted, or -1 if nothing was scanned.
+     */
+    synchronized float getRescueRate() {
+        return scans == 0 ? -1.0f : (float) rescues / scans;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "scans=" + scans + " invertedAttempts=" + attempts + " rescues=" + rescues;
+    }
+
+}
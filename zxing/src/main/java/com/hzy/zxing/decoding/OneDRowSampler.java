@@ -0,0 +1,226 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.oned.MultiFormatOneDReader;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Fast path for 1D barcodes: a few scan lines are read straight from the Y plane of
+ * the landscape preview frame, so the frame is neither rotated nor copied. Lines are
+ * taken across the crop in both directions, columns first since they are horizontal
+ * on the portrait screen, starting in the middle and moving outwards. Each line is
+ * binarized on its own, like {@link com.google.zxing.common.GlobalHistogramBinarizer}
+ * does, and tried forwards and backwards. The first read wins; UPC/EAN, Code 93 and
+ * Code 128 reads carry a checksum which the readers verify before returning them.
+ * <p>
+ * Result points, also those passed to the result point callback, are translated to the
+ * coordinates of the rotated portrait crop. An instance must only be used by one thread.
+ */
+final class OneDRowSampler {
+
+    /**
+     * Default number of lines sampled in each direction.
+     */
+    static final int DEFAULT_LINES = 5;
+    /**
+     * Bytes a frame without a barcode may allocate here, with {@link #DEFAULT_LINES}: the
+     * sampler itself reuses its buffers, ZXing's 1D readers allocate their pattern counters
+     * per row, more of them the noisier the frame. Checked by the unit test OneDRowSamplerTest.
+     */
+    static final int ALLOCATION_BUDGET_BYTES = 12 * 1024;
+
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+    private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS;
+    /**
+     * Lines whose darkest and brightest samples are closer than this are skipped.
+     */
+    private static final int MIN_CONTRAST = 24;
+
+    private final MultiFormatOneDReader reader;
+    private final Map<DecodeHintType, Object> hints;
+    private final ResultPointCallback callback;
+    private final int lines;
+    private final int[] buckets = new int[LUMINANCE_BUCKETS];
+    private byte[] luminances = new byte[0];
+    private BitArray rowBits;
+    private BitArray columnBits;
+
+    // The line being decoded, for translating result points
+    private boolean column;
+    private boolean reversed;
+    private int lineLength;
+    private int linePosition;
+    private int cropLeft;
+    private int cropTop;
+    private int cropBottom;
+
+    /**
+     * @param hints Decode hints; a result point callback in them receives translated points.
+     * @param lines Number of lines to sample in each direction.
+     */
+    OneDRowSampler(Map<DecodeHintType, ?> hints, int lines) {
+        this.lines = lines;
+        this.hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        this.hints.putAll(hints);
+        callback = (ResultPointCallback) this.hints.get(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+        if (callback != null) {
+            this.hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, new ResultPointCallback() {
+                public void foundPossibleResultPoint(ResultPoint point) {
+                    callback.foundPossibleResultPoint(translate(point));
+                }
+            });
+        }
+        reader = new MultiFormatOneDReader(this.hints);
+    }
+
+    /**
+     * Looks for a 1D barcode in a crop of the landscape Y plane.
+     *
+     * @param data      The preview frame; only the Y plane is read.
+     * @param dataWidth Width of the preview frame.
+     * @return The first barcode read, or null.
+     */
+    Result decode(byte[] data, int dataWidth, int left, int top, int width, int height) {
+        cropLeft = left;
+        cropTop = top;
+        cropBottom = top + height;
+        int length = Math.max(width, height);
+        if (luminances.length < length) {
+            luminances = new byte[length];
+        }
+        for (int i = 0; i < lines; i++) {
+            // 0, +1, -1, +2, -2, ... steps from the middle
+            int step = (i + 1) / 2;
+            int offset = (i & 1) == 0 ? step : -step;
+
+            int x = left + width / 2 + offset * (width / (lines + 1));
+            if (x >= left && x < left + width) {
+                for (int y = 0; y < height; y++) {
+                    luminances[y] = data[(top + y) * dataWidth + x];
+                }
+                if (columnBits == null || columnBits.getSize() != height) {
+                    columnBits = new BitArray(height);
+                }
+                column = true;
+                linePosition = x;
+                Result result = decodeLine(columnBits, height);
+                if (result != null) {
+                    return result;
+                }
+            }
+
+            int y = top + height / 2 + offset * (height / (lines + 1));
+            if (y >= top && y < top + height) {
+                System.arraycopy(data, y * dataWidth + left, luminances, 0, width);
+                if (rowBits == null || rowBits.getSize() != width) {
+                    rowBits = new BitArray(width);
+                }
+                column = false;
+                linePosition = y;
+                Result result = decodeLine(rowBits, width);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Result decodeLine(BitArray bits, int length) {
+        if (!binarize(bits, length)) {
+            return null;
+        }
+        lineLength = length;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            reversed = attempt == 1;
+            if (reversed) {
+                bits.reverse();
+            }
+            try {
+                Result result = reader.decodeRow(linePosition, bits, hints);
+                ResultPoint[] points = result.getResultPoints();
+                if (points != null) {
+                    for (int i = 0; i < points.length; i++) {
+                        points[i] = translate(points[i]);
+                    }
+                }
+                return result;
+            } catch (ReaderException re) {
+                // try the other direction
+            } finally {
+                reader.reset();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Thresholds the line in {@link #luminances} at the black point of its histogram,
+     * with the same sharpening as the global histogram binarizer.
+     *
+     * @return False if the line has too little contrast to hold a barcode.
+     */
+    private boolean binarize(BitArray bits, int length) {
+        bits.clear();
+        for (int i = 0; i < LUMINANCE_BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+        int min = 255;
+        int max = 0;
+        for (int i = 0; i < length; i++) {
+            int pixel = luminances[i] & 0xff;
+            buckets[pixel >> LUMINANCE_SHIFT]++;
+            if (pixel < min) {
+                min = pixel;
+            }
+            if (pixel > max) {
+                max = pixel;
+            }
+        }
+        if (max - min < MIN_CONTRAST) {
+            return false;
+        }
+        int blackPoint = BinarizationStage.estimateBlackPoint(buckets);
+        if (blackPoint < 0) {
+            return false;
+        }
+        int left = luminances[0] & 0xff;
+        int center = luminances[1] & 0xff;
+        for (int x = 1; x < length - 1; x++) {
+            int right = luminances[x + 1] & 0xff;
+            if (((center << 2) - left - right) >> 1 < blackPoint) {
+                bits.set(x);
+            }
+            left = center;
+            center = right;
+        }
+        return true;
+    }
+
+    /**
+     * Maps a point on the current line to the portrait crop, which is the landscape crop
+     * rotated by 90 degrees clockwise.
+     */
+    private ResultPoint translate(ResultPoint point) {
+        float along = reversed ? lineLength - 1 - point.getX() : point.getX();
+        float x;
+        float y;
+        if (column) {
+            x = linePosition;
+            y = cropTop + along;
+        } else {
+            x = cropLeft + along;
+            y = linePosition;
+        }
+        return new ResultPoint(cropBottom - 1 - y, x - cropLeft);
+    }
+
+}
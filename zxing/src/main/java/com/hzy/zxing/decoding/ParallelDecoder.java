@@ -0,0 +1,195 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the readers of all slots of a {@link DecodeConfig} on the same frame at once, so
+ * that a frame costs about as long as its slowest reader instead of the sum of all of
+ * them. The frame is binarized once on the calling thread; the readers only read the
+ * shared {@link com.google.zxing.common.BitMatrix}, PDF417 rotates a copy of it. The 1D
+ * reader asks the binarizer for rows, which no other reader does.
+ * <p>
+ * The calling thread runs the first slot, the others run on a small executor. The first
+ * result is returned right away: readers which have not started yet are skipped, those
+ * already running cannot be stopped and finish in the background. Since they still use
+ * the frame's buffers and their readers, {@link #awaitIdle()} must be called before the
+ * next frame is prepared, and before the image's binarizer is asked for another one;
+ * {@link #decode} waits too, but only after the caller has binarized the new image.
+ * <p>
+ * Used by the decode thread only.
+ */
+final class ParallelDecoder {
+
+    /**
+     * Reader threads besides the calling one; none on a single core, where the readers
+     * simply run in turn.
+     */
+    private static final int THREADS = Runtime.getRuntime().availableProcessors() - 1;
+
+    private final DecodeConfig decodeConfig;
+    private final ExecutorService executor;
+    private Frame lastFrame;
+
+    ParallelDecoder(DecodeConfig decodeConfig) {
+        this.decodeConfig = decodeConfig;
+        int threads = Math.min(THREADS, decodeConfig.getSlotCount() - 1);
+        executor = threads <= 0 ? null : Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "ReaderSlot-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Runs every slot's reader on the image.
+     *
+     * @return The first barcode found.
+     * @throws ReaderException if no reader found a barcode.
+     */
+    Result decode(BinaryBitmap image, Map<DecodeHintType, ?> hints) throws ReaderException {
+        awaitIdle();
+        // binarize once, before the readers share the matrix
+        image.getBlackMatrix();
+        int slots = decodeConfig.getSlotCount();
+        Frame frame = new Frame(image, hints, slots);
+        lastFrame = frame;
+        if (executor != null) {
+            for (int slot = 1; slot < slots; slot++) {
+                executor.execute(new SlotTask(frame, slot));
+            }
+        }
+        frame.run(0);
+        if (executor == null) {
+            // one core: the same readers in turn, those after a result are skipped
+            for (int slot = 1; slot < slots; slot++) {
+                frame.run(slot);
+            }
+        }
+        Result result = frame.awaitFirst();
+        if (result == null) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        return result;
+    }
+
+    /**
+     * Waits until the readers of the last frame which are still running have finished.
+     */
+    void awaitIdle() {
+        if (lastFrame == null) {
+            return;
+        }
+        boolean interrupted = false;
+        while (true) {
+            try {
+                lastFrame.finished.await();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        lastFrame = null;
+    }
+
+    /**
+     * Stops the reader threads once their current readers are done.
+     */
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private final class Frame {
+
+        private final BinaryBitmap image;
+        private final Map<DecodeHintType, ?> hints;
+        private final AtomicReference<Result> result = new AtomicReference<Result>();
+        /**
+         * Counted down by every slot, whether it ran or was skipped.
+         */
+        private final CountDownLatch finished;
+        /**
+         * Counted down by the first result, or when all slots are done.
+         */
+        private final CountDownLatch firstOrAll = new CountDownLatch(1);
+
+        Frame(BinaryBitmap image, Map<DecodeHintType, ?> hints, int slots) {
+            this.image = image;
+            this.hints = hints;
+            finished = new CountDownLatch(slots);
+        }
+
+        void run(int slot) {
+            try {
+                if (result.get() == null) {
+                    Result slotResult = decodeConfig.decode(image, slot, hints);
+                    if (result.compareAndSet(null, slotResult)) {
+                        firstOrAll.countDown();
+                    }
+                }
+            } catch (ReaderException re) {
+                // another slot may find it
+            } catch (RuntimeException e) {
+                // a reader must not take down the other slots or the decode thread
+            } finally {
+                finished.countDown();
+                if (finished.getCount() == 0) {
+                    firstOrAll.countDown();
+                }
+            }
+        }
+
+        Result awaitFirst() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    firstOrAll.await();
+                    break;
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            return result.get();
+        }
+    }
+
+    private static final class SlotTask implements Runnable {
+
+        private final Frame frame;
+        private final int slot;
+
+        SlotTask(Frame frame, int slot) {
+            this.frame = frame;
+            this.slot = slot;
+        }
+
+        @Override
+        public void run() {
+            frame.run(slot);
+        }
+    }
+
+}
@@ -0,0 +1,574 @@
+package com.hzy.zxing.decoding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Prepares the Y plane of a preview frame for the readers with a list of stages, each
+ * timed on its own. The list is given per scan session as a spec, see {@link #parse(String)}.
+ * <p>
+ * A stage reads the current plane and writes its output either in place or into the other
+ * of two pooled buffers, which then becomes the current plane. The camera's frame is never
+ * written: a stage that would work in place on it writes into a pooled buffer instead, so
+ * no stage needs a copy of its input.
+ * <p>
+ * Along with the plane, the framing rect is carried through the stages, in the plane's
+ * coordinates: rotating or downsampling the plane moves it, cropping makes it the whole
+ * plane. Stages can therefore come in any order; the earlier the crop, the fewer pixels the
+ * later stages touch.
+ * <p>
+ * The buffers are reused between frames, so an instance belongs to one decode thread, and
+ * the plane of a frame is only valid until the next one is processed.
+ */
+final class PreprocessPipeline {
+
+    /**
+     * Bytes a frame may allocate once the buffers have grown to the frame size; checked by
+     * the unit test PreprocessPipelineTest.
+     */
+    static final int ALLOCATION_BUDGET_BYTES = 0;
+
+    /**
+     * Cut the framing rect out of the landscape frame, then turn it to portrait: the same
+     * plane as rotating the whole frame and cropping, in a fraction of the time.
+     */
+    static final String DEFAULT_SPEC = "crop,rotate";
+
+    static final String CROP = "crop";
+    static final String ROTATE = "rotate";
+    static final String DOWNSAMPLE = "downsample";
+    static final String GAMMA = "gamma";
+    static final String STRETCH = "stretch";
+    static final String INVERT = "invert";
+    static final String DENOISE = "denoise";
+
+    private static final int MAX_DOWNSAMPLE = 4;
+    /**
+     * Share of the darkest and brightest pixels, in 1/1000, left out of a contrast stretch
+     * when the spec does not say.
+     */
+    private static final int DEFAULT_STRETCH_CLIP_PERMILLE = 5;
+
+    /**
+     * One step of the pipeline.
+     */
+    interface Stage {
+
+        /**
+         * @return The name the stage is timed and logged under.
+         */
+        String getName();
+
+        /**
+         * Reads {@link Frame#getData()} and commits its output to the frame.
+         */
+        void apply(Frame frame);
+    }
+
+    private final Stage[] stages;
+    private final long[] stageNanos;
+    private final Frame frame = new Frame();
+    private final float scale;
+    private int frames;
+
+    PreprocessPipeline(List<Stage> stages) {
+        this.stages = stages.toArray(new Stage[stages.size()]);
+        stageNanos = new long[this.stages.length];
+        float product = 1f;
+        for (Stage stage : this.stages) {
+            if (stage instanceof Downsample) {
+                product /= ((Downsample) stage).factor;
+            }
+        }
+        scale = product;
+    }
+
+    /**
+     * Builds a pipeline from a spec: stage names separated by commas, each optionally
+     * followed by a colon and its argument, e.g. "crop,downsample:2,rotate,stretch".
+     * <ul>
+     * <li>crop: cuts the framing rect out of the plane.</li>
+     * <li>rotate: turns the plane 90 degrees clockwise, landscape to portrait.</li>
+     * <li>downsample:n: averages n x n pixels into one, n from 2 to {@value #MAX_DOWNSAMPLE}.</li>
+     * <li>gamma:g: maps luminance v to 255 * (v / 255)^g; below 1 brightens dark labels.</li>
+     * <li>stretch:p: spreads the luminance to the full range, leaving out p per mille of
+     * the darkest and brightest pixels, {@value #DEFAULT_STRETCH_CLIP_PERMILLE} by default.</li>
+     * <li>invert: for light codes on a dark background in every frame.</li>
+     * <li>denoise: a 3x3 binomial blur against sensor noise.</li>
+     * </ul>
+     * The readers expect the portrait framing rect, so a spec without crop gets one in
+     * front, and one without rotate gets one after the crop.
+     *
+     * @param spec The spec, or null or empty for {@link #DEFAULT_SPEC}.
+     * @throws IllegalArgumentException If a stage is unknown or its argument is invalid.
+     */
+    static PreprocessPipeline parse(String spec) {
+        if (spec == null || spec.trim().length() == 0) {
+            spec = DEFAULT_SPEC;
+        }
+        List<Stage> stages = new ArrayList<Stage>();
+        int cropIndex = -1;
+        boolean rotated = false;
+        for (String token : spec.split(",")) {
+            token = token.trim();
+            if (token.length() == 0) {
+                continue;
+            }
+            int colon = token.indexOf(':');
+            String name = (colon < 0 ? token : token.substring(0, colon)).trim().toLowerCase(Locale.US);
+            String argument = colon < 0 ? null : token.substring(colon + 1).trim();
+            if (CROP.equals(name)) {
+                cropIndex = stages.size();
+                stages.add(new Crop());
+            } else if (ROTATE.equals(name)) {
+                rotated = true;
+                stages.add(new Rotate());
+            } else if (DOWNSAMPLE.equals(name)) {
+                int factor = argument == null ? 2 : parseInt(token, argument);
+                if (factor < 2 || factor > MAX_DOWNSAMPLE) {
+                    throw new IllegalArgumentException("Downsampling factor out of range: " + token);
+                }
+                stages.add(new Downsample(factor));
+            } else if (GAMMA.equals(name)) {
+                float gamma = argument == null ? Float.NaN : parseFloat(token, argument);
+                if (!(gamma > 0f)) {
+                    throw new IllegalArgumentException("Gamma needs a positive value: " + token);
+                }
+                stages.add(new Gamma(gamma));
+            } else if (STRETCH.equals(name)) {
+                int clip = argument == null ? DEFAULT_STRETCH_CLIP_PERMILLE : parseInt(token, argument);
+                if (clip < 0 || clip >= 500) {
+                    throw new IllegalArgumentException("Clipped share out of range: " + token);
+                }
+                stages.add(new Stretch(clip));
+            } else if (INVERT.equals(name)) {
+                stages.add(new Invert());
+            } else if (DENOISE.equals(name)) {
+                stages.add(new Denoise());
+            } else {
+                throw new IllegalArgumentException("Unknown preprocessing stage: " + token);
+            }
+        }
+        if (cropIndex < 0) {
+            cropIndex = 0;
+            stages.add(0, new Crop());
+        }
+        if (!rotated) {
+            stages.add(cropIndex + 1, new Rotate());
+        }
+        return new PreprocessPipeline(stages);
+    }
+
+    private static int parseInt(String token, String argument) {
+        try {
+            return Integer.parseInt(argument);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Not a number: " + token);
+        }
+    }
+
+    private static float parseFloat(String token, String argument) {
+        try {
+            return Float.parseFloat(argument);
+        } catch (NumberFormatException nfe) {
+            throw new IllegalArgumentException("Not a number: " + token);
+        }
+    }
+
+    /**
+     * Runs the stages on the Y plane of a frame.
+     *
+     * @param data   The preview frame; only its Y plane is read, and nothing is written.
+     * @param width  The width of the preview frame.
+     * @param height The height of the preview frame.
+     * @return The processed plane, valid until the next call.
+     */
+    Frame process(byte[] data, int width, int height, int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+        frame.reset(data, width, height, cropLeft, cropTop, cropWidth, cropHeight);
+        for (int i = 0; i < stages.length; i++) {
+            long stageStart = System.nanoTime();
+            stages[i].apply(frame);
+            stageNanos[i] += System.nanoTime() - stageStart;
+        }
+        frames++;
+        return frame;
+    }
+
+    /**
+     * @return Pixels of the output per pixel of the framing rect, along each axis: below 1
+     * when downsampling, so result points have to be divided by it.
+     */
+    float getScale() {
+        return scale;
+    }
+
+    /**
+     * Average time per frame of each stage.
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(frames).append(" frames");
+        for (int i = 0; i < stages.length; i++) {
+            builder.append(i == 0 ? ": " : ", ").append(stages[i].getName()).append(' ');
+            builder.append(String.format(Locale.US, "%.2f ms", frames == 0 ? 0.0 : stageNanos[i] / 1e6 / frames));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * The plane passed from stage to stage, with the framing rect in its coordinates and
+     * the two pooled buffers stages write to.
+     */
+    static final class Frame {
+
+        private byte[] data;
+        private int width;
+        private int height;
+        // whether data is one of the pooled buffers, which may be written
+        private boolean owned;
+        private int cropLeft;
+        private int cropTop;
+        private int cropWidth;
+        private int cropHeight;
+        private byte[] front = new byte[0];
+        private byte[] back = new byte[0];
+
+        void reset(byte[] data, int width, int height, int cropLeft, int cropTop, int cropWidth, int cropHeight) {
+            this.data = data;
+            this.width = width;
+            this.height = height;
+            owned = false;
+            setCrop(cropLeft, cropTop, cropWidth, cropHeight);
+        }
+
+        /**
+         * @return The current plane, {@link #getWidth()} * {@link #getHeight()} pixels from
+         * index 0, row by row.
+         */
+        byte[] getData() {
+            return data;
+        }
+
+        int getWidth() {
+            return width;
+        }
+
+        int getHeight() {
+            return height;
+        }
+
+        int getCropLeft() {
+            return cropLeft;
+        }
+
+        int getCropTop() {
+            return cropTop;
+        }
+
+        int getCropWidth() {
+            return cropWidth;
+        }
+
+        int getCropHeight() {
+            return cropHeight;
+        }
+
+        void setCrop(int left, int top, int width, int height) {
+            cropLeft = left;
+            cropTop = top;
+            cropWidth = width;
+            cropHeight = height;
+        }
+
+        /**
+         * The buffer for a stage which never writes a pixel before reading the pixels at
+         * that index and after: the current plane itself, unless that is the camera's frame.
+         */
+        byte[] inPlace(int width, int height) {
+            return owned ? data : pingPong(width, height);
+        }
+
+        /**
+         * The pooled buffer which does not hold the current plane, grown to the given size.
+         */
+        byte[] pingPong(int width, int height) {
+            int area = width * height;
+            if (data == front) {
+                if (back.length < area) {
+                    back = new byte[area];
+                }
+                return back;
+            }
+            if (front.length < area) {
+                front = new byte[area];
+            }
+            return front;
+        }
+
+        /**
+         * Makes a buffer of {@link #inPlace(int, int)} or {@link #pingPong(int, int)} the
+         * current plane.
+         */
+        void commit(byte[] plane, int width, int height) {
+            data = plane;
+            this.width = width;
+            this.height = height;
+            owned = true;
+        }
+    }
+
+    private static final class Crop implements Stage {
+
+        public String getName() {
+            return CROP;
+        }
+
+        public void apply(Frame frame) {
+            int width = frame.getWidth();
+            int cropWidth = frame.getCropWidth();
+            int cropHeight = frame.getCropHeight();
+            if (cropWidth == width && cropHeight == frame.getHeight()) {
+                return;
+            }
+            byte[] data = frame.getData();
+            // each row moves towards the start of the plane, so rows can be moved in place
+            byte[] cropped = frame.inPlace(cropWidth, cropHeight);
+            int offset = frame.getCropTop() * width + frame.getCropLeft();
+            for (int y = 0; y < cropHeight; y++) {
+                System.arraycopy(data, offset, cropped, y * cropWidth, cropWidth);
+                offset += width;
+            }
+            frame.commit(cropped, cropWidth, cropHeight);
+            frame.setCrop(0, 0, cropWidth, cropHeight);
+        }
+    }
+
+    private static final class Rotate implements Stage {
+
+        public String getName() {
+            return ROTATE;
+        }
+
+        public void apply(Frame frame) {
+            int width = frame.getWidth();
+            int height = frame.getHeight();
+            byte[] rotated = frame.pingPong(height, width);
+            rotate(frame.getData(), rotated, width, height);
+            // (x, y) becomes (height - 1 - y, x)
+            frame.setCrop(height - frame.getCropTop() - frame.getCropHeight(), frame.getCropLeft(),
+                    frame.getCropHeight(), frame.getCropWidth());
+            frame.commit(rotated, height, width);
+        }
+    }
+
+    /**
+     * Rotates the Y plane of a landscape preview frame by 90 degrees clockwise into portrait.
+     *
+     * @param data    The YUV preview frame.
+     * @param rotated Receives the rotated Y plane, at least width * height long.
+     * @param width   The width of the preview frame.
+     * @param height  The height of the preview frame.
+     */
+    static void rotate(byte[] data, byte[] rotated, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++)
+                rotated[x * height + height - y - 1] = data[x + y * width];
+        }
+    }
+
+    private static final class Downsample implements Stage {
+
+        private final int factor;
+
+        Downsample(int factor) {
+            this.factor = factor;
+        }
+
+        public String getName() {
+            return DOWNSAMPLE;
+        }
+
+        public void apply(Frame frame) {
+            int width = frame.getWidth();
+            int outWidth = width / factor;
+            int outHeight = frame.getHeight() / factor;
+            byte[] data = frame.getData();
+            // an output pixel is written after all of its block was read, and before any later block
+            byte[] out = frame.inPlace(outWidth, outHeight);
+            int area = factor * factor;
+            for (int y = 0; y < outHeight; y++) {
+                for (int x = 0; x < outWidth; x++) {
+                    int sum = 0;
+                    int offset = y * factor * width + x * factor;
+                    for (int dy = 0; dy < factor; dy++) {
+                        for (int dx = 0; dx < factor; dx++) {
+                            sum += data[offset + dx] & 0xff;
+                        }
+                        offset += width;
+                    }
+                    out[y * outWidth + x] = (byte) ((sum + area / 2) / area);
+                }
+            }
+            frame.commit(out, outWidth, outHeight);
+            int left = frame.getCropLeft() / factor;
+            int top = frame.getCropTop() / factor;
+            frame.setCrop(left, top, Math.min(outWidth - left, frame.getCropWidth() / factor),
+                    Math.min(outHeight - top, frame.getCropHeight() / factor));
+        }
+    }
+
+    /**
+     * Maps every pixel through a table, in place.
+     */
+    private static void applyTable(Frame frame, byte[] table) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        byte[] data = frame.getData();
+        byte[] out = frame.inPlace(width, height);
+        int area = width * height;
+        for (int i = 0; i < area; i++) {
+            out[i] = table[data[i] & 0xff];
+        }
+        frame.commit(out, width, height);
+    }
+
+    private static final class Gamma implements Stage {
+
+        private final byte[] table = new byte[256];
+
+        Gamma(float gamma) {
+            for (int i = 0; i < 256; i++) {
+                table[i] = (byte) Math.round(255.0 * Math.pow(i / 255.0, gamma));
+            }
+        }
+
+        public String getName() {
+            return GAMMA;
+        }
+
+        public void apply(Frame frame) {
+            applyTable(frame, table);
+        }
+    }
+
+    private static final class Stretch implements Stage {
+
+        private final int clipPermille;
+        private final int[] histogram = new int[256];
+        private final byte[] table = new byte[256];
+
+        Stretch(int clipPermille) {
+            this.clipPermille = clipPermille;
+        }
+
+        public String getName() {
+            return STRETCH;
+        }
+
+        /**
+         * Only the framing rect is measured, so a bright or dark surrounding does not set
+         * the range.
+         */
+        public void apply(Frame frame) {
+            int[] localHistogram = histogram;
+            for (int i = 0; i < 256; i++) {
+                localHistogram[i] = 0;
+            }
+            byte[] data = frame.getData();
+            int width = frame.getWidth();
+            int cropWidth = frame.getCropWidth();
+            int cropHeight = frame.getCropHeight();
+            for (int y = 0; y < cropHeight; y++) {
+                int offset = (frame.getCropTop() + y) * width + frame.getCropLeft();
+                for (int x = 0; x < cropWidth; x++) {
+                    localHistogram[data[offset + x] & 0xff]++;
+                }
+            }
+            int clip = (int) ((long) cropWidth * cropHeight * clipPermille / 1000);
+            int low = 0;
+            for (int count = 0; low < 255 && count + localHistogram[low] <= clip; low++) {
+                count += localHistogram[low];
+            }
+            int high = 255;
+            for (int count = 0; high > low && count + localHistogram[high] <= clip; high--) {
+                count += localHistogram[high];
+            }
+            if (high - low >= 255 || high == low) {
+                // already full range, or flat
+                return;
+            }
+            int range = high - low;
+            for (int i = 0; i < 256; i++) {
+                int value = (i - low) * 255 / range;
+                table[i] = (byte) Math.min(255, Math.max(0, value));
+            }
+            applyTable(frame, table);
+        }
+    }
+
+    private static final class Invert implements Stage {
+
+        public String getName() {
+            return INVERT;
+        }
+
+        public void apply(Frame frame) {
+            int width = frame.getWidth();
+            int height = frame.getHeight();
+            byte[] data = frame.getData();
+            byte[] out = frame.inPlace(width, height);
+            int area = width * height;
+            for (int i = 0; i < area; i++) {
+                out[i] = (byte) (255 - (data[i] & 0xff));
+            }
+            frame.commit(out, width, height);
+        }
+    }
+
+    /**
+     * 1 2 1 by 1 2 1, which halves noise while a module edge of a few pixels survives;
+     * the border pixels are copied.
+     */
+    private static final class Denoise implements Stage {
+
+        public String getName() {
+            return DENOISE;
+        }
+
+        public void apply(Frame frame) {
+            int width = frame.getWidth();
+            int height = frame.getHeight();
+            byte[] data = frame.getData();
+            byte[] out = frame.pingPong(width, height);
+            if (width < 3 || height < 3) {
+                System.arraycopy(data, 0, out, 0, width * height);
+                frame.commit(out, width, height);
+                return;
+            }
+            System.arraycopy(data, 0, out, 0, width);
+            System.arraycopy(data, (height - 1) * width, out, (height - 1) * width, width);
+            for (int y = 1; y < height - 1; y++) {
+                int offset = y * width;
+                out[offset] = data[offset];
+                out[offset + width - 1] = data[offset + width - 1];
+                // column sums of the three rows, sliding along the row
+                int left = column(data, offset - width, width);
+                int middle = column(data, offset + 1 - width, width);
+                for (int x = 1; x < width - 1; x++) {
+                    int right = column(data, offset + x + 1 - width, width);
+                    out[offset + x] = (byte) ((left + 2 * middle + right + 8) >> 4);
+                    left = middle;
+                    middle = right;
+                }
+            }
+            frame.commit(out, width, height);
+        }
+
+        private static int column(byte[] data, int top, int width) {
+            return (data[top] & 0xff) + 2 * (data[top + width] & 0xff) + (data[top + 2 * width] & 0xff);
+        }
+    }
+
+}
@@ -0,0 +1,187 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sauvola's local threshold, computed in constant time per pixel from integral images of
+ * the luminance and of its square: a pixel is black when it is darker than
+ * {@code mean * (1 + K * (deviation / R - 1))} over a window around it. Unlike one global
+ * threshold it follows shadows and gradients, and since flat areas have a low deviation,
+ * glare does not turn into noise.
+ * <p>
+ * Both integral images are built in one pass. On large crops the thresholding is split
+ * into row bands, run on a shared pool and on the calling thread. ForkJoinPool needs API
+ * 21, so the pool is a plain fixed executor and the bands are joined with a latch.
+ * <p>
+ * The integral images are reused between frames, so an instance belongs to one worker.
+ */
+final class SauvolaThreshold {
+
+    private static final double K = 0.2;
+    private static final double R = 128.0;
+    /**
+     * The window is about an eighth of the shorter side, and never smaller than this.
+     */
+    private static final int MIN_RADIUS = 8;
+    private static final int PARALLEL_MIN_AREA = 200 * 1000;
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    /**
+     * Bytes a frame may allocate here: the latch, and a task and its queue entry per row
+     * band when the bands run in parallel. Checked by the unit test BinarizationStageTest.
+     */
+    static final int ALLOCATION_BUDGET_BYTES = 64 + 96 * THREADS;
+
+    private static ExecutorService bandExecutor;
+
+    private int[] sums = new int[0];
+    private long[] squares = new long[0];
+
+    /**
+     * Thresholds the luminances into the matrix, which must be cleared.
+     */
+    void threshold(byte[] luminances, int width, int height, BitMatrix matrix) {
+        buildIntegralImages(luminances, width, height);
+        int radius = Math.max(MIN_RADIUS, Math.min(width, height) >> 4);
+        if (width * height < PARALLEL_MIN_AREA || THREADS == 1) {
+            thresholdRows(luminances, width, height, radius, matrix, 0, height);
+            return;
+        }
+        int bands = THREADS + 1;
+        CountDownLatch done = new CountDownLatch(bands - 1);
+        ExecutorService executor = getBandExecutor();
+        for (int band = 1; band < bands; band++) {
+            executor.execute(new Band(luminances, width, height, radius, matrix,
+                    height * band / bands, height * (band + 1) / bands, done));
+        }
+        thresholdRows(luminances, width, height, radius, matrix, 0, height / bands);
+        // the bands write into the matrix, so they must be finished even if interrupted
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static synchronized ExecutorService getBandExecutor() {
+        if (bandExecutor == null) {
+            bandExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "BinarizerBand");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return bandExecutor;
+    }
+
+    /**
+     * Entry (x, y) of the images, with a zero first row and column, holds the sum over
+     * all pixels above and left of pixel (x, y).
+     */
+    private void buildIntegralImages(byte[] luminances, int width, int height) {
+        int stride = width + 1;
+        int size = stride * (height + 1);
+        if (sums.length < size) {
+            sums = new int[size];
+            squares = new long[size];
+        }
+        int[] localSums = sums;
+        long[] localSquares = squares;
+        for (int x = 0; x < stride; x++) {
+            localSums[x] = 0;
+            localSquares[x] = 0L;
+        }
+        for (int y = 0; y < height; y++) {
+            int rowSum = 0;
+            long rowSquare = 0L;
+            int offset = (y + 1) * stride;
+            int input = y * width;
+            localSums[offset] = 0;
+            localSquares[offset] = 0L;
+            for (int x = 0; x < width; x++) {
+                int pixel = luminances[input + x] & 0xff;
+                rowSum += pixel;
+                rowSquare += pixel * pixel;
+                localSums[offset + x + 1] = localSums[offset - stride + x + 1] + rowSum;
+                localSquares[offset + x + 1] = localSquares[offset - stride + x + 1] + rowSquare;
+            }
+        }
+    }
+
+    private void thresholdRows(byte[] luminances, int width, int height, int radius, BitMatrix matrix, int fromRow, int toRow) {
+        int[] localSums = sums;
+        long[] localSquares = squares;
+        int stride = width + 1;
+        for (int y = fromRow; y < toRow; y++) {
+            int top = Math.max(0, y - radius) * stride;
+            int bottom = Math.min(height, y + radius + 1) * stride;
+            int rows = (bottom - top) / stride;
+            int input = y * width;
+            for (int x = 0; x < width; x++) {
+                int left = Math.max(0, x - radius);
+                int right = Math.min(width, x + radius + 1);
+                long count = rows * (right - left);
+                long sum = localSums[bottom + right] - localSums[bottom + left] - localSums[top + right] + localSums[top + left];
+                long square = localSquares[bottom + right] - localSquares[bottom + left]
+                        - localSquares[top + right] + localSquares[top + left];
+                // pixel < mean * (1 - K + K * deviation / R), multiplied out by count * R so
+                // that neither a division nor a square root is needed per pixel
+                double excess = ((luminances[input + x] & 0xff) * count - sum * (1.0 - K)) * R;
+                if (excess < 0.0) {
+                    matrix.set(x, y);
+                } else {
+                    double scaled = K * sum;
+                    if (excess * excess * count * count < scaled * scaled * (square * count - sum * sum)) {
+                        matrix.set(x, y);
+                    }
+                }
+            }
+        }
+    }
+
+    private final class Band implements Runnable {
+
+        private final byte[] luminances;
+        private final int width;
+        private final int height;
+        private final int radius;
+        private final BitMatrix matrix;
+        private final int fromRow;
+        private final int toRow;
+        private final CountDownLatch done;
+
+        Band(byte[] luminances, int width, int height, int radius, BitMatrix matrix, int fromRow, int toRow, CountDownLatch done) {
+            this.luminances = luminances;
+            this.width = width;
+            this.height = height;
+            this.radius = radius;
+            this.matrix = matrix;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                thresholdRows(luminances, width, height, radius, matrix, fromRow, toRow);
+            } finally {
+                done.countDown();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,294 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.ReaderException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultMetadataType;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.DetectorResult;
+import com.google.zxing.multi.qrcode.detector.MultiDetector;
+import com.google.zxing.qrcode.decoder.Decoder;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+
+/**
+ * Puts together QR codes whose payload was split into several symbols with Structured
+ * Append. Each symbol carries its position, the number of symbols and a parity byte, the
+ * XOR of the whole payload. Fragments are collected per parity and symbol count, from one
+ * frame or many, until all positions are filled; then the payload is returned as one
+ * result.
+ * <p>
+ * When a frame shows one fragment, the others are often in view as well, so
+ * {@link #addAll} looks for every QR code in the frame. This also reads frames on which
+ * the other symbols keep a single-code reader from finding any of them. ZXing's own
+ * {@link com.google.zxing.multi.qrcode.QRCodeMultiReader} joins whatever fragments it
+ * finds without checking that the set is complete and drops their sequence numbers, so
+ * its detector and decoder are used directly.
+ * <p>
+ * At most {@link #MAX_SETS} sets are collected at once, the one which has not grown for
+ * the longest is dropped for a new one, and a set expires {@link #EXPIRY_MS} after its
+ * last new fragment.
+ * <p>
+ * Used on the decode thread only; the statistics may be read from any thread.
+ */
+final class StructuredAppendCollector {
+
+    private static final int MAX_SETS = 4;
+    private static final long EXPIRY_MS = 30 * 1000L;
+    private static final ResultPoint[] NO_POINTS = new ResultPoint[0];
+
+    private final Decoder decoder = new Decoder();
+    private final Fragments[] sets = new Fragments[MAX_SETS];
+    private int received;
+    private int total;
+
+    private int fragmentsRead;
+    private int fragmentsCollected;
+    private int completed;
+    private int expired;
+    private int parityMismatches;
+
+    /**
+     * @return Whether the result is one symbol of a Structured Append set.
+     */
+    static boolean isFragment(Result result) {
+        Map<ResultMetadataType, Object> metadata = result.getResultMetadata();
+        return metadata != null && metadata.containsKey(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE)
+                && metadata.containsKey(ResultMetadataType.STRUCTURED_APPEND_PARITY);
+    }
+
+    /**
+     * Adds a fragment, see {@link #isFragment}. A fragment already collected is ignored.
+     *
+     * @return The whole payload if this fragment completed its set, otherwise null.
+     */
+    synchronized Result add(Result fragment) {
+        Map<ResultMetadataType, Object> metadata = fragment.getResultMetadata();
+        int sequence = (Integer) metadata.get(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE);
+        int parity = (Integer) metadata.get(ResultMetadataType.STRUCTURED_APPEND_PARITY);
+        // high nibble: position, low nibble: number of symbols - 1
+        int position = (sequence >> 4) & 0x0F;
+        int count = (sequence & 0x0F) + 1;
+        if (position >= count) {
+            return null;
+        }
+        long now = System.nanoTime();
+        Fragments set = find(parity, count, now);
+        fragmentsRead++;
+        if (set.texts[position] == null) {
+            set.texts[position] = fragment.getText();
+            set.rawBytes[position] = fragment.getRawBytes();
+            set.received++;
+            set.lastAdded = now;
+            fragmentsCollected++;
+        }
+        received = set.received;
+        total = count;
+        if (set.received < count) {
+            return null;
+        }
+        remove(set);
+        completed++;
+        return assemble(set);
+    }
+
+    /**
+     * Adds the fragments of all QR codes in the image.
+     *
+     * @return The whole payload if one of them completed its set, otherwise null.
+     */
+    Result addAll(BinaryBitmap image, Map<DecodeHintType, ?> hints) {
+        DetectorResult[] detected;
+        try {
+            detected = new MultiDetector(image.getBlackMatrix()).detectMulti(hints);
+        } catch (ReaderException re) {
+            return null;
+        }
+        for (DetectorResult symbol : detected) {
+            DecoderResult decoded;
+            try {
+                decoded = decoder.decode(symbol.getBits(), hints);
+            } catch (ReaderException re) {
+                continue;
+            }
+            if (!decoded.hasStructuredAppend()) {
+                continue;
+            }
+            Result fragment = new Result(decoded.getText(), decoded.getRawBytes(), symbol.getPoints(), BarcodeFormat.QR_CODE);
+            fragment.putMetadata(ResultMetadataType.STRUCTURED_APPEND_SEQUENCE, decoded.getStructuredAppendSequenceNumber());
+            fragment.putMetadata(ResultMetadataType.STRUCTURED_APPEND_PARITY, decoded.getStructuredAppendParity());
+            Result assembled = add(fragment);
+            if (assembled != null) {
+                return assembled;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Whether a set is waiting for more fragments.
+     */
+    synchronized boolean isCollecting() {
+        long now = System.nanoTime();
+        for (Fragments set : sets) {
+            if (set != null && !isExpired(set, now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Fragments passed to {@link #add} so far, including those already collected.
+     */
+    synchronized int getFragmentsRead() {
+        return fragmentsRead;
+    }
+
+    /**
+     * @return Fragments which were new to their set so far.
+     */
+    synchronized int getFragmentsCollected() {
+        return fragmentsCollected;
+    }
+
+    /**
+     * @return Fragments of the set the last fragment belonged to.
+     */
+    synchronized int getReceived() {
+        return received;
+    }
+
+    /**
+     * @return Number of symbols of the set the last fragment belonged to.
+     */
+    synchronized int getTotal() {
+        return total;
+    }
+
+    /**
+     * Drops all fragments collected so far.
+     */
+    synchronized void clear() {
+        for (int i = 0; i < MAX_SETS; i++) {
+            sets[i] = null;
+        }
+        received = 0;
+        total = 0;
+    }
+
+    private Fragments find(int parity, int count, long now) {
+        int free = -1;
+        int oldest = 0;
+        for (int i = 0; i < MAX_SETS; i++) {
+            Fragments set = sets[i];
+            if (set != null && isExpired(set, now)) {
+                sets[i] = null;
+                set = null;
+                expired++;
+            }
+            if (set == null) {
+                if (free < 0) {
+                    free = i;
+                }
+            } else if (set.parity == parity && set.texts.length == count) {
+                return set;
+            } else if (sets[oldest] == null || set.lastAdded < sets[oldest].lastAdded) {
+                oldest = i;
+            }
+        }
+        int slot = free >= 0 ? free : oldest;
+        if (sets[slot] != null) {
+            expired++;
+        }
+        Fragments set = new Fragments(parity, count, now);
+        sets[slot] = set;
+        return set;
+    }
+
+    private static boolean isExpired(Fragments set, long now) {
+        return (now - set.lastAdded) / 1000000L > EXPIRY_MS;
+    }
+
+    private void remove(Fragments done) {
+        for (int i = 0; i < MAX_SETS; i++) {
+            if (sets[i] == done) {
+                sets[i] = null;
+            }
+        }
+    }
+
+    private Result assemble(Fragments set) {
+        StringBuilder text = new StringBuilder();
+        int rawLength = 0;
+        for (int i = 0; i < set.texts.length; i++) {
+            text.append(set.texts[i]);
+            rawLength += set.rawBytes[i] == null ? 0 : set.rawBytes[i].length;
+        }
+        byte[] rawBytes = new byte[rawLength];
+        int offset = 0;
+        for (byte[] part : set.rawBytes) {
+            if (part != null) {
+                System.arraycopy(part, 0, rawBytes, offset, part.length);
+                offset += part.length;
+            }
+        }
+        String payload = text.toString();
+        if (!parityMatches(payload, set.parity)) {
+            // the encoding of the original payload is unknown, so this is only counted
+            parityMismatches++;
+        }
+        Result result = new Result(payload, rawBytes, NO_POINTS, BarcodeFormat.QR_CODE);
+        result.putMetadata(ResultMetadataType.STRUCTURED_APPEND_PARITY, set.parity);
+        return result;
+    }
+
+    /**
+     * The parity is taken over the bytes of the payload as it was encoded, which is
+     * usually ISO-8859-1, or UTF-8 for other text.
+     */
+    private static boolean parityMatches(String payload, int parity) {
+        return xor(payload, "ISO-8859-1") == parity || xor(payload, "UTF-8") == parity;
+    }
+
+    private static int xor(String payload, String charset) {
+        byte[] bytes;
+        try {
+            bytes = payload.getBytes(charset);
+        } catch (UnsupportedEncodingException uee) {
+            return -1;
+        }
+        int parity = 0;
+        for (byte b : bytes) {
+            parity ^= b & 0xFF;
+        }
+        return parity;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "read=" + fragmentsRead + " collected=" + fragmentsCollected
+                + " completed=" + completed + " expired=" + expired + " parityMismatches=" + parityMismatches;
+    }
+
+    private static final class Fragments {
+
+        private final int parity;
+        private final String[] texts;
+        private final byte[][] rawBytes;
+        private int received;
+        private long lastAdded;
+
+        Fragments(int parity, int count, long now) {
+            this.parity = parity;
+            texts = new String[count];
+            rawBytes = new byte[count][];
+            lastAdded = now;
+        }
+    }
+
+}
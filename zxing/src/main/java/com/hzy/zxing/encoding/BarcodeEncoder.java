@@ -0,0 +1,388 @@
+package com.hzy.zxing.encoding;
+
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.provider.ContactsContract;
+import android.util.LruCache;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.MultiFormatWriter;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.hzy.zxing.decoding.Intents;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 生成二维码/条码图片
+ * <p>
+ * Renders barcodes into bitmaps one row at a time: a row of pixels is built in an
+ * {@code int[]} reused per thread and written with a single {@link Bitmap#setPixels}
+ * call, and rows identical to the previous one, which is most of them since a module
+ * is several pixels tall, are written again without being rebuilt.
+ * <p>
+ * Bitmaps are kept in an LRU cache keyed by contents, format, size and error correction
+ * level, bounded by their size in bytes. Cached bitmaps are shared, so callers must not
+ * recycle or modify them. {@link #encodeAll} renders many codes on a background executor.
+ */
+public final class BarcodeEncoder {
+
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private static final ThreadLocal<int[]> ROW_BUFFER = new ThreadLocal<int[]>();
+
+    /**
+     * Receives the results of {@link #encodeAll}, on a background thread.
+     */
+    public interface Callback {
+        void onEncoded(String contents, Bitmap bitmap);
+
+        void onError(String contents, WriterException e);
+    }
+
+    private final MultiFormatWriter writer = new MultiFormatWriter();
+    private final LruCache<Key, Bitmap> cache;
+    private final Bitmap.Config config;
+    private final int foreground;
+    private final int background;
+    private ExecutorService executor;
+
+    /**
+     * Black on white ARGB_8888 bitmaps, with an eighth of the heap for the cache.
+     */
+    public BarcodeEncoder() {
+        this((int) Math.min(Runtime.getRuntime().maxMemory() / 8, Integer.MAX_VALUE), Bitmap.Config.ARGB_8888, BLACK, WHITE);
+    }
+
+    /**
+     * @param cacheBytes Upper bound of the memory used by cached bitmaps.
+     * @param config     Bitmap config; {@link Bitmap.Config#ALPHA_8} takes a quarter of the
+     *                   memory of ARGB_8888 and ignores the colors: dark modules are opaque
+     *                   and light ones transparent, to be drawn with a Paint of any color.
+     * @param foreground Color of the dark modules.
+     * @param background Color of the light modules and the quiet zone.
+     */
+    public BarcodeEncoder(int cacheBytes, Bitmap.Config config, int foreground, int background) {
+        this.config = config;
+        boolean alphaOnly = config == Bitmap.Config.ALPHA_8;
+        this.foreground = alphaOnly ? BLACK : foreground;
+        this.background = alphaOnly ? 0 : background;
+        cache = new LruCache<Key, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Encodes a QR code with the default error correction level.
+     */
+    public Bitmap encode(String contents, int size) throws WriterException {
+        return encode(contents, BarcodeFormat.QR_CODE, size, size, null);
+    }
+
+    /**
+     * Encodes what an {@link Intents.Encode#ACTION} intent asks for: the data in
+     * {@link Intents.Encode#DATA}, as {@link Intents.Encode#FORMAT} or QR Code. For QR Code,
+     * {@link Intents.Encode#TYPE} is one of {@link Contents.Type} and says how the data is
+     * turned into the payload, e.g. a contact Bundle into a MECARD; other formats only
+     * take text.
+     *
+     * @throws WriterException If there is no data, or the format or type is not supported.
+     */
+    public Bitmap encode(Intent intent, int size) throws WriterException {
+        String formatString = intent.getStringExtra(Intents.Encode.FORMAT);
+        BarcodeFormat format = BarcodeFormat.QR_CODE;
+        if (formatString != null && formatString.length() > 0) {
+            try {
+                format = BarcodeFormat.valueOf(formatString);
+            } catch (IllegalArgumentException iae) {
+                throw new WriterException("Unknown format " + formatString);
+            }
+        }
+        String type = intent.getStringExtra(Intents.Encode.TYPE);
+        String contents;
+        if (type == null || type.length() == 0 || Contents.Type.TEXT.equals(type)) {
+            contents = intent.getStringExtra(Intents.Encode.DATA);
+        } else if (format != BarcodeFormat.QR_CODE) {
+            throw new WriterException("Type " + type + " can only be encoded as a QR Code");
+        } else {
+            contents = encodeType(type, intent);
+        }
+        if (contents == null || contents.length() == 0) {
+            throw new WriterException("No contents to encode");
+        }
+        return encode(contents, format, size, size, null);
+    }
+
+    /**
+     * @return The QR Code payload for data of the given type, or null if there is no data.
+     */
+    private static String encodeType(String type, Intent intent) throws WriterException {
+        if (Contents.Type.CONTACT.equals(type)) {
+            return encodeContact(intent.getBundleExtra(Intents.Encode.DATA));
+        }
+        if (Contents.Type.LOCATION.equals(type)) {
+            Bundle bundle = intent.getBundleExtra(Intents.Encode.DATA);
+            if (bundle == null) {
+                return null;
+            }
+            float latitude = bundle.getFloat(Contents.LATITUDE_KEY, Float.MAX_VALUE);
+            float longitude = bundle.getFloat(Contents.LONGITUDE_KEY, Float.MAX_VALUE);
+            if (latitude == Float.MAX_VALUE || longitude == Float.MAX_VALUE) {
+                return null;
+            }
+            return "geo:" + latitude + ',' + longitude;
+        }
+        String data = intent.getStringExtra(Intents.Encode.DATA);
+        if (data == null || data.trim().length() == 0) {
+            return null;
+        }
+        data = data.trim();
+        if (Contents.Type.URL.equals(type)) {
+            return data.contains("://") ? data : "http://" + data;
+        }
+        if (Contents.Type.EMAIL.equals(type)) {
+            return "mailto:" + data;
+        }
+        if (Contents.Type.PHONE.equals(type)) {
+            return "tel:" + data;
+        }
+        if (Contents.Type.SMS.equals(type)) {
+            return "sms:" + data;
+        }
+        throw new WriterException("Unsupported type " + type);
+    }
+
+    /**
+     * @return A MECARD of the contact, or null if none of its fields is set.
+     */
+    private static String encodeContact(Bundle bundle) {
+        if (bundle == null) {
+            return null;
+        }
+        StringBuilder mecard = new StringBuilder(100);
+        mecard.append("MECARD:");
+        int fields = appendField(mecard, "N", bundle.getString(ContactsContract.Intents.Insert.NAME));
+        fields += appendField(mecard, "ORG", bundle.getString(ContactsContract.Intents.Insert.COMPANY));
+        fields += appendField(mecard, "ADR", bundle.getString(ContactsContract.Intents.Insert.POSTAL));
+        for (String key : Contents.PHONE_KEYS) {
+            fields += appendField(mecard, "TEL", bundle.getString(key));
+        }
+        for (String key : Contents.EMAIL_KEYS) {
+            fields += appendField(mecard, "EMAIL", bundle.getString(key));
+        }
+        fields += appendField(mecard, "URL", bundle.getString(Contents.URL_KEY));
+        fields += appendField(mecard, "NOTE", bundle.getString(Contents.NOTE_KEY));
+        return fields == 0 ? null : mecard.append(';').toString();
+    }
+
+    /**
+     * @return 1 if the field was added, 0 if the value is empty.
+     */
+    private static int appendField(StringBuilder mecard, String name, String value) {
+        if (value == null || value.trim().length() == 0) {
+            return 0;
+        }
+        mecard.append(name).append(':');
+        String trimmed = value.trim();
+        for (int i = 0; i < trimmed.length(); i++) {
+            char c = trimmed.charAt(i);
+            if (c == '\\' || c == ';' || c == ',' || c == ':') {
+                mecard.append('\\');
+            } else if (c == '\n' || c == '\r') {
+                c = ' ';
+            }
+            mecard.append(c);
+        }
+        mecard.append(';');
+        return 1;
+    }
+
+    /**
+     * Returns the cached bitmap of this code, or renders and caches it.
+     *
+     * @param level Error correction level of QR codes, or null for the default.
+     */
+    public Bitmap encode(String contents, BarcodeFormat format, int width, int height, ErrorCorrectionLevel level)
+            throws WriterException {
+        Key key = new Key(contents, format, width, height, level);
+        Bitmap bitmap = cache.get(key);
+        if (bitmap == null) {
+            bitmap = render(encodeMatrix(contents, format, width, height, level));
+            cache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Renders the codes one after another on a background thread. Each bitmap is passed
+     * to the callback and cached.
+     *
+     * @return Completes when all codes are done; cancel it to stop early.
+     */
+    public Future<?> encodeAll(final List<String> contents, final BarcodeFormat format, final int width, final int height,
+                               final ErrorCorrectionLevel level, final Callback callback) {
+        return getExecutor().submit(new Runnable() {
+            public void run() {
+                for (String content : contents) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    try {
+                        callback.onEncoded(content, encode(content, format, width, height, level));
+                    } catch (WriterException we) {
+                        callback.onError(content, we);
+                    }
+                }
+            }
+        });
+    }
+
+    private synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new EncoderThreadFactory());
+        }
+        return executor;
+    }
+
+    /**
+     * Drops all cached bitmaps.
+     */
+    public void evictAll() {
+        cache.evictAll();
+    }
+
+    /**
+     * Stops the batch executor, if it was started.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private BitMatrix encodeMatrix(String contents, BarcodeFormat format, int width, int height, ErrorCorrectionLevel level)
+            throws WriterException {
+        Map<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+        if (level != null) {
+            hints.put(EncodeHintType.ERROR_CORRECTION, level);
+        }
+        if (!isAscii(contents)) {
+            hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        }
+        try {
+            return writer.encode(contents, format, width, height, hints);
+        } catch (IllegalArgumentException iae) {
+            // e.g. contents a 1D format cannot encode
+            throw new WriterException(iae.getMessage());
+        }
+    }
+
+    private Bitmap render(BitMatrix matrix) {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        Bitmap bitmap = Bitmap.createBitmap(width, height, config);
+        int[] pixels = ROW_BUFFER.get();
+        if (pixels == null || pixels.length < width) {
+            pixels = new int[width];
+            ROW_BUFFER.set(pixels);
+        }
+        BitArray row = new BitArray(width);
+        BitArray previous = new BitArray(width);
+        for (int y = 0; y < height; y++) {
+            row = matrix.getRow(y, row);
+            if (y == 0 || !sameBits(row, previous)) {
+                for (int x = 0; x < width; x++) {
+                    pixels[x] = row.get(x) ? foreground : background;
+                }
+                BitArray swap = previous;
+                previous = row;
+                row = swap;
+            }
+            bitmap.setPixels(pixels, 0, width, 0, y, width, 1);
+        }
+        return bitmap;
+    }
+
+    private static boolean sameBits(BitArray a, BitArray b) {
+        int[] aBits = a.getBitArray();
+        int[] bBits = b.getBitArray();
+        for (int i = 0; i < aBits.length; i++) {
+            if (aBits[i] != bBits[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String contents) {
+        for (int i = 0; i < contents.length(); i++) {
+            if (contents.charAt(i) > 0x7F) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Key {
+
+        private final String contents;
+        private final BarcodeFormat format;
+        private final int width;
+        private final int height;
+        private final ErrorCorrectionLevel level;
+        private final int hashCode;
+
+        Key(String contents, BarcodeFormat format, int width, int height, ErrorCorrectionLevel level) {
+            this.contents = contents;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.level = level;
+            int hash = contents.hashCode();
+            hash = 31 * hash + format.hashCode();
+            hash = 31 * hash + width;
+            hash = 31 * hash + height;
+            hash = 31 * hash + (level == null ? 0 : level.hashCode());
+            hashCode = hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return width == other.width && height == other.height && format == other.format && level == other.level
+                    && contents.equals(other.contents);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    private static final class EncoderThreadFactory implements ThreadFactory {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BarcodeEncoder");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
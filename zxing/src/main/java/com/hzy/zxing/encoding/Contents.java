@@ -0,0 +1,94 @@
+package com.hzy.zxing.encoding;
+
+import android.provider.ContactsContract;
+
+/**
+ * The kinds of data an {@link com.hzy.zxing.decoding.Intents.Encode#ACTION} intent can
+ * ask to be encoded as a QR Code, and the keys of the Bundles some of them come in.
+ */
+public final class Contents {
+
+    private Contents() {
+    }
+
+    public static final class Type {
+
+        /**
+         * Plain text. Use Intent.putExtra(DATA, string). This can be used for URLs too, but
+         * string must include "http://" or "https://".
+         */
+        public static final String TEXT = "TEXT_TYPE";
+
+        /**
+         * A URL. Use Intent.putExtra(DATA, string); without a scheme, "http://" is assumed.
+         */
+        public static final String URL = "URL_TYPE";
+
+        /**
+         * An email type. Use Intent.putExtra(DATA, string) where string is the email address.
+         */
+        public static final String EMAIL = "EMAIL_TYPE";
+
+        /**
+         * Use Intent.putExtra(DATA, string) where string is the phone number to call.
+         */
+        public static final String PHONE = "PHONE_TYPE";
+
+        /**
+         * An SMS type. Use Intent.putExtra(DATA, string) where string is the number to SMS.
+         */
+        public static final String SMS = "SMS_TYPE";
+
+        /**
+         * A contact. Send a request to encode it as follows:
+         * <p>
+         * Bundle bundle = new Bundle();
+         * bundle.putString(ContactsContract.Intents.Insert.NAME, "Jenny");
+         * bundle.putString(ContactsContract.Intents.Insert.PHONE, "8675309");
+         * bundle.putString(ContactsContract.Intents.Insert.EMAIL, "jenny@the80s.com");
+         * bundle.putString(ContactsContract.Intents.Insert.POSTAL, "123 Fake St. San Francisco, CA 94102");
+         * intent.putExtra(DATA, bundle);
+         * <p>
+         * Up to three phone numbers and email addresses are read, see {@link #PHONE_KEYS}
+         * and {@link #EMAIL_KEYS}, and a web site under {@link #URL_KEY}.
+         */
+        public static final String CONTACT = "CONTACT_TYPE";
+
+        /**
+         * A geographic location. Use as follows:
+         * Bundle bundle = new Bundle();
+         * bundle.putFloat("LAT", latitude);
+         * bundle.putFloat("LONG", longitude);
+         * intent.putExtra(DATA, bundle);
+         */
+        public static final String LOCATION = "LOCATION_TYPE";
+
+        private Type() {
+        }
+    }
+
+    public static final String URL_KEY = "URL_KEY";
+
+    public static final String NOTE_KEY = "NOTE_KEY";
+
+    public static final String LATITUDE_KEY = "LAT";
+
+    public static final String LONGITUDE_KEY = "LONG";
+
+    /**
+     * When using Type.CONTACT, these arrays provide the keys for adding or retrieving multiple
+     * phone numbers and addresses.
+     */
+    public static final String[] PHONE_KEYS = {
+            ContactsContract.Intents.Insert.PHONE,
+            ContactsContract.Intents.Insert.SECONDARY_PHONE,
+            ContactsContract.Intents.Insert.TERTIARY_PHONE
+    };
+
+    public static final String[] EMAIL_KEYS = {
+            ContactsContract.Intents.Insert.EMAIL,
+            ContactsContract.Intents.Insert.SECONDARY_EMAIL,
+            ContactsContract.Intents.Insert.TERTIARY_EMAIL
+    };
+
+}
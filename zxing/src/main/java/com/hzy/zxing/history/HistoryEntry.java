@@ -0,0 +1,67 @@
+package com.hzy.zxing.history;
+
+import com.google.zxing.BarcodeFormat;
+
+/**
+ * One scan kept in the {@link ScanHistory}.
+ */
+public final class HistoryEntry {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long timestamp;
+    private final BarcodeFormat format;
+    private final String text;
+    private final long hash;
+
+    HistoryEntry(long timestamp, BarcodeFormat format, String text) {
+        this.timestamp = timestamp;
+        this.format = format;
+        this.text = text;
+        this.hash = hash(format, text);
+    }
+
+    /**
+     * 64-bit FNV-1a hash of the format and the text, which is what makes two scans the same.
+     */
+    static long hash(BarcodeFormat format, String text) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = (hash ^ format.ordinal()) * FNV_PRIME;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    boolean matches(BarcodeFormat format, String text) {
+        return this.format == format && this.text.equals(text);
+    }
+
+    /**
+     * @return When the code was scanned, in milliseconds since the epoch.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public BarcodeFormat getFormat() {
+        return format;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public long getHash() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return timestamp + " " + format + ": " + text;
+    }
+
+}
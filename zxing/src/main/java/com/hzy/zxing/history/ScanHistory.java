@@ -0,0 +1,457 @@
+package com.hzy.zxing.history;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.Result;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 扫码历史记录
+ * <p>
+ * Scans are appended to a binary log in the app's files directory. Each record is
+ * {@code [length][timestamp][format][text][crc32]}; a torn or corrupt tail is cut off
+ * when the log is loaded. All file access happens on one background thread, and the
+ * log is fsynced once {@link #SYNC_BATCH} records are pending or {@link #SYNC_DELAY_MS}
+ * after the first unsynced one, so {@link #add(Result)} never blocks its caller.
+ * <p>
+ * The entries are kept in memory in scan order, with the latest entry of each
+ * distinct code indexed by a 64-bit hash of its format and text. "Seen before?" is a
+ * hash lookup; the last N entries and time ranges are read from the in-memory list.
+ * When the log holds twice {@link #MAX_ENTRIES} records, it is rewritten with the
+ * newest {@link #MAX_ENTRIES} only.
+ */
+public final class ScanHistory {
+
+    private static final String TAG = ScanHistory.class.getSimpleName();
+
+    private static final String FILE_NAME = "zxing_history.log";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * Entries kept by a compaction.
+     */
+    static final int MAX_ENTRIES = 1000;
+    private static final int COMPACT_THRESHOLD = 2 * MAX_ENTRIES;
+    private static final int SYNC_BATCH = 16;
+    private static final long SYNC_DELAY_MS = 1000L;
+    private static final int MAX_RECORD_LENGTH = 1 << 20;
+
+    private static ScanHistory instance;
+
+    private final File file;
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(new WriterThreadFactory());
+
+    // Guarded by this
+    private final List<HistoryEntry> entries = new ArrayList<HistoryEntry>();
+    private final Map<Long, HistoryEntry> latestByHash = new HashMap<Long, HistoryEntry>();
+    private int pending;
+    private int generation;
+
+    // Only used on the writer thread
+    private FileOutputStream fileOut;
+    private DataOutputStream out;
+    private int records;
+    private int unsynced;
+    private ScheduledFuture<?> syncFuture;
+
+    private ScanHistory(File file) {
+        this.file = file;
+        writer.execute(new Runnable() {
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * @return The history of this app; it is loaded in the background on first use.
+     */
+    public static synchronized ScanHistory get(Context context) {
+        if (instance == null) {
+            instance = new ScanHistory(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        }
+        return instance;
+    }
+
+    /**
+     * Adds a scan. The entry is visible to queries at once and written in the background.
+     */
+    public HistoryEntry add(Result result) {
+        final HistoryEntry entry = new HistoryEntry(System.currentTimeMillis(), result.getBarcodeFormat(), result.getText());
+        final int entryGeneration;
+        synchronized (this) {
+            entries.add(entry);
+            latestByHash.put(entry.getHash(), entry);
+            pending++;
+            entryGeneration = generation;
+        }
+        writer.execute(new Runnable() {
+            public void run() {
+                synchronized (ScanHistory.this) {
+                    if (entryGeneration != generation) {
+                        // cleared before it was written
+                        return;
+                    }
+                    pending--;
+                }
+                append(entry);
+            }
+        });
+        return entry;
+    }
+
+    /**
+     * @return Whether this code was scanned before.
+     */
+    public boolean contains(BarcodeFormat format, String text) {
+        return find(format, text) != null;
+    }
+
+    /**
+     * @return The latest scan of this code, or null.
+     */
+    public synchronized HistoryEntry find(BarcodeFormat format, String text) {
+        HistoryEntry entry = latestByHash.get(HistoryEntry.hash(format, text));
+        if (entry == null || entry.matches(format, text)) {
+            return entry;
+        }
+        // hash collision
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i).matches(format, text)) {
+                return entries.get(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Up to {@code count} entries, newest first.
+     */
+    public synchronized List<HistoryEntry> getLast(int count) {
+        int size = entries.size();
+        int n = Math.min(count, size);
+        List<HistoryEntry> result = new ArrayList<HistoryEntry>(n);
+        for (int i = 1; i <= n; i++) {
+            result.add(entries.get(size - i));
+        }
+        return result;
+    }
+
+    /**
+     * @return Entries scanned from {@code from} inclusive to {@code to} exclusive, in
+     * milliseconds since the epoch, newest first.
+     */
+    public synchronized List<HistoryEntry> getBetween(long from, long to) {
+        List<HistoryEntry> result = new ArrayList<HistoryEntry>();
+        // Entries are in scan order, so the search can stop at the first older one
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            long timestamp = entries.get(i).getTimestamp();
+            if (timestamp < from) {
+                break;
+            }
+            if (timestamp < to) {
+                result.add(entries.get(i));
+            }
+        }
+        return result;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries and deletes the log in the background.
+     */
+    public void clear() {
+        synchronized (this) {
+            entries.clear();
+            latestByHash.clear();
+            pending = 0;
+            generation++;
+        }
+        writer.execute(new Runnable() {
+            public void run() {
+                close();
+                if (file.exists() && !file.delete()) {
+                    Log.w(TAG, "Could not delete " + file);
+                }
+                records = 0;
+                open();
+            }
+        });
+    }
+
+    /**
+     * Writes and fsyncs everything added so far, in the background.
+     */
+    public void flush() {
+        writer.execute(new Runnable() {
+            public void run() {
+                sync();
+            }
+        });
+    }
+
+    private void load() {
+        List<HistoryEntry> loaded = new ArrayList<HistoryEntry>();
+        long validLength = 0L;
+        if (file.exists()) {
+            DataInputStream in = null;
+            try {
+                in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+                CRC32 crc = new CRC32();
+                while (true) {
+                    int length = in.readInt();
+                    if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                        break;
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) {
+                        break;
+                    }
+                    HistoryEntry entry = decode(payload);
+                    if (entry != null) {
+                        loaded.add(entry);
+                    }
+                    validLength += 4 + length + 4;
+                }
+            } catch (EOFException eofe) {
+                // end of the log, or a record torn by a crash
+            } catch (IOException ioe) {
+                Log.w(TAG, "Could not read scan history", ioe);
+            } finally {
+                if (in != null) {
+                    try {
+                        in.close();
+                    } catch (IOException ioe) {
+                        // ignore
+                    }
+                }
+            }
+            if (validLength < file.length()) {
+                Log.w(TAG, "Truncating scan history from " + file.length() + " to " + validLength + " bytes");
+                truncate(validLength);
+            }
+        }
+        synchronized (this) {
+            // a clear() queued behind this load deletes the log anyway
+            if (generation == 0) {
+                // anything added meanwhile is newer
+                Map<Long, HistoryEntry> added = new HashMap<Long, HistoryEntry>(latestByHash);
+                entries.addAll(0, loaded);
+                for (HistoryEntry entry : loaded) {
+                    latestByHash.put(entry.getHash(), entry);
+                }
+                latestByHash.putAll(added);
+            }
+        }
+        records = loaded.size();
+        open();
+        if (records > COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    private void truncate(long length) {
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "rw");
+            raf.setLength(length);
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not truncate scan history", ioe);
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ioe) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    private void open() {
+        try {
+            fileOut = new FileOutputStream(file, true);
+            out = new DataOutputStream(new BufferedOutputStream(fileOut));
+        } catch (FileNotFoundException fnfe) {
+            Log.w(TAG, "Could not open scan history", fnfe);
+            fileOut = null;
+            out = null;
+        }
+    }
+
+    private void close() {
+        sync();
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ioe) {
+                // ignore
+            }
+            out = null;
+            fileOut = null;
+        }
+    }
+
+    private void append(HistoryEntry entry) {
+        if (out == null) {
+            return;
+        }
+        try {
+            writeRecord(out, entry);
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not write scan history", ioe);
+            return;
+        }
+        records++;
+        if (++unsynced >= SYNC_BATCH) {
+            sync();
+        } else if (syncFuture == null) {
+            syncFuture = writer.schedule(new Runnable() {
+                public void run() {
+                    sync();
+                }
+            }, SYNC_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+        if (records > COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    private void sync() {
+        if (syncFuture != null) {
+            syncFuture.cancel(false);
+            syncFuture = null;
+        }
+        if (out == null || unsynced == 0) {
+            return;
+        }
+        try {
+            out.flush();
+            fileOut.getFD().sync();
+            unsynced = 0;
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not sync scan history", ioe);
+        }
+    }
+
+    /**
+     * Rewrites the log with the newest {@link #MAX_ENTRIES} written entries, then swaps
+     * it in, so a crash leaves either the old or the new log.
+     */
+    private void compact() {
+        List<HistoryEntry> keep;
+        synchronized (this) {
+            // entries still queued for writing are at the end and are written later
+            int written = entries.size() - pending;
+            int drop = Math.max(0, written - MAX_ENTRIES);
+            keep = new ArrayList<HistoryEntry>(entries.subList(drop, written));
+            entries.subList(0, drop).clear();
+            latestByHash.clear();
+            for (HistoryEntry entry : entries) {
+                latestByHash.put(entry.getHash(), entry);
+            }
+        }
+        File compacted = new File(file.getPath() + ".tmp");
+        FileOutputStream compactedOut = null;
+        try {
+            compactedOut = new FileOutputStream(compacted);
+            DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(compactedOut));
+            for (HistoryEntry entry : keep) {
+                writeRecord(dataOut, entry);
+            }
+            dataOut.flush();
+            compactedOut.getFD().sync();
+            dataOut.close();
+            compactedOut = null;
+            close();
+            if (!compacted.renameTo(file)) {
+                throw new IOException("Could not rename " + compacted);
+            }
+            records = keep.size();
+            Log.d(TAG, "Compacted scan history to " + records + " entries");
+        } catch (IOException ioe) {
+            Log.w(TAG, "Could not compact scan history", ioe);
+        } finally {
+            if (compactedOut != null) {
+                try {
+                    compactedOut.close();
+                } catch (IOException ioe) {
+                    // ignore
+                }
+            }
+            if (out == null) {
+                open();
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, HistoryEntry entry) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream payload = new DataOutputStream(buffer);
+        payload.writeLong(entry.getTimestamp());
+        payload.writeUTF(entry.getFormat().name());
+        payload.write(entry.getText().getBytes(UTF8));
+        payload.flush();
+        byte[] bytes = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeInt((int) crc.getValue());
+    }
+
+    private static HistoryEntry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        long timestamp = in.readLong();
+        String formatName = in.readUTF();
+        // the text takes the rest of the record
+        int offset = payload.length - in.available();
+        String text = new String(payload, offset, payload.length - offset, UTF8);
+        try {
+            return new HistoryEntry(timestamp, BarcodeFormat.valueOf(formatName), text);
+        } catch (IllegalArgumentException iae) {
+            // a format this version does not know
+            return null;
+        }
+    }
+
+    private static final class WriterThreadFactory implements ThreadFactory {
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "ScanHistory");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
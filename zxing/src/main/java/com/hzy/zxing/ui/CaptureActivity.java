@@ -22,11 +22,15 @@ import com.google.zxing.R;
 import com.google.zxing.Result;
 import com.hzy.zxing.camera.CameraManager;
 import com.hzy.zxing.decoding.CaptureActivityHandler;
+import com.hzy.zxing.decoding.DecoderWarmup;
 import com.hzy.zxing.decoding.InactivityTimer;
+import com.hzy.zxing.decoding.Intents;
+import com.hzy.zxing.history.ScanHistory;
+import com.hzy.zxing.util.StartupTrace;
 import com.hzy.zxing.view.ViewfinderView;
 
 import java.io.IOException;
-import java.util.Vector;
+import java.util.Set;
 
 
 /**
@@ -52,7 +56,7 @@ public class CaptureActivity extends Activity implements SurfaceHolder.Callback,
     /**
      * 存储二维格式的数组
      */
-    private Vector<BarcodeFormat> decodeFormats;
+    private Set<BarcodeFormat> decodeFormats;
     /**
      * 字符集
      */
@@ -62,9 +66,13 @@ public class CaptureActivity extends Activity implements SurfaceHolder.Callback,
      */
     private InactivityTimer inactivityTimer;
     /**
-     * 播放器
+     * 播放器，在后台线程中准备好后才赋值
      */
-    private MediaPlayer mediaPlayer;
+    private volatile MediaPlayer mediaPlayer;
+    /**
+     * 播放器是否正在后台准备
+     */
+    private volatile boolean beepLoading;
     /**
      * 声音布尔
      */
@@ -86,6 +94,10 @@ public class CaptureActivity extends Activity implements SurfaceHolder.Callback,
      * 灯是否打开
      */
     private boolean isTorchOn = false;
+    /**
+     * 界面是否处于前台，相机异步打开完成时据此决定是否开始扫描
+     */
+    private boolean resumed;
     /**
      * 扫码返回的数据的key
      */
@@ -97,10 +109,15 @@ public class CaptureActivity extends Activity implements SurfaceHolder.Callback,
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.begin();
+        // 相机在相机线程中打开，与下面的布局加载并行进行
+        CameraManager.init(this);
+        CameraManager.get().openDriverAsync();
+        // 相机打开期间预热解码器，避免第一帧解码时才加载类、解释执行
+        DecoderWarmup.start(getIntent().getStringExtra(Intents.Scan.PREPROCESS));
         requestWindowFeature(Window.FEATURE_NO_TITLE);
         getWindow().setFlags(WindowManager.LayoutParams.FLAG_FULLSCREEN, WindowManager.LayoutParams.FLAG_FULLSCREEN);
         setContentView(R.layout.activity_capture);
-        CameraManager.init(this);
 
         viewfinderView = (ViewfinderView) findViewById(R.id.viewfinder_view);
         btnFlash = findViewById(R.id.btn_flash);
@@ -113,6 +130,9 @@ public class CaptureActivity extends Activity implements SurfaceHolder.Callback,
     @Override
     protected void onResume() {
         super.onResume();
+        resumed = true;
+        // onCreate() 中已经开始打开时这里什么也不做，从 onPause() 返回时重新打开
+        CameraManager.get().openDriverAsync();
         // 初始化相机画布
         SurfaceView surfaceView = (SurfaceView) findViewById(R.id.preview_view);
         SurfaceHolder surfaceHolder = surfaceView.getHolder();
@@ -141,6 +161,7 @@ public class CaptureActivity extends Activity implements SurfaceHolder.Callback,
     protected void onPause() {
         // 停止相机 关闭闪光灯
         super.onPause();
+        resumed = false;
         if (handler != null) {
             handler.quitSynchronously();
             handler = null;
@@ -165,26 +186,52 @@ public class CaptureActivity extends Activity implements SurfaceHolder.Callback,
     public void handleDecode(Result result, Bitmap barcode) {
         inactivityTimer.onActivity();
         playBeepSoundAndVibrate();
+        // 写入在后台线程进行，不阻塞界面
+        if (getIntent().getBooleanExtra(Intents.Scan.SAVE_HISTORY, true)) {
+            ScanHistory.get(this).add(result);
+        }
+        resetPartialDecode();
         Intent data = new Intent();
         data.putExtra(RESULT_DATA_KEY, result.getText());
         setResult(RESULT_OK, data);
         onBackPressed();
     }
 
+    /**
+     * 多个码组成的内容（Structured Append）读到其中一个码时提示进度
+     *
+     * @param received 已读到的码数
+     * @param total    总码数
+     */
+    public void handlePartialDecode(int received, int total) {
+        inactivityTimer.onActivity();
+        playBeepSoundAndVibrate();
+        viewfinderView.setStatusText(getString(R.string.scan_partial_text, received, total));
+    }
+
+    /**
+     * 多个码的收集结束（读完、过期或重新开始预览）时恢复扫描提示
+     */
+    public void resetPartialDecode() {
+        viewfinderView.setStatusText(null);
+    }
+
     /**
      * 初始化相机
      */
     private void initCamera(SurfaceHolder surfaceHolder) {
-        try {
-            CameraManager.get().openDriver(surfaceHolder);
-        } catch (IOException ioe) {
-            return;
-        } catch (RuntimeException e) {
-            return;
-        }
-        if (handler == null) {
-            handler = new CaptureActivityHandler(this, decodeFormats, characterSet);
-        }
+        CameraManager.get().openDriver(surfaceHolder, new CameraManager.OpenCallback() {
+            @Override
+            public void onCameraReady() {
+                if (resumed && hasSurface && handler == null) {
+                    handler = new CaptureActivityHandler(CaptureActivity.this, decodeFormats, characterSet);
+                }
+            }
+
+            @Override
+            public void onCameraError(Exception e) {
+            }
+        });
     }
 
     @Override
@@ -221,24 +268,33 @@ public class CaptureActivity extends Activity implements SurfaceHolder.Callback,
      * 声音设置
      */
     private void initBeepSound() {
-        if (playBeep && mediaPlayer == null) {
+        if (playBeep && mediaPlayer == null && !beepLoading) {
             // The volume on STREAM_SYSTEM is not adjustable, and users found it
             // too loud,
             // so we now play on the music stream.
             setVolumeControlStream(AudioManager.STREAM_MUSIC);
-            mediaPlayer = new MediaPlayer();
-            mediaPlayer.setAudioStreamType(AudioManager.STREAM_MUSIC);
-            mediaPlayer.setOnCompletionListener(beepListener);
-
-            AssetFileDescriptor file = getResources().openRawResourceFd(R.raw.beep);
-            try {
-                mediaPlayer.setDataSource(file.getFileDescriptor(), file.getStartOffset(), file.getLength());
-                file.close();
-                mediaPlayer.setVolume(BEEP_VOLUME, BEEP_VOLUME);
-                mediaPlayer.prepare();
-            } catch (IOException e) {
-                mediaPlayer = null;
-            }
+            beepLoading = true;
+            // prepare() 是同步的，放到后台线程，不阻塞界面启动
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    MediaPlayer player = new MediaPlayer();
+                    player.setAudioStreamType(AudioManager.STREAM_MUSIC);
+                    player.setOnCompletionListener(beepListener);
+
+                    AssetFileDescriptor file = getResources().openRawResourceFd(R.raw.beep);
+                    try {
+                        player.setDataSource(file.getFileDescriptor(), file.getStartOffset(), file.getLength());
+                        file.close();
+                        player.setVolume(BEEP_VOLUME, BEEP_VOLUME);
+                        player.prepare();
+                        mediaPlayer = player;
+                    } catch (IOException e) {
+                        player.release();
+                    }
+                    beepLoading = false;
+                }
+            }, "BeepLoader").start();
         }
     }
 
@@ -0,0 +1,110 @@
+package com.hzy.zxing.util;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * 扫码界面启动耗时打点
+ * <p>
+ * Records when the capture screen was created and when its first milestones were
+ * reached, so startup regressions show up in the log as time-to-first-preview and
+ * time-to-first-decode. Only the first occurrence of each marker after
+ * {@link #begin()} is kept.
+ */
+public final class StartupTrace {
+
+    private static final String TAG = StartupTrace.class.getSimpleName();
+
+    private static volatile long startTime;
+    private static volatile long cameraOpenedTime;
+    private static volatile long firstPreviewTime;
+    private static volatile long firstDecodeTime;
+    private static volatile long warmupCost = -1L;
+    private static volatile long firstFrameDecodeCost = -1L;
+
+    private StartupTrace() {
+    }
+
+    /**
+     * Starts a new trace, called from {@code onCreate()}.
+     */
+    public static void begin() {
+        startTime = SystemClock.uptimeMillis();
+        cameraOpenedTime = 0L;
+        firstPreviewTime = 0L;
+        firstDecodeTime = 0L;
+        firstFrameDecodeCost = -1L;
+    }
+
+    /**
+     * Records how long the decoder warm-up took. It runs once per process, so the value
+     * is kept across traces.
+     */
+    public static void recordWarmup(long cost) {
+        warmupCost = cost;
+    }
+
+    /**
+     * Records how long the first preview frame took to decode, whether or not a barcode
+     * was found, next to the warm-up cost for comparison.
+     */
+    public static void recordFirstFrameDecode(long cost) {
+        if (firstFrameDecodeCost < 0L) {
+            firstFrameDecodeCost = cost;
+            Log.i(TAG, "first frame decode: " + cost + " ms (warm-up: " + (warmupCost < 0L ? "not finished" : warmupCost + " ms") + ")");
+        }
+    }
+
+    public static void markCameraOpened() {
+        if (cameraOpenedTime == 0L) {
+            cameraOpenedTime = mark("camera opened");
+        }
+    }
+
+    public static void markFirstPreview() {
+        if (firstPreviewTime == 0L) {
+            firstPreviewTime = mark("first preview frame");
+        }
+    }
+
+    public static void markFirstDecode() {
+        if (firstDecodeTime == 0L) {
+            firstDecodeTime = mark("first decode");
+        }
+    }
+
+    /**
+     * @return Milliseconds from {@link #begin()} to the first preview frame, or -1 if not reached.
+     */
+    public static long getTimeToFirstPreview() {
+        return firstPreviewTime == 0L ? -1L : firstPreviewTime - startTime;
+    }
+
+    /**
+     * @return Milliseconds from {@link #begin()} to the first decoded barcode, or -1 if not reached.
+     */
+    public static long getTimeToFirstDecode() {
+        return firstDecodeTime == 0L ? -1L : firstDecodeTime - startTime;
+    }
+
+    /**
+     * @return Milliseconds the decoder warm-up took, or -1 if it has not finished.
+     */
+    public static long getWarmupCost() {
+        return warmupCost;
+    }
+
+    /**
+     * @return Milliseconds the first preview frame took to decode, or -1 if not reached.
+     */
+    public static long getFirstFrameDecodeCost() {
+        return firstFrameDecodeCost;
+    }
+
+    private static long mark(String name) {
+        long now = SystemClock.uptimeMillis();
+        Log.i(TAG, name + ": " + (now - startTime) + " ms");
+        return now;
+    }
+
+}
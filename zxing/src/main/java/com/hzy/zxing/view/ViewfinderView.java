@@ -65,6 +65,7 @@ public final class ViewfinderView extends View {
     private int slideTop;
     private int slideBottom;
     private boolean isFirst;
+    private String statusText;
 
     // This constructor is used when the class is built from an XML resource.
     public ViewfinderView(Context context, AttributeSet attrs) {
@@ -141,7 +142,7 @@ public final class ViewfinderView extends View {
             paint.setTextSize(TEXT_SIZE * density);
             paint.setAlpha(0x40);
             paint.setTypeface(Typeface.create("System", Typeface.BOLD));
-            String text = getResources().getString(R.string.scan_text);
+            String text = statusText != null ? statusText : getResources().getString(R.string.scan_text);
             float textWidth = paint.measureText(text);
 
             canvas.drawText(text, (width - textWidth) / 2, (float) (frame.bottom + (float) TEXT_PADDING_TOP * density), paint);
@@ -176,6 +177,16 @@ public final class ViewfinderView extends View {
         invalidate();
     }
 
+    /**
+     * Shows a text below the frame instead of the scan prompt.
+     *
+     * @param text The text, or null for the scan prompt.
+     */
+    public void setStatusText(String text) {
+        statusText = text;
+        invalidate();
+    }
+
     /**
      * Draw a bitmap with the result points highlighted instead of the live
      * scanning display.
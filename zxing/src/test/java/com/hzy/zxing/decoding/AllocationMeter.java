@@ -0,0 +1,71 @@
+package com.hzy.zxing.decoding;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Counts the bytes the current thread allocates per frame of a scan loop stage, after a
+ * warm-up so that the stage's buffers have grown and the JIT has compiled it. The budget
+ * tests compare the result with the stage's ALLOCATION_BUDGET_BYTES.
+ */
+final class AllocationMeter {
+
+    static final int WARMUP = 2000;
+    static final int MEASURED = 2000;
+
+    interface Stage {
+        void run(int frame) throws Exception;
+    }
+
+    private final com.sun.management.ThreadMXBean threads;
+
+    /**
+     * Skips the calling test on a JVM which does not count allocated bytes per thread.
+     */
+    AllocationMeter() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    long bytesPerFrame(Stage stage) throws Exception {
+        return bytesPerFrame(stage, WARMUP, MEASURED);
+    }
+
+    long bytesPerFrame(Stage stage, int warmup, int measured) throws Exception {
+        for (int i = 0; i < warmup; i++) {
+            stage.run(i);
+        }
+        long thread = Thread.currentThread().getId();
+        // what reading the counter costs itself
+        long overhead = threads.getThreadAllocatedBytes(thread);
+        overhead = threads.getThreadAllocatedBytes(thread) - overhead;
+        long startBytes = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < measured; i++) {
+            stage.run(i);
+        }
+        long bytes = threads.getThreadAllocatedBytes(thread) - startBytes - overhead;
+        return Math.max(0L, bytes) / measured;
+    }
+
+    /**
+     * An NV21 preview of a lit surface without a barcode, as the loop sees it between
+     * reads: a horizontal gradient with sensor noise.
+     */
+    static byte[] preview(Random random, int width, int height) {
+        byte[] data = new byte[width * height * 3 / 2];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                data[y * width + x] = (byte) (40 + x * 160 / width + random.nextInt(40));
+            }
+        }
+        for (int i = width * height; i < data.length; i++) {
+            data[i] = (byte) 128;
+        }
+        return data;
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.common.BitMatrix;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The binarize step of the scan loop, createBinarizer(...).getBlackMatrix() on each frame,
+ * allocates nothing once the stage's buffers fit the crop.
+ */
+public class BinarizationStageTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int SIZE = 600;
+    private static final int FRAMES = 4;
+
+    private AllocationMeter meter;
+    private final LuminanceSource[] crops = new LuminanceSource[FRAMES];
+
+    @Before
+    public void setUp() {
+        meter = new AllocationMeter();
+        Random random = new Random(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            crops[i] = new PlanarYUVLuminanceSource(frame(random), WIDTH, HEIGHT,
+                    (WIDTH - SIZE) / 2, (HEIGHT - SIZE) / 2, SIZE, SIZE, false);
+        }
+    }
+
+    @Test
+    public void globalAllocatesNothing() throws Exception {
+        assertBytesPerFrame(BinarizationStage.MODE_GLOBAL, BinarizationStage.ALLOCATION_BUDGET_BYTES);
+    }
+
+    @Test
+    public void hybridAllocatesNothing() throws Exception {
+        assertBytesPerFrame(BinarizationStage.MODE_HYBRID, BinarizationStage.ALLOCATION_BUDGET_BYTES);
+    }
+
+    @Test
+    public void adaptiveStaysWithinSauvolaBudget() throws Exception {
+        assertBytesPerFrame(BinarizationStage.MODE_ADAPTIVE,
+                BinarizationStage.ALLOCATION_BUDGET_BYTES + SauvolaThreshold.ALLOCATION_BUDGET_BYTES);
+    }
+
+    @Test
+    public void matrixIsReusedForTheSameCropSize() throws NotFoundException {
+        BinarizationStage stage = new BinarizationStage();
+        BitMatrix first = stage.createBinarizer(BinarizationStage.MODE_HYBRID, crops[0]).getBlackMatrix();
+        BitMatrix second = stage.createBinarizer(BinarizationStage.MODE_HYBRID, crops[1]).getBlackMatrix();
+        assertSame(first, second);
+    }
+
+    private void assertBytesPerFrame(final int mode, int budget) throws Exception {
+        final BinarizationStage stage = new BinarizationStage();
+        long perFrame = meter.bytesPerFrame(new AllocationMeter.Stage() {
+            @Override
+            public void run(int frame) throws NotFoundException {
+                stage.createBinarizer(mode, crops[frame % FRAMES]).getBlackMatrix();
+            }
+        });
+        assertTrue("mode " + mode + " allocated " + perFrame + " bytes per frame, budget " + budget,
+                perFrame <= budget);
+    }
+
+    /**
+     * The luminance plane of a preview of dark and light patches with sensor noise, so that
+     * every mode finds a black point.
+     */
+    private static byte[] frame(Random random) {
+        byte[] data = new byte[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                int base = ((x / 40 + y / 40) & 1) == 0 ? 50 : 190;
+                data[y * WIDTH + x] = (byte) (base + random.nextInt(30));
+            }
+        }
+        return data;
+    }
+
+}
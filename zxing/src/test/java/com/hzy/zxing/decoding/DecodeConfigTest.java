@@ -0,0 +1,82 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A QR Code attempt on a crop without a code, as DecodeHandler makes it on its slot, stays
+ * within {@link DecodeConfig#QR_ATTEMPT_ALLOCATION_BUDGET_BYTES}.
+ */
+public class DecodeConfigTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int SIZE = 600;
+    private static final int FRAMES = 4;
+    private static final int WARMUP = 500;
+    private static final int MEASURED = 500;
+
+    private AllocationMeter meter;
+    private final LuminanceSource[] crops = new LuminanceSource[FRAMES];
+
+    @Before
+    public void setUp() {
+        meter = new AllocationMeter();
+        Random random = new Random(FRAMES);
+        PreprocessPipeline preprocess = PreprocessPipeline.parse(null);
+        for (int i = 0; i < FRAMES; i++) {
+            PreprocessPipeline.Frame frame = preprocess.process(AllocationMeter.preview(random, WIDTH, HEIGHT), WIDTH, HEIGHT,
+                    (WIDTH - SIZE) / 2, (HEIGHT - SIZE) / 2, SIZE, SIZE);
+            // the pipeline reuses its plane for the next frame
+            crops[i] = new PlanarYUVLuminanceSource(frame.getData().clone(), frame.getWidth(), frame.getHeight(),
+                    0, 0, frame.getWidth(), frame.getHeight(), false);
+        }
+    }
+
+    @Test
+    public void qrAttemptStaysWithinBudget() throws Exception {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE, BarcodeFormat.EAN_13, BarcodeFormat.CODE_128));
+        final DecodeConfig decodeConfig = new DecodeConfig(hints);
+        final BinarizationStage binarization = new BinarizationStage();
+        final int qrSlot = qrSlot(decodeConfig);
+        long perFrame = meter.bytesPerFrame(new AllocationMeter.Stage() {
+            @Override
+            public void run(int frame) throws Exception {
+                BinaryBitmap bitmap = new BinaryBitmap(binarization.createBinarizer(BinarizationStage.MODE_HYBRID, crops[frame % FRAMES]));
+                try {
+                    bitmap.getBlackMatrix();
+                    decodeConfig.decode(bitmap, qrSlot, decodeConfig.getHints());
+                } catch (ReaderException re) {
+                    // no code in the frame
+                }
+            }
+        }, WARMUP, MEASURED);
+        assertTrue("allocated " + perFrame + " bytes per attempt, budget " + DecodeConfig.QR_ATTEMPT_ALLOCATION_BUDGET_BYTES,
+                perFrame <= DecodeConfig.QR_ATTEMPT_ALLOCATION_BUDGET_BYTES);
+    }
+
+    private static int qrSlot(DecodeConfig decodeConfig) {
+        for (int slot = 0; slot < decodeConfig.getSlotCount(); slot++) {
+            if ("QR".equals(decodeConfig.getSlotName(slot))) {
+                return slot;
+            }
+        }
+        throw new IllegalStateException("No QR Code slot");
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.ReaderException;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.ResultPointCallback;
+import com.google.zxing.WriterException;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.qrcode.QRCodeReader;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.detector.FinderPattern;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The readers' result point callback on a downsampled plane: the zoom controller still gets
+ * finder patterns, whose module size it can bring back to the framing rect.
+ */
+public class DecodeThreadTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int CROP = 600;
+    private static final int MODULE_PX = 6;
+
+    @Test
+    public void downsampledFinderPatternsReachZoomController() throws WriterException, ReaderException {
+        PreprocessPipeline preprocess = PreprocessPipeline.parse("crop,downsample:2,rotate");
+        float scale = preprocess.getScale();
+        assertEquals(0.5f, scale, 0.0f);
+        PreprocessPipeline.Frame frame = preprocess.process(frameWithCode(), WIDTH, HEIGHT,
+                (WIDTH - CROP) / 2, (HEIGHT - CROP) / 2, CROP, CROP);
+
+        Recorder zoom = new Recorder();
+        Recorder framePoints = new Recorder();
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE));
+        hints.put(DecodeHintType.NEED_RESULT_POINT_CALLBACK, DecodeThread.planeCallback(framePoints, zoom, scale));
+        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(frame.getData(), frame.getWidth(), frame.getHeight(),
+                0, 0, frame.getWidth(), frame.getHeight(), false);
+        assertNotNull(new QRCodeReader().decode(new BinaryBitmap(new HybridBinarizer(source)), hints));
+
+        int finderPatterns = 0;
+        for (ResultPoint point : zoom.points) {
+            if (point instanceof FinderPattern) {
+                finderPatterns++;
+                // what ZoomController.onFrame works with
+                assertEquals(MODULE_PX, ((FinderPattern) point).getEstimatedModuleSize() / scale, 1.0f);
+            }
+        }
+        assertTrue("no finder patterns for the zoom controller", finderPatterns >= 3);
+        assertEquals(zoom.points.size(), framePoints.points.size());
+        for (ResultPoint point : framePoints.points) {
+            assertTrue(point + " outside the framing rect", point.getX() >= 0 && point.getX() <= CROP
+                    && point.getY() >= 0 && point.getY() <= CROP);
+        }
+    }
+
+    /**
+     * An NV21 frame with a QR Code of {@link #MODULE_PX} pixels per module in the middle.
+     */
+    private static byte[] frameWithCode() throws WriterException {
+        // one pixel per module, with the quiet zone
+        BitMatrix matrix = new QRCodeWriter().encode("https://github.com/huangziye/scanner", BarcodeFormat.QR_CODE, 1, 1);
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = i < WIDTH * HEIGHT ? (byte) 200 : (byte) 128;
+        }
+        int left = (WIDTH - matrix.getWidth() * MODULE_PX) / 2;
+        int top = (HEIGHT - matrix.getHeight() * MODULE_PX) / 2;
+        for (int y = 0; y < matrix.getHeight() * MODULE_PX; y++) {
+            for (int x = 0; x < matrix.getWidth() * MODULE_PX; x++) {
+                if (matrix.get(x / MODULE_PX, y / MODULE_PX)) {
+                    data[(top + y) * WIDTH + left + x] = (byte) 30;
+                }
+            }
+        }
+        return data;
+    }
+
+    private static final class Recorder implements ResultPointCallback {
+
+        final List<ResultPoint> points = new ArrayList<ResultPoint>();
+
+        public void foundPossibleResultPoint(ResultPoint point) {
+            points.add(point);
+        }
+    }
+
+}
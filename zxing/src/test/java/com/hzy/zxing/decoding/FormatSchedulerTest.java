@@ -0,0 +1,53 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The bookkeeping DecodeHandler does for a frame that fails, across the format scheduler,
+ * the escalation policy, the inversion scheduler and the cancellation token, allocates
+ * nothing.
+ */
+public class FormatSchedulerTest {
+
+    @Test
+    public void failedFrameBookkeepingStaysWithinBudget() throws Exception {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.QR_CODE, BarcodeFormat.EAN_13, BarcodeFormat.CODE_128));
+        DecodeConfig decodeConfig = new DecodeConfig(hints);
+        final FormatScheduler formatScheduler = new FormatScheduler(decodeConfig);
+        final EscalationPolicy escalationPolicy = new EscalationPolicy(decodeConfig.getHints(),
+                EscalationPolicy.DEFAULT_FAILURES_PER_LEVEL, EscalationPolicy.DEFAULT_FRAME_BUDGET_MS);
+        final InversionScheduler inversionScheduler = new InversionScheduler();
+        final CancellationToken cancellation = new CancellationToken();
+        long perFrame = new AllocationMeter().bytesPerFrame(new AllocationMeter.Stage() {
+            @Override
+            public void run(int frame) {
+                long start = System.nanoTime();
+                cancellation.startFrame(start + escalationPolicy.getFrameDeadlineNanos());
+                formatScheduler.nextSlot();
+                int level = escalationPolicy.getLevel();
+                escalationPolicy.getHints(level);
+                escalationPolicy.onAttempt(1000000L);
+                if (!cancellation.isCancelled() && escalationPolicy.canAttempt(System.nanoTime() - start)
+                        && inversionScheduler.shouldTry(formatScheduler.sawResultPoints())) {
+                    inversionScheduler.onAttempt(false);
+                }
+                formatScheduler.onFrame(false, 1000000L);
+                escalationPolicy.onFrame(level, false, false, formatScheduler.sawResultPoints(), System.nanoTime() - start);
+            }
+        });
+        int budget = FormatScheduler.ALLOCATION_BUDGET_BYTES + EscalationPolicy.ALLOCATION_BUDGET_BYTES
+                + InversionScheduler.ALLOCATION_BUDGET_BYTES + CancellationToken.ALLOCATION_BUDGET_BYTES;
+        assertTrue("allocated " + perFrame + " bytes per frame, budget " + budget, perFrame <= budget);
+    }
+
+}
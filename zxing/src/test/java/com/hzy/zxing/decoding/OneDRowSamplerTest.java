@@ -0,0 +1,54 @@
+package com.hzy.zxing.decoding;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sampling the rows of a frame without a barcode stays within the sampler's budget, most
+ * of which goes to the pattern counters of ZXing's 1D readers.
+ */
+public class OneDRowSamplerTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int SIZE = 600;
+    private static final int FRAMES = 4;
+
+    private AllocationMeter meter;
+    private final byte[][] previews = new byte[FRAMES][];
+
+    @Before
+    public void setUp() {
+        meter = new AllocationMeter();
+        Random random = new Random(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            previews[i] = AllocationMeter.preview(random, WIDTH, HEIGHT);
+        }
+    }
+
+    @Test
+    public void frameWithoutCodeStaysWithinBudget() throws Exception {
+        Map<DecodeHintType, Object> hints = new EnumMap<DecodeHintType, Object>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, EnumSet.of(BarcodeFormat.EAN_13, BarcodeFormat.CODE_128));
+        final OneDRowSampler rowSampler = new OneDRowSampler(hints, OneDRowSampler.DEFAULT_LINES);
+        long perFrame = meter.bytesPerFrame(new AllocationMeter.Stage() {
+            @Override
+            public void run(int frame) {
+                rowSampler.decode(previews[frame % FRAMES], WIDTH, (WIDTH - SIZE) / 2, (HEIGHT - SIZE) / 2, SIZE, SIZE);
+            }
+        });
+        assertTrue("allocated " + perFrame + " bytes per frame, budget " + OneDRowSampler.ALLOCATION_BUDGET_BYTES,
+                perFrame <= OneDRowSampler.ALLOCATION_BUDGET_BYTES);
+    }
+
+}
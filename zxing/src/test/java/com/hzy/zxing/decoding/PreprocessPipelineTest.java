@@ -0,0 +1,47 @@
+package com.hzy.zxing.decoding;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Preprocessing a preview allocates nothing once the pipeline's buffers have grown to the
+ * frame size, with every stage in the spec so that each one's buffers are covered.
+ */
+public class PreprocessPipelineTest {
+
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+    private static final int SIZE = 600;
+    private static final int FRAMES = 4;
+
+    private AllocationMeter meter;
+    private final byte[][] previews = new byte[FRAMES][];
+
+    @Before
+    public void setUp() {
+        meter = new AllocationMeter();
+        Random random = new Random(FRAMES);
+        for (int i = 0; i < FRAMES; i++) {
+            previews[i] = AllocationMeter.preview(random, WIDTH, HEIGHT);
+        }
+    }
+
+    @Test
+    public void processStaysWithinBudget() throws Exception {
+        final PreprocessPipeline preprocess = PreprocessPipeline.parse("crop,rotate,downsample:2,gamma:0.8,stretch,invert,denoise");
+        long perFrame = meter.bytesPerFrame(new AllocationMeter.Stage() {
+            @Override
+            public void run(int frame) {
+                preprocess.process(previews[frame % FRAMES], WIDTH, HEIGHT,
+                        (WIDTH - SIZE) / 2, (HEIGHT - SIZE) / 2, SIZE, SIZE);
+            }
+        });
+        assertTrue(preprocess + " allocated " + perFrame + " bytes per frame, budget "
+                + PreprocessPipeline.ALLOCATION_BUDGET_BYTES, perFrame <= PreprocessPipeline.ALLOCATION_BUDGET_BYTES);
+    }
+
+}